@@ -0,0 +1,62 @@
+package com.jasmine.filemanager.benchmark;
+
+import com.jasmine.filemanager.index.LineIndex;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A synthetic corpus, shaped by the parameters below, which every benchmark runs over. Each benchmark
+ * invocation processes the whole corpus, so scores are per corpus; run with {@code -prof gc} to see
+ * the allocation rate and the bytes allocated per corpus next to them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class CorpusBenchmark {
+
+    @Param("8")
+    protected int fileCount;
+
+    @Param({"65536", "4194304"})
+    protected int fileSize;
+
+    @Param("80")
+    protected int meanLineLength;
+
+    @Param({"UNIFORM", "SKEWED"})
+    protected SyntheticCorpus.LineLengths lineLengths;
+
+    protected List<byte[]> files;
+    protected List<ByteBuffer> buffers;
+    protected List<LineIndex> lineIndexes;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() {
+
+        files = SyntheticCorpus.generate(42, fileCount, fileSize, meanLineLength, lineLengths);
+        buffers = new ArrayList<>(files.size());
+        lineIndexes = new ArrayList<>(files.size());
+        for (byte[] file : files) {
+            ByteBuffer buffer = ByteBuffer.wrap(file).asReadOnlyBuffer();
+            buffers.add(buffer);
+            lineIndexes.add(LineIndex.of(buffer));
+        }
+    }
+}
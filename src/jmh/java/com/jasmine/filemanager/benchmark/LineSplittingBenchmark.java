@@ -0,0 +1,30 @@
+package com.jasmine.filemanager.benchmark;
+
+import com.jasmine.filemanager.index.LineIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splitting content into lines: the line index against decoding and {@code String.split}.
+ */
+public class LineSplittingBenchmark extends CorpusBenchmark {
+
+    @Benchmark
+    public void lineIndex(Blackhole blackhole) {
+
+        for (ByteBuffer buffer : buffers) {
+            blackhole.consume(LineIndex.of(buffer));
+        }
+    }
+
+    @Benchmark
+    public void stringSplit(Blackhole blackhole) {
+
+        for (byte[] file : files) {
+            blackhole.consume(new String(file, StandardCharsets.UTF_8).split("\n"));
+        }
+    }
+}
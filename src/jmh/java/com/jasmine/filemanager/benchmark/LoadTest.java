@@ -0,0 +1,357 @@
+package com.jasmine.filemanager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jasmine.filemanager.FileManagerApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end load test of the {@code /file} endpoints. Starts the application on a random local port, uploads an
+ * initial corpus and then runs a mixed workload of uploads and reads, shaped like the requests of
+ * {@code file-manager.postman_collection.json}, from {@code concurrency} clients which send their next request as
+ * soon as the previous one is answered.
+ * <p>
+ * After a warmup it measures for {@code duration} and reports, overall and per operation, the requests per second
+ * and the p50/p99/p999 latency, as well as the heap high-water mark of the measurement. The report is printed and
+ * written as JSON to {@code output}, so runs of two releases can be diffed.
+ * <p>
+ * Options are {@code --name=value} arguments, see {@link Options}; every other argument, e.g.
+ * {@code --file-manager.virtual-threads=true}, is passed to the application. The clients run in the same JVM,
+ * which keeps one copy of every upload size on the heap.
+ */
+public final class LoadTest {
+
+    private static final String BOUNDARY = "load-test-boundary";
+
+    private final Options options;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<Long> fileIds = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong uploadCount = new AtomicLong();
+    private final Map<String, OperationStats> operations = new LinkedHashMap<>();
+    private final List<byte[]> uploadContents = new ArrayList<>();
+    private final int totalWeight;
+
+    private URI baseUri;
+
+    private LoadTest(Options options) {
+
+        this.options = options;
+        for (Map.Entry<String, Integer> operation : options.mix.entrySet()) {
+            if (!Operation.NAMES.contains(operation.getKey())) {
+                throw new IllegalArgumentException("unknown operation " + operation.getKey() + ", expected one of " + Operation.NAMES);
+            }
+            operations.put(operation.getKey(), new OperationStats());
+        }
+        this.totalWeight = options.mix.values().stream().mapToInt(Integer::intValue).sum();
+        for (int i = 0; i < options.uploadSizes.size(); i++) {
+            uploadContents.add(SyntheticCorpus.generate(i, 1, options.uploadSizes.get(i), 80, SyntheticCorpus.LineLengths.UNIFORM).get(0));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = Options.parse(args);
+        // devtools would restart the application, and with it this class, in another class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        List<String> applicationArgs = new ArrayList<>(List.of("--server.port=0", "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN", "--spring.main.banner-mode=off",
+                "--file-manager.ingest.directory=" + Files.createTempDirectory("load-test-ingest"),
+                "--file-manager.store.directory=" + Files.createTempDirectory("load-test-content")));
+        applicationArgs.addAll(options.applicationArgs);
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(FileManagerApplication.class, applicationArgs.toArray(String[]::new))) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadTest loadTest = new LoadTest(options);
+            loadTest.baseUri = URI.create("http://localhost:" + port + "/file");
+            Result result = loadTest.run();
+            result.print();
+            Files.createDirectories(options.output.toAbsolutePath().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(options.output.toFile(), result);
+            System.out.println("result written to " + options.output.toAbsolutePath());
+        }
+        System.exit(0);
+    }
+
+
+    private Result run() throws Exception {
+
+        for (int i = 0; i < options.files; i++) {
+            upload(uploadContents.get(i % uploadContents.size()));
+        }
+        if (fileIds.isEmpty()) {
+            throw new IllegalStateException("none of the " + options.files + " files could be uploaded before the run");
+        }
+
+        Instant startedAt = Instant.now();
+        long measureFrom = System.nanoTime() + options.warmup.toNanos();
+        long measureUntil = measureFrom + options.duration.toNanos();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < options.concurrency; i++) {
+            clients.add(Thread.ofPlatform().name("load-test-client-" + i).start(() -> runClient(measureFrom, measureUntil)));
+        }
+
+        Thread.sleep(options.warmup.toMillis());
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        GcTotals gcBefore = GcTotals.now();
+
+        for (Thread client : clients) {
+            client.join();
+        }
+        GcTotals gc = GcTotals.now().minus(gcBefore);
+        long heapPeakBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        long heapMaxBytes = Runtime.getRuntime().maxMemory();
+
+        double seconds = options.duration.toNanos() / 1e9;
+        Histogram total = new Histogram(3);
+        long totalErrors = 0;
+        Map<String, OperationResult> operationResults = new LinkedHashMap<>();
+        for (Map.Entry<String, OperationStats> operation : operations.entrySet()) {
+            OperationStats stats = operation.getValue();
+            total.add(stats.latencies);
+            totalErrors += stats.errors.sum();
+            operationResults.put(operation.getKey(), new OperationResult(stats.latencies.getTotalCount(), stats.errors.sum(),
+                    stats.latencies.getTotalCount() / seconds, Latency.of(stats.latencies)));
+        }
+        return new Result(startedAt.toString(), options.describe(), seconds, total.getTotalCount(), totalErrors,
+                total.getTotalCount() / seconds, Latency.of(total), heapPeakBytes, heapMaxBytes, gc.collections, gc.millis,
+                operationResults);
+    }
+
+    private void runClient(long measureFrom, long measureUntil) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start;
+        while ((start = System.nanoTime()) < measureUntil) {
+            String operation = pick(random.nextInt(totalWeight));
+            boolean ok;
+            try {
+                ok = Operation.send(this, operation, random);
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long end = System.nanoTime();
+            if (start >= measureFrom && end <= measureUntil) {
+                OperationStats stats = operations.get(operation);
+                stats.latencies.recordValue(end - start);
+                if (!ok) {
+                    stats.errors.increment();
+                }
+            }
+        }
+    }
+
+    private String pick(int weight) {
+
+        for (Map.Entry<String, Integer> operation : options.mix.entrySet()) {
+            weight -= operation.getValue();
+            if (weight < 0) {
+                return operation.getKey();
+            }
+        }
+        throw new IllegalStateException("weight out of range");
+    }
+
+    private boolean upload(byte[] content) throws IOException, InterruptedException {
+
+        // a unique first line, so content deduplication does not turn the upload into a lookup
+        long upload = uploadCount.incrementAndGet();
+        byte[] head = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"load-test-" + upload
+                + ".txt\"\r\nContent-Type: text/plain\r\n\r\nload test upload " + upload + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        // one array, so the request has a Content-Length and is admitted for its size rather than sent chunked
+        byte[] body = new byte[head.length + content.length + tail.length];
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(content, 0, body, head.length, content.length);
+        System.arraycopy(tail, 0, body, head.length + content.length, tail.length);
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/file/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        fileIds.add(Long.valueOf(response.body().trim()));
+        return true;
+    }
+
+    private boolean get(String pathAndQuery, String accept) throws IOException, InterruptedException {
+
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/file/" + pathAndQuery)).header("Accept", accept).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+    }
+
+
+    private static final class Operation {
+
+        private static final List<String> NAMES = List.of("upload", "random-line", "random-line-backward",
+                "twenty-longest-line", "hundred-longest-line-from-all-files");
+
+        private static boolean send(LoadTest loadTest, String operation, ThreadLocalRandom random) throws IOException, InterruptedException {
+
+            return switch (operation) {
+                case "upload" -> loadTest.upload(loadTest.uploadContents.get(random.nextInt(loadTest.uploadContents.size())));
+                case "random-line" -> loadTest.get("random-line?id=" + loadTest.fileIds.get(random.nextInt(loadTest.fileIds.size())), "text/plain");
+                case "random-line-backward" -> loadTest.get("random-line-backward", "application/json");
+                case "twenty-longest-line" -> loadTest.get("twenty-longest-line", "application/json");
+                case "hundred-longest-line-from-all-files" -> loadTest.get("hundred-longest-line-from-all-files", "application/json");
+                default -> throw new IllegalArgumentException(operation);
+            };
+        }
+    }
+
+    private static final class OperationStats {
+
+        private final ConcurrentHistogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * @param mix         operation weights, e.g. {@code upload=1,random-line=6}
+     * @param uploadSizes uploads pick one of these sizes in bytes at random
+     * @param files       uploads before the warmup, so reads have a corpus; at least one
+     */
+    record Options(int concurrency, Duration warmup, Duration duration, Map<String, Integer> mix, List<Integer> uploadSizes,
+                   int files, Path output, List<String> applicationArgs) {
+
+        static Options parse(String[] args) {
+
+            Map<String, String> values = new LinkedHashMap<>(Map.of(
+                    "concurrency", "16",
+                    "warmup", "10",
+                    "duration", "30",
+                    "mix", "upload=1,random-line=6,random-line-backward=1,twenty-longest-line=1,hundred-longest-line-from-all-files=1",
+                    "upload-sizes", "4096,262144,4194304",
+                    "files", "20",
+                    "output", "target/load-test/result.json"));
+            List<String> applicationArgs = new ArrayList<>();
+            for (String arg : args) {
+                String name = arg.startsWith("--") && arg.contains("=") ? arg.substring(2, arg.indexOf('=')) : null;
+                if (name != null && values.containsKey(name)) {
+                    values.put(name, arg.substring(arg.indexOf('=') + 1));
+                } else {
+                    applicationArgs.add(arg);
+                }
+            }
+
+            Map<String, Integer> mix = new LinkedHashMap<>();
+            for (String operation : values.get("mix").split(",")) {
+                String[] nameAndWeight = operation.split("=");
+                mix.put(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim()));
+            }
+            List<Integer> uploadSizes = new ArrayList<>();
+            for (String size : values.get("upload-sizes").split(",")) {
+                uploadSizes.add(Integer.parseInt(size.trim()));
+            }
+            int files = Integer.parseInt(values.get("files"));
+            if (files < 1) {
+                // random-line reads pick one of the uploaded files from the start
+                throw new IllegalArgumentException("--files must be at least 1, was " + files);
+            }
+            return new Options(Integer.parseInt(values.get("concurrency")), Duration.ofSeconds(Long.parseLong(values.get("warmup"))),
+                    Duration.ofSeconds(Long.parseLong(values.get("duration"))), mix, uploadSizes,
+                    files, Path.of(values.get("output")), applicationArgs);
+        }
+
+        Map<String, Object> describe() {
+
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("concurrency", concurrency);
+            description.put("warmupSeconds", warmup.toSeconds());
+            description.put("durationSeconds", duration.toSeconds());
+            description.put("mix", mix);
+            description.put("uploadSizes", uploadSizes);
+            description.put("files", files);
+            description.put("applicationArgs", applicationArgs);
+            description.put("javaVersion", Runtime.version().toString());
+            description.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            return description;
+        }
+    }
+
+    record Latency(double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+
+        static Latency of(Histogram histogram) {
+
+            return new Latency(millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / 1e3) / 1e3;
+        }
+    }
+
+    record OperationResult(long requests, long errors, double requestsPerSecond, Latency latency) {
+    }
+
+    record Result(String startedAt, Map<String, Object> options, double measuredSeconds, long requests, long errors,
+                  double requestsPerSecond, Latency latency, long heapPeakBytes, long heapMaxBytes, long gcCollections,
+                  long gcMillis, Map<String, OperationResult> operations) {
+
+        void print() {
+
+            System.out.printf("%-40s %10s %8s %10s %10s %10s %10s%n", "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms");
+            operations.forEach((name, operation) -> print(name, operation.requests, operation.errors, operation.requestsPerSecond, operation.latency));
+            print("total", requests, errors, requestsPerSecond, latency);
+            System.out.printf("heap high-water mark %d MB of %d MB, %d collections taking %d ms%n",
+                    heapPeakBytes >> 20, heapMaxBytes >> 20, gcCollections, gcMillis);
+        }
+
+        private static void print(String name, long requests, long errors, double requestsPerSecond, Latency latency) {
+
+            System.out.printf("%-40s %10d %8d %10.1f %10.3f %10.3f %10.3f%n", name, requests, errors, requestsPerSecond,
+                    latency.p50Millis, latency.p99Millis, latency.p999Millis);
+        }
+    }
+
+    private record GcTotals(long collections, long millis) {
+
+        static GcTotals now() {
+
+            long collections = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections += Math.max(0, collector.getCollectionCount());
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            return new GcTotals(collections, millis);
+        }
+
+        GcTotals minus(GcTotals before) {
+            return new GcTotals(collections - before.collections, millis - before.millis);
+        }
+    }
+}
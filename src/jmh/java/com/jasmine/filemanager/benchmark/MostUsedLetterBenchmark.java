@@ -0,0 +1,65 @@
+package com.jasmine.filemanager.benchmark;
+
+import com.jasmine.filemanager.index.LetterCounter;
+import com.jasmine.filemanager.index.LineIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finding the most used letter of every line of the corpus: the reusable primitive counter against a map
+ * of boxed counts.
+ */
+public class MostUsedLetterBenchmark extends CorpusBenchmark {
+
+    private final LetterCounter letterCounter = new LetterCounter();
+
+    private List<String> lines;
+
+    @Setup(Level.Trial)
+    public void decodeLines() {
+
+        lines = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            LineIndex lineIndex = lineIndexes.get(i);
+            for (int line = 0; line < lineIndex.lineCount(); line++) {
+                lines.add(new String(files.get(i), lineIndex.lineStart(line), lineIndex.lineLength(line), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Benchmark
+    public void letterCounter(Blackhole blackhole) {
+
+        for (String line : lines) {
+            blackhole.consume(LetterCounter.mostUsedLetter(line, letterCounter));
+        }
+    }
+
+    @Benchmark
+    public void hashMap(Blackhole blackhole) {
+
+        for (String line : lines) {
+            Map<Integer, Integer> counts = new HashMap<>();
+            int mostUsed = -1;
+            int mostUsedCount = 0;
+            for (int codePoint : line.codePoints().toArray()) {
+                if (codePoint != ' ') {
+                    int count = counts.merge(codePoint, 1, Integer::sum);
+                    if (count > mostUsedCount) {
+                        mostUsed = codePoint;
+                        mostUsedCount = count;
+                    }
+                }
+            }
+            blackhole.consume(mostUsed);
+        }
+    }
+}
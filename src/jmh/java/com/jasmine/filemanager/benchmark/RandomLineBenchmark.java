@@ -0,0 +1,96 @@
+package com.jasmine.filemanager.benchmark;
+
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.index.LineRange;
+import com.jasmine.filemanager.index.ReservoirLineSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Picking random lines of every file, as {@code /random-line} and {@code /random-line-backward} do: through
+ * the line index, in a reservoir pass over content without one, and by splitting the whole file.
+ * The backward variants also reverse the picked lines.
+ */
+public class RandomLineBenchmark extends CorpusBenchmark {
+
+    @Param("1")
+    public int linesPerFile;
+
+    private final Random random = new Random(7);
+
+    @Benchmark
+    public void indexed(Blackhole blackhole) {
+
+        for (int i = 0; i < files.size(); i++) {
+            LineIndex lineIndex = lineIndexes.get(i);
+            for (int picked = 0; picked < linesPerFile; picked++) {
+                int line = random.nextInt(lineIndex.lineCount());
+                blackhole.consume(new String(files.get(i), lineIndex.lineStart(line), lineIndex.lineLength(line), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Benchmark
+    public void reservoir(Blackhole blackhole) {
+
+        for (ByteBuffer buffer : buffers) {
+            for (LineRange lineRange : sample(buffer)) {
+                blackhole.consume(decode(buffer, lineRange));
+            }
+        }
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+
+        for (byte[] file : files) {
+            String[] lines = new String(file, StandardCharsets.UTF_8).split("\n");
+            for (int picked = 0; picked < linesPerFile; picked++) {
+                blackhole.consume(lines[random.nextInt(lines.length)]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void indexedBackward(Blackhole blackhole) {
+
+        for (int i = 0; i < files.size(); i++) {
+            LineIndex lineIndex = lineIndexes.get(i);
+            for (int picked = 0; picked < linesPerFile; picked++) {
+                int line = random.nextInt(lineIndex.lineCount());
+                String text = new String(files.get(i), lineIndex.lineStart(line), lineIndex.lineLength(line), StandardCharsets.UTF_8);
+                blackhole.consume(new StringBuilder(text).reverse().toString());
+            }
+        }
+    }
+
+    @Benchmark
+    public void reservoirBackward(Blackhole blackhole) {
+
+        for (ByteBuffer buffer : buffers) {
+            for (LineRange lineRange : sample(buffer)) {
+                blackhole.consume(new StringBuilder(decode(buffer, lineRange)).reverse().toString());
+            }
+        }
+    }
+
+
+    private Iterable<LineRange> sample(ByteBuffer buffer) {
+
+        ReservoirLineSampler sampler = new ReservoirLineSampler(linesPerFile, random);
+        sampler.append(buffer);
+        return sampler.finish();
+    }
+
+    private static String decode(ByteBuffer buffer, LineRange lineRange) {
+
+        byte[] lineBytes = new byte[lineRange.byteLength()];
+        buffer.get(lineRange.start(), lineBytes);
+        return new String(lineBytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package com.jasmine.filemanager.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible text files for the benchmarks: words of lowercase letters, a few of them with
+ * two-byte UTF-8 letters, in lines whose lengths follow a {@link LineLengths distribution} around a mean.
+ */
+public final class SyntheticCorpus {
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzéüöß";
+
+    private SyntheticCorpus() {
+    }
+
+    public enum LineLengths {
+
+        /** every line has the mean length */
+        FIXED,
+        /** lengths are uniform between 1 and twice the mean */
+        UNIFORM,
+        /** exponential around the mean: mostly short lines and a few very long ones, like logs */
+        SKEWED;
+
+        int next(Random random, int mean) {
+
+            return switch (this) {
+                case FIXED -> mean;
+                case UNIFORM -> 1 + random.nextInt(2 * mean);
+                case SKEWED -> 1 + (int) Math.min(Integer.MAX_VALUE / 2, -Math.log(1 - random.nextDouble()) * mean);
+            };
+        }
+    }
+
+    /**
+     * @return {@code fileCount} files of at least {@code fileSize} chars each, the same ones for the same seed
+     */
+    public static List<byte[]> generate(long seed, int fileCount, int fileSize, int meanLineLength, LineLengths lineLengths) {
+
+        Random random = new Random(seed);
+        List<byte[]> files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            files.add(generateFile(random, fileSize, meanLineLength, lineLengths));
+        }
+        return files;
+    }
+
+    private static byte[] generateFile(Random random, int fileSize, int meanLineLength, LineLengths lineLengths) {
+
+        StringBuilder text = new StringBuilder(fileSize);
+        while (text.length() < fileSize) {
+            int lineLength = lineLengths.next(random, meanLineLength);
+            int lineEnd = text.length() + lineLength;
+            while (text.length() < lineEnd) {
+                if (random.nextInt(8) == 0 && text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+                    text.append(' ');
+                } else {
+                    // multi-byte letters are rare, as in mostly English text
+                    text.append(LETTERS.charAt(random.nextInt(random.nextInt(16) == 0 ? LETTERS.length() : 26)));
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.jasmine.filemanager.benchmark;
+
+import com.jasmine.filemanager.index.LongestLinesCollector;
+import com.jasmine.filemanager.index.ParallelTopLines;
+import com.jasmine.filemanager.index.TopLines;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Selecting the {@code n} longest lines of every file and of the whole corpus.
+ */
+public class TopLinesBenchmark extends CorpusBenchmark {
+
+    @Param({"20", "100"})
+    public int n;
+
+    /**
+     * While the content streams by, as on upload.
+     */
+    @Benchmark
+    public TopLines collectWhileStreaming() {
+
+        TopLines corpus = new TopLines(n);
+        for (int i = 0; i < files.size(); i++) {
+            LongestLinesCollector collector = new LongestLinesCollector(i, n);
+            collector.append(files.get(i), 0, files.get(i).length);
+            corpus.offerAll(collector.finish());
+        }
+        return corpus;
+    }
+
+    /**
+     * Over indexed content, as for a custom {@code n}.
+     */
+    @Benchmark
+    public TopLines selectFromIndex() {
+
+        TopLines corpus = new TopLines(n);
+        for (int i = 0; i < files.size(); i++) {
+            corpus.offerAll(ParallelTopLines.select(i, buffers.get(i), lineIndexes.get(i), n));
+        }
+        return corpus;
+    }
+
+    /**
+     * Decoding, splitting and sorting every line.
+     */
+    @Benchmark
+    public void splitAndSort(Blackhole blackhole) {
+
+        for (byte[] file : files) {
+            String[] lines = new String(file, StandardCharsets.UTF_8).split("\n");
+            Arrays.sort(lines, Comparator.comparingInt(String::length).reversed());
+            blackhole.consume(Arrays.copyOf(lines, Math.min(n, lines.length)));
+        }
+    }
+}
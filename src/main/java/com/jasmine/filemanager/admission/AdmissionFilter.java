@@ -0,0 +1,166 @@
+package com.jasmine.filemanager.admission;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Admits uploads and reads before they are handled, and rejects them when the server is already busy enough.
+ * <p>
+ * The filter runs before the multipart body is parsed, so an upload waiting for admission has not read its body
+ * yet and one which is rejected never does. Uploads are charged their {@code Content-Length} against the byte
+ * budget of the upload pool. A chunked upload, which has none, is admitted for
+ * {@code file-manager.admission.unknown-length} and charged the size of its parts once they are received, before
+ * it is handled. Reads go through a pool of their own, so a burst of uploads cannot take the
+ * capacity reads need. A rejected request is answered with {@code file-manager.admission.rejection-status} and a
+ * {@code Retry-After} header. A permit is held until the response is complete, also for a streamed one.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final Set<String> UPLOAD_PATHS = Set.of("/file/upload", "/file/upload-batch", "/file/ingest");
+    private static final String READ_PATH_PREFIX = "/file/";
+
+    private final FileManagerProperties.Admission admission;
+    private final AdmissionPool uploadPool;
+    private final AdmissionPool readPool;
+
+    public AdmissionFilter(FileManagerProperties properties) {
+        this.admission = properties.getAdmission();
+        this.uploadPool = pool("upload", admission.getUpload());
+        this.readPool = pool("read", admission.getRead());
+    }
+
+    public List<AdmissionPool> pools() {
+        return List.of(uploadPool, readPool);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admission.isEnabled() || poolOf(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        AdmissionPool pool = poolOf(request);
+        long contentLength = pool == uploadPool ? request.getContentLengthLong() : 0;
+        long admittedBytes = contentLength >= 0 ? contentLength : admission.getUnknownLength().toBytes();
+        AdmissionPool.Permit permit;
+        try {
+            permit = pool.acquire(admittedBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit = null;
+        }
+        if (permit == null) {
+            reject(pool, response);
+            return;
+        }
+
+        boolean async = false;
+        try {
+            if (contentLength < 0) {
+                chargeReceivedParts(request, permit, admittedBytes);
+            }
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(permit));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permit.release();
+            }
+        }
+    }
+
+
+    private AdmissionPool poolOf(HttpServletRequest request) {
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (HttpMethod.POST.matches(request.getMethod()) && UPLOAD_PATHS.contains(path)) {
+            return uploadPool;
+        }
+        if (HttpMethod.GET.matches(request.getMethod()) && path.startsWith(READ_PATH_PREFIX)) {
+            return readPool;
+        }
+        return null;
+    }
+
+    /**
+     * Receives the parts of a chunked multipart upload, which the container keeps for the handler, and charges
+     * what they take beyond the bytes the upload was admitted for.
+     */
+    private static void chargeReceivedParts(HttpServletRequest request, AdmissionPool.Permit permit, long admittedBytes) {
+
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) {
+            return;
+        }
+        try {
+            long received = 0;
+            for (Part part : request.getParts()) {
+                received += part.getSize();
+            }
+            permit.charge(received - admittedBytes);
+        } catch (IOException | ServletException | IllegalStateException e) {
+            // the handler gets the same failure when it asks for the parts
+        }
+    }
+
+    private void reject(AdmissionPool pool, HttpServletResponse response) throws IOException {
+
+        long retryAfter = Math.max(1, (admission.getRetryAfter().toMillis() + 999) / 1000);
+        response.setStatus(admission.getRejectionStatus());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("too many " + pool.name() + "s in progress, retry in " + retryAfter + "s");
+    }
+
+    private static AdmissionPool pool(String name, FileManagerProperties.Admission.Pool pool) {
+
+        long maxInFlightBytes = pool.getMaxInFlightBytes() == null ? Long.MAX_VALUE : pool.getMaxInFlightBytes().toBytes();
+        return new AdmissionPool(name, pool.getMaxConcurrent(), maxInFlightBytes, pool.getMaxQueued(), pool.getMaxWait());
+    }
+
+
+    private record ReleasingListener(AdmissionPool.Permit permit) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // the request is still in progress
+        }
+    }
+}
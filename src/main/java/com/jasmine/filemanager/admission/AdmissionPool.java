@@ -0,0 +1,189 @@
+package com.jasmine.filemanager.admission;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the requests of one kind which are handled at the same time, by their number and the bytes of their
+ * bodies.
+ * <p>
+ * A request which does not fit waits in a queue of at most {@code maxQueued} requests, and requests are admitted
+ * strictly in the order they arrived: one which fits is not admitted ahead of an earlier one which does not, so
+ * a large upload is not starved by a stream of small ones. A request which is still waiting after
+ * {@code maxWait}, or finds the queue full, is rejected. A request larger than the whole byte budget is counted
+ * as the whole budget, so it is admitted once it runs alone. A request whose length is only known once it is
+ * received is admitted for a part of it and {@link Permit#charge charged} the rest later.
+ * <p>
+ * The waiting threads park on a lock rather than a monitor, so virtual threads do not pin their carrier.
+ */
+public class AdmissionPool {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxInFlightBytes;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private int inFlight;
+    private long inFlightBytes;
+    private long admitted;
+    private long rejectedQueueFull;
+    private long rejectedTimeout;
+
+    /**
+     * @param maxInFlightBytes {@code Long.MAX_VALUE} for no byte budget
+     */
+    public AdmissionPool(String name, int maxConcurrent, long maxInFlightBytes, int maxQueued, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxInFlightBytes = Math.max(1, maxInFlightBytes);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Waits until a request of {@code bytes} fits.
+     *
+     * @param bytes body length of the request
+     * @return the permit to release once the request is done, or {@code null} if the request is rejected
+     */
+    public Permit acquire(long bytes) throws InterruptedException {
+
+        long cost = Math.min(Math.max(0, bytes), maxInFlightBytes);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        lock.lock();
+        try {
+            if (queue.isEmpty() && fits(cost)) {
+                return admit(cost);
+            }
+            if (queue.size() >= maxQueued) {
+                rejectedQueueFull++;
+                return null;
+            }
+
+            Object waiter = new Object();
+            queue.addLast(waiter);
+            try {
+                while (queue.peekFirst() != waiter || !fits(cost)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        rejectedTimeout++;
+                        return null;
+                    }
+                    released.awaitNanos(remaining);
+                }
+                return admit(cost);
+            } finally {
+                queue.remove(waiter);
+                // the next one in the queue may fit now
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+
+        lock.lock();
+        try {
+            return new Stats(inFlight, inFlightBytes, queue.size(), admitted, rejectedQueueFull, rejectedTimeout);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private boolean fits(long cost) {
+        return inFlight < maxConcurrent && cost <= maxInFlightBytes - inFlightBytes;
+    }
+
+    private Permit admit(long cost) {
+
+        inFlight++;
+        inFlightBytes += cost;
+        admitted++;
+        return new Permit(cost);
+    }
+
+    private void release(Permit permit) {
+
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightBytes -= permit.cost;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void charge(Permit permit, long bytes) {
+
+        lock.lock();
+        try {
+            if (!permit.released.get()) {
+                permit.cost += bytes;
+                inFlightBytes += bytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * The admission of one request. Releasing it more than once has no effect.
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+        // guarded by the lock of the pool
+        private long cost;
+
+        private Permit(long cost) {
+            this.cost = cost;
+        }
+
+        /**
+         * Adds bytes of the request which were not known when it was admitted. They may take the pool beyond
+         * its byte budget, which then admits nothing more until enough of them are released.
+         */
+        public void charge(long bytes) {
+
+            if (bytes > 0) {
+                AdmissionPool.this.charge(this, bytes);
+            }
+        }
+
+        public void release() {
+
+            if (released.compareAndSet(false, true)) {
+                AdmissionPool.this.release(this);
+            }
+        }
+    }
+
+    /**
+     * @param inFlight          requests being handled
+     * @param inFlightBytes     body bytes of the requests being handled
+     * @param queued            requests waiting for admission
+     * @param admitted          requests admitted so far
+     * @param rejectedQueueFull requests rejected because the queue was full
+     * @param rejectedTimeout   requests rejected because they waited too long
+     */
+    public record Stats(int inFlight, long inFlightBytes, int queued, long admitted, long rejectedQueueFull,
+                        long rejectedTimeout) {
+    }
+}
@@ -0,0 +1,265 @@
+package com.jasmine.filemanager.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "file-manager")
+public class FileManagerProperties {
+
+    private Upload upload = new Upload();
+
+    private Store store = new Store();
+
+    private LineCache lineCache = new LineCache();
+
+    private Ingest ingest = new Ingest();
+
+    private Snapshot snapshot = new Snapshot();
+
+    private Retention retention = new Retention();
+
+    private Compaction compaction = new Compaction();
+
+    private Admission admission = new Admission();
+
+    /**
+     * whether requests and the ingest stages run on virtual threads instead of platform threads
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * number of consecutive lines whose most used letter is kept together in the file statistics
+     */
+    private int statsLineBucketSize = 1000;
+
+    /**
+     * number of files fetched per page when walking all files
+     */
+    private int corpusPageSize = 100;
+
+
+    @Data
+    public static class Upload {
+
+        /**
+         * size of the pieces an upload is read and stored in
+         */
+        private DataSize chunkSize = DataSize.ofMegabytes(1);
+
+        /**
+         * upper bound of chunk buffers held by all running uploads together
+         */
+        private DataSize maxInFlightBytes = DataSize.ofMegabytes(64);
+    }
+
+
+    @Data
+    public static class Store {
+
+        /**
+         * where file content is kept: {@code database} chunks or {@code disk} segments
+         */
+        private String type = "database";
+
+        /**
+         * directory of the disk segments
+         */
+        private Path directory = Path.of("data", "content");
+
+        /**
+         * size after which the disk store starts a new segment
+         */
+        private DataSize segmentSize = DataSize.ofGigabytes(1);
+
+        /**
+         * whether the database store deflates every chunk on its own, the chunk size is then the block size
+         * a read has to inflate at least
+         */
+        private boolean compress = false;
+
+        /**
+         * share of a disk segment taken by deleted content from which the compactor moves the rest of its content
+         * out and deletes it
+         */
+        private double compactionGarbageRatio = 0.5;
+    }
+
+
+    @Data
+    public static class LineCache {
+
+        /**
+         * upper bound of line offsets and heap content held by the line view cache
+         */
+        private DataSize maxWeight = DataSize.ofMegabytes(64);
+    }
+
+
+    @Data
+    public static class Ingest {
+
+        /**
+         * directory asynchronous uploads are spooled to until they are indexed
+         */
+        private Path directory = Path.of("data", "ingest");
+
+        /**
+         * number of spooled uploads indexed at the same time
+         */
+        private int indexConcurrency = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * maximum number of indexed uploads stored together in one transaction
+         */
+        private int persistBatchSize = 50;
+
+        /**
+         * number of finished ingests whose status can still be looked up
+         */
+        private int retainedStatuses = 10_000;
+    }
+
+
+    @Data
+    public static class Snapshot {
+
+        /**
+         * whether the in-memory indexes are saved periodically and restored at startup instead of being rebuilt
+         * from all content, only useful with a database which outlives the application
+         */
+        private boolean enabled = false;
+
+        /**
+         * directory of the index snapshots
+         */
+        private Path directory = Path.of("data", "snapshots");
+
+        /**
+         * time between two snapshots, a snapshot is only written if files were stored since the last one
+         */
+        private Duration interval = Duration.ofMinutes(10);
+
+        /**
+         * number of snapshots kept, the newest readable one is restored
+         */
+        private int retained = 2;
+    }
+
+
+    @Data
+    public static class Retention {
+
+        /**
+         * age after which a file is deleted, unlimited if not set
+         */
+        private Duration maxAge;
+
+        /**
+         * upper bound of the stored content, each distinct content counted once; the oldest files are deleted
+         * beyond it, unlimited if not set
+         */
+        private DataSize maxTotalSize;
+
+        /**
+         * upper bound of the number of files; the oldest files are deleted beyond it, unlimited if not set
+         */
+        private Long maxFileCount;
+    }
+
+
+    @Data
+    public static class Compaction {
+
+        /**
+         * time between two passes of the compactor, which applies the retention, drops abandoned uploads and
+         * compacts disk segments
+         */
+        private Duration interval = Duration.ofMinutes(1);
+
+        /**
+         * maximum number of files deleted in one transaction
+         */
+        private int batchSize = 100;
+
+        /**
+         * pause after every batch, so deleting many files does not hold up requests
+         */
+        private Duration batchPause = Duration.ofMillis(50);
+
+        /**
+         * upper bound of the content moved per second while compacting disk segments
+         */
+        private DataSize rate = DataSize.ofMegabytes(32);
+    }
+
+
+    @Data
+    public static class Admission {
+
+        /**
+         * whether uploads and reads have to be admitted before they are handled
+         */
+        private boolean enabled = true;
+
+        /**
+         * uploads: {@code POST /file/upload}, {@code /file/upload-batch} and {@code /file/ingest}
+         */
+        private Pool upload = new Pool(16, DataSize.ofGigabytes(1), 32, Duration.ofSeconds(30));
+
+        /**
+         * reads: every {@code GET /file/...}, kept apart so uploads cannot take their capacity
+         */
+        private Pool read = new Pool(128, null, 128, Duration.ofSeconds(5));
+
+        /**
+         * bytes an upload without {@code Content-Length} is admitted for; the size of its parts is charged once
+         * they are received
+         */
+        private DataSize unknownLength = DataSize.ofMegabytes(1);
+
+        /**
+         * time a rejected client is asked to wait before retrying, sent as {@code Retry-After}
+         */
+        private Duration retryAfter = Duration.ofSeconds(5);
+
+        /**
+         * status of a rejected request, 503 or 429
+         */
+        private int rejectionStatus = 503;
+
+
+        @Data
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Pool {
+
+            /**
+             * maximum number of requests handled at the same time
+             */
+            private int maxConcurrent;
+
+            /**
+             * upper bound of the request bodies handled at the same time, by their {@code Content-Length}; unlimited
+             * if not set
+             */
+            private DataSize maxInFlightBytes;
+
+            /**
+             * maximum number of requests waiting for admission; any more are rejected right away
+             */
+            private int maxQueued;
+
+            /**
+             * time a request waits for admission before it is rejected
+             */
+            private Duration maxWait;
+        }
+    }
+}
@@ -7,17 +7,23 @@ import org.springframework.web.multipart.MultipartFile;
 
 public class FileValidator implements ConstraintValidator<ValidFile, MultipartFile> {
 
+    public static final String MESSAGE = "file is empty or the format is wrong, text file is just allowed";
 
     @Override
     public boolean isValid(MultipartFile multipartFile, ConstraintValidatorContext context) {
 
-        if(multipartFile.isEmpty()){
+        return isValid(multipartFile.getSize(), multipartFile.getContentType());
+    }
+
+    public static boolean isValid(long size, String contentType) {
+
+        if(size == 0){
             return false;
         }
-        return isSupportedContentType(multipartFile.getContentType());
+        return isSupportedContentType(contentType);
     }
 
-    private boolean isSupportedContentType(String contentType) {
-        return contentType.equals(MediaType.TEXT_PLAIN_VALUE);
+    private static boolean isSupportedContentType(String contentType) {
+        return MediaType.TEXT_PLAIN_VALUE.equals(contentType);
     }
 }
@@ -0,0 +1,39 @@
+package com.jasmine.filemanager.config;
+
+import com.jasmine.filemanager.service.CorpusLineCounts;
+import com.jasmine.filemanager.service.LineSearchIndex;
+import com.jasmine.filemanager.service.LongestLinesTracker;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the in-memory indexes as out of service until their startup rebuild or snapshot replay is done.
+ * It is part of the readiness group, so {@code /actuator/health/readiness} stays down while they load.
+ */
+@Component
+public class IndexesHealthIndicator implements HealthIndicator {
+
+    private final CorpusLineCounts corpusLineCounts;
+    private final LongestLinesTracker longestLinesTracker;
+    private final LineSearchIndex lineSearchIndex;
+
+    public IndexesHealthIndicator(CorpusLineCounts corpusLineCounts, LongestLinesTracker longestLinesTracker, LineSearchIndex lineSearchIndex) {
+        this.corpusLineCounts = corpusLineCounts;
+        this.longestLinesTracker = longestLinesTracker;
+        this.lineSearchIndex = lineSearchIndex;
+    }
+
+    @Override
+    public Health health() {
+
+        boolean corpusLineCountsLoaded = corpusLineCounts.isLoaded();
+        boolean longestLinesLoaded = longestLinesTracker.isLoaded();
+        boolean searchIndexLoaded = lineSearchIndex.isLoaded();
+        Health.Builder health = corpusLineCountsLoaded && longestLinesLoaded && searchIndexLoaded ? Health.up() : Health.outOfService();
+        return health.withDetail("corpusLineCounts", corpusLineCountsLoaded)
+                .withDetail("longestLines", longestLinesLoaded)
+                .withDetail("searchIndex", searchIndexLoaded)
+                .build();
+    }
+}
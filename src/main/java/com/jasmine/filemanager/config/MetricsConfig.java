@@ -0,0 +1,71 @@
+package com.jasmine.filemanager.config;
+
+import com.jasmine.filemanager.admission.AdmissionFilter;
+import com.jasmine.filemanager.admission.AdmissionPool;
+import com.jasmine.filemanager.service.LineViewCache;
+import com.jasmine.filemanager.store.ContentStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publishes the line view cache, content store and admission statistics as meters, next to the per-operation metrics.
+ */
+@Configuration
+public class MetricsConfig {
+
+
+    @Bean
+    public MeterBinder lineViewCacheMetrics(LineViewCache lineViewCache) {
+
+        return registry -> {
+            FunctionCounter.builder("file-manager.line-cache.requests", lineViewCache, cache -> cache.stats().hits())
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("file-manager.line-cache.requests", lineViewCache, cache -> cache.stats().misses())
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("file-manager.line-cache.evictions", lineViewCache, cache -> cache.stats().evictions())
+                    .register(registry);
+            Gauge.builder("file-manager.line-cache.entries", lineViewCache, cache -> cache.stats().entries())
+                    .register(registry);
+            Gauge.builder("file-manager.line-cache.weight", lineViewCache, cache -> cache.stats().weight())
+                    .baseUnit(BaseUnits.BYTES).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder contentStoreMetrics(ContentStore contentStore) {
+
+        return registry -> {
+            FunctionCounter.builder("file-manager.store.bytes.written", contentStore, store -> store.stats().bytesWritten())
+                    .baseUnit(BaseUnits.BYTES).register(registry);
+            FunctionCounter.builder("file-manager.store.bytes.stored", contentStore, store -> store.stats().bytesStored())
+                    .baseUnit(BaseUnits.BYTES).register(registry);
+            FunctionCounter.builder("file-manager.store.bytes.inflated", contentStore, store -> store.stats().bytesDecoded())
+                    .baseUnit(BaseUnits.BYTES).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder admissionMetrics(AdmissionFilter admissionFilter) {
+
+        return registry -> {
+            for (AdmissionPool pool : admissionFilter.pools()) {
+                Gauge.builder("file-manager.admission.queued", pool, p -> p.stats().queued())
+                        .tag("pool", pool.name()).register(registry);
+                Gauge.builder("file-manager.admission.in-flight", pool, p -> p.stats().inFlight())
+                        .tag("pool", pool.name()).register(registry);
+                Gauge.builder("file-manager.admission.in-flight.bytes", pool, p -> p.stats().inFlightBytes())
+                        .tag("pool", pool.name()).baseUnit(BaseUnits.BYTES).register(registry);
+                FunctionCounter.builder("file-manager.admission.admitted", pool, p -> p.stats().admitted())
+                        .tag("pool", pool.name()).register(registry);
+                FunctionCounter.builder("file-manager.admission.rejected", pool, p -> p.stats().rejectedQueueFull())
+                        .tag("pool", pool.name()).tag("reason", "queue-full").register(registry);
+                FunctionCounter.builder("file-manager.admission.rejected", pool, p -> p.stats().rejectedTimeout())
+                        .tag("pool", pool.name()).tag("reason", "timeout").register(registry);
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.jasmine.filemanager.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Writes collections as newline-delimited JSON, one element per line.
+ */
+public class NdjsonHttpMessageConverter extends AbstractHttpMessageConverter<Collection<?>> {
+
+    private final ObjectWriter objectWriter;
+
+    public NdjsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_NDJSON);
+        this.objectWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Collection.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Collection<?> readInternal(Class<? extends Collection<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("newline-delimited JSON can not be read", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Collection<?> elements, HttpOutputMessage outputMessage) throws IOException {
+
+        OutputStream body = outputMessage.getBody();
+        for (Object element : elements) {
+            objectWriter.writeValue(body, element);
+            body.write('\n');
+        }
+    }
+}
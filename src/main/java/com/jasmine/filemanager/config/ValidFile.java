@@ -14,7 +14,7 @@ import java.lang.annotation.Target;
 @Constraint(validatedBy = {FileValidator.class})
 public @interface ValidFile {
 
-    String message() default "file is empty or the format is wrong, text file is just allowed";
+    String message() default FileValidator.MESSAGE;
 
     Class<?>[] groups() default {};
 
@@ -0,0 +1,35 @@
+package com.jasmine.filemanager.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+
+    private final ObjectMapper objectMapper;
+
+    public WebConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new NdjsonHttpMessageConverter(objectMapper));
+    }
+
+    /**
+     * Answers {@code Expect: 100-continue} only once the body is read, so a client whose upload is not admitted
+     * learns it before it sends the body.
+     */
+    @Bean
+    public TomcatConnectorCustomizer continueOnReadConnectorCustomizer() {
+        return connector -> connector.setProperty("continueResponseTiming", "onRead");
+    }
+}
@@ -2,16 +2,44 @@ package com.jasmine.filemanager.controller;
 
 
 import com.jasmine.filemanager.config.ValidFile;
+import com.jasmine.filemanager.service.BatchUploadResult;
+import com.jasmine.filemanager.service.FileLines;
 import com.jasmine.filemanager.service.FileService;
+import com.jasmine.filemanager.service.FileStats;
+import com.jasmine.filemanager.service.IngestPipeline;
+import com.jasmine.filemanager.service.IngestStatus;
+import com.jasmine.filemanager.service.LineViewCache;
+import com.jasmine.filemanager.service.RandomLine;
+import com.jasmine.filemanager.service.RawContent;
+import com.jasmine.filemanager.service.SearchResult;
+import com.jasmine.filemanager.store.ContentStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Validated
 @RestController
@@ -19,11 +47,23 @@ import java.util.List;
 public class FileController {
 
 
+    private static final int MAX_LINE_NUMBER_TO_BE_RETURNED = 100_000;
+
+    // request attributes through which Tomcat sends a region of a file itself once the response is committed
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final FileService fileService;
+    private final IngestPipeline ingestPipeline;
+    private final ObjectWriter ndjsonWriter;
 
 
-    public FileController(FileService fileService) {
+    public FileController(FileService fileService, IngestPipeline ingestPipeline, ObjectMapper objectMapper) {
         this.fileService = fileService;
+        this.ingestPipeline = ingestPipeline;
+        this.ndjsonWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
     @PostMapping(value = "/upload")
@@ -33,6 +73,27 @@ public class FileController {
         return new ResponseEntity<>(id, HttpStatus.OK);
     }
 
+    @PostMapping(value = "/upload-batch")
+    public ResponseEntity<BatchUploadResult> uploadFiles(@NotEmpty @RequestParam("files") List<MultipartFile> files) throws Exception {
+
+        BatchUploadResult result = fileService.uploadFiles(files);
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/ingest")
+    public ResponseEntity<IngestStatus> ingestFile(@NotNull @RequestParam("file") MultipartFile file) throws Exception {
+
+        IngestStatus ingestStatus = ingestPipeline.submit(file);
+        return new ResponseEntity<>(ingestStatus, HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping(value = "/ingest/{id}")
+    public ResponseEntity<IngestStatus> getIngestStatus(@PathVariable Long id) throws Exception {
+
+        IngestStatus ingestStatus = ingestPipeline.getStatus(id).orElseThrow(() -> new Exception("ingest with id " + id + " not found"));
+        return new ResponseEntity<>(ingestStatus, HttpStatus.OK);
+    }
+
 
     @GetMapping(value = "/random-line", produces = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
     public ResponseEntity<String> getOneRandomLineOfLastFile(@RequestParam @NotNull Long id, @RequestHeader(value="Accept") String mediaType) throws Exception{
@@ -43,14 +104,29 @@ public class FileController {
 
     }
 
+    @GetMapping(value = "/random-lines", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<RandomLine>> getRandomLines(@RequestParam(required = false) Long id,
+                                                           @RequestParam @Min(1) @Max(MAX_LINE_NUMBER_TO_BE_RETURNED) int count,
+                                                           @RequestParam(defaultValue = "false") boolean detail) throws Exception{
+
+        List<RandomLine> randomLines = fileService.getRandomLines(id, count, detail);
+        return new ResponseEntity<>(randomLines, HttpStatus.OK);
+    }
+
     @GetMapping(value = "/random-line-backward" )
-    public ResponseEntity<List<String>> getOneRandomLineBackward() throws Exception{
+    public ResponseEntity<List<String>> getOneRandomLineBackward(@RequestParam(defaultValue = "1") @Min(1) @Max(MAX_LINE_NUMBER_TO_BE_RETURNED) int linesPerFile) throws Exception{
 
-        List<String> randomLinesBackward = fileService.getRandomLinesBackward();
+        List<String> randomLinesBackward = fileService.getRandomLinesBackward(linesPerFile);
         return new ResponseEntity<>(randomLinesBackward, HttpStatus.OK);
 
     }
 
+    @GetMapping(value = "/random-line-backward", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamRandomLinesBackward(@RequestParam(defaultValue = "1") @Min(1) @Max(MAX_LINE_NUMBER_TO_BE_RETURNED) int linesPerFile) {
+
+        return streamNdjson(consumer -> fileService.streamRandomLinesBackward(linesPerFile, consumer));
+    }
+
 
     @GetMapping(value = "/twenty-longest-line")
     public ResponseEntity<List<String>> getTwentyLongestLines() throws Exception{
@@ -67,4 +143,170 @@ public class FileController {
         return new ResponseEntity<>(hundredLongestLine, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/hundred-longest-line-from-all-files", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamHundredLongestLinesOfAllFiles() {
+
+        return streamNdjson(fileService::streamHundredLongestLineOfAllFiles);
+    }
+
+
+    @GetMapping(value = "/line-cache/stats")
+    public ResponseEntity<LineViewCache.CacheStats> getLineCacheStats() {
+
+        LineViewCache.CacheStats cacheStats = fileService.getLineCacheStats();
+        return new ResponseEntity<>(cacheStats, HttpStatus.OK);
+    }
+
+
+    @GetMapping(value = "/store/stats")
+    public ResponseEntity<ContentStore.StoreStats> getStoreStats() {
+
+        ContentStore.StoreStats storeStats = fileService.getStoreStats();
+        return new ResponseEntity<>(storeStats, HttpStatus.OK);
+    }
+
+
+    @GetMapping(value = "/{id}/stats")
+    public ResponseEntity<FileStats> getFileStats(@PathVariable Long id) throws Exception{
+
+        FileStats fileStats = fileService.getFileStats(id);
+        return new ResponseEntity<>(fileStats, HttpStatus.OK);
+    }
+
+
+    @DeleteMapping(value = "/{id}")
+    public ResponseEntity<Void> deleteFile(@PathVariable Long id) throws Exception{
+
+        fileService.deleteFile(id);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+
+    @GetMapping(value = "/{id}/longest-lines")
+    public ResponseEntity<List<String>> getLongestLinesOfFile(@PathVariable Long id,
+                                                              @RequestParam(defaultValue = "20") @Min(1) @Max(MAX_LINE_NUMBER_TO_BE_RETURNED) int n) throws Exception{
+
+        List<String> longestLines = fileService.getLongestLinesOfFile(id, n);
+        return new ResponseEntity<>(longestLines, HttpStatus.OK);
+    }
+
+
+    @GetMapping(value = "/{id}/lines")
+    public ResponseEntity<FileLines> getLines(@PathVariable Long id,
+                                              @RequestParam(defaultValue = "0") @Min(0) int from,
+                                              @RequestParam @Min(1) int to) throws Exception{
+
+        if (to <= from || to - from > MAX_LINE_NUMBER_TO_BE_RETURNED) {
+            throw new ConstraintViolationException("getLines.to: must be greater than from and at most "
+                    + MAX_LINE_NUMBER_TO_BE_RETURNED + " lines after it", Set.of());
+        }
+        FileLines lines = fileService.getLines(id, from, to);
+        return new ResponseEntity<>(lines, HttpStatus.OK);
+    }
+
+
+    /**
+     * Sends the file as it was uploaded, or the single byte range asked for by a {@code Range} header; several
+     * ranges or a malformed header are ignored. Content on local disk is handed to the servlet container to be
+     * sent with {@code sendfile}, so it never passes through the heap; other content is copied from the content
+     * store a piece at a time.
+     */
+    @GetMapping(value = "/{id}/raw")
+    public ResponseEntity<StreamingResponseBody> getRawContent(@PathVariable Long id,
+                                                               @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                               HttpServletRequest request) throws Exception{
+
+        RawContent rawContent = fileService.getRawContent(id);
+        long length = rawContent.length();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+        headers.setETag("\"" + rawContent.hash() + "\"");
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        HttpStatus status = HttpStatus.OK;
+        long start = 0;
+        long end = length;
+        List<HttpRange> ranges = parseRanges(range);
+        if (ranges.size() == 1) {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length) + 1;
+            if (start >= end) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            status = HttpStatus.PARTIAL_CONTENT;
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+        }
+        headers.setContentLength(end - start);
+
+        ContentStore.FileRegion fileRegion = rawContent.fileRegion();
+        if (fileRegion != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, fileRegion.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, fileRegion.position() + start);
+            request.setAttribute(SENDFILE_END, fileRegion.position() + end);
+            return new ResponseEntity<>(headers, status);
+        }
+        long offset = start;
+        long count = end - start;
+        StreamingResponseBody body = outputStream -> fileService.transferRawContent(rawContent, offset, count, Channels.newChannel(outputStream));
+        return new ResponseEntity<>(body, headers, status);
+    }
+
+
+    @GetMapping(value = "/longest-lines")
+    public ResponseEntity<List<String>> getLongestLinesOfAllFiles(@RequestParam(defaultValue = "100") @Min(1) @Max(MAX_LINE_NUMBER_TO_BE_RETURNED) int n) throws Exception{
+
+        List<String> longestLines = fileService.getLongestLinesOfAllFiles(n);
+        return new ResponseEntity<>(longestLines, HttpStatus.OK);
+    }
+
+
+    @GetMapping(value = "/search")
+    public ResponseEntity<SearchResult> search(@RequestParam @NotBlank String q,
+                                               @RequestParam(defaultValue = "0") @Min(0) int page,
+                                               @RequestParam(defaultValue = "20") @Min(1) @Max(MAX_LINE_NUMBER_TO_BE_RETURNED) int size) throws Exception{
+
+        SearchResult searchResult = fileService.search(q, page, size);
+        return new ResponseEntity<>(searchResult, HttpStatus.OK);
+    }
+
+
+    private static List<HttpRange> parseRanges(String range) {
+
+        if (range == null) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Writes every produced element as one line of JSON right away. A slow client blocks the writing thread in
+     * the socket write, which holds back the producer instead of buffering its output.
+     */
+    private ResponseEntity<StreamingResponseBody> streamNdjson(Consumer<Consumer<Object>> producer) {
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                producer.accept(element -> {
+                    try {
+                        ndjsonWriter.writeValue(outputStream, element);
+                        outputStream.write('\n');
+                        outputStream.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
 }
@@ -0,0 +1,38 @@
+package com.jasmine.filemanager.data;
+
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Distinct uploaded bytes, stored once and shared by every {@link File} with the same content.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "content")
+public class Content {
+
+    @Id
+    @GeneratedValue( strategy = GenerationType.SEQUENCE, generator = "content_seq" )
+    @SequenceGenerator( name = "content_seq", sequenceName = "content_seq", allocationSize = 50 )
+    private Long id;
+
+    /**
+     * hex SHA-256 of the bytes, {@code null} while the upload is still streaming
+     */
+    @Column(name = "hash", unique = true, length = 64)
+    private String hash;
+
+    @Column(name = "length")
+    private long length;
+
+    @Embedded
+    private ContentLocation location;
+
+    @Column(name = "reference_count")
+    private long referenceCount;
+}
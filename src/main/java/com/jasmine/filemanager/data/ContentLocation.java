@@ -0,0 +1,30 @@
+package com.jasmine.filemanager.data;
+
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Where a content store put the bytes of a file. Which fields are used depends on the store.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class ContentLocation {
+
+    @Column(name = "segment")
+    private int segment;
+
+    @Column(name = "segment_offset")
+    private long offset;
+
+    @Column(name = "chunk_size")
+    private int chunkSize;
+
+    @Column(name = "compressed")
+    private boolean compressed;
+}
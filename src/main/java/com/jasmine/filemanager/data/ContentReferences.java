@@ -0,0 +1,11 @@
+package com.jasmine.filemanager.data;
+
+public interface ContentReferences {
+
+    Long getId();
+
+    /**
+     * number of files referring to the content
+     */
+    long getReferenceCount();
+}
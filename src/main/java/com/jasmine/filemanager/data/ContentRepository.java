@@ -0,0 +1,88 @@
+package com.jasmine.filemanager.data;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ContentRepository extends CrudRepository<Content, Long> {
+
+
+    List<Content> findAllById(Iterable<Long> ids);
+    List<Content> findAllByHashIn(Collection<String> hashes);
+    List<Content> findByIdGreaterThanAndHashNotNullOrderByIdAsc(Long id, Pageable pageable);
+    List<Content> findByHashNullOrderByIdAsc(Pageable pageable);
+
+    @Query("select c from Content c where c.location.segment = :segment and c.id > :id order by c.id")
+    List<Content> findInSegmentAfter(int segment, Long id, Pageable pageable);
+
+    @Query("select c from Content c where c.id > :id and c.hash is not null and c.id in (select f.contentId from File f where f.id > :fileId) order by c.id")
+    List<Content> findReferencedByFilesAfter(Long fileId, Long id, Pageable pageable);
+
+    @Modifying
+    @Query("update Content c set c.referenceCount = c.referenceCount + :count where c.id = :id")
+    int addReferences(Long id, long count);
+
+    /**
+     * @return 1 if the content had no references left and was deleted
+     */
+    @Modifying
+    @Query("delete from Content c where c.id = :id and c.referenceCount <= 0")
+    int deleteUnreferenced(Long id);
+
+    @Modifying
+    @Query("update Content c set c.location.segment = :segment, c.location.offset = :offset where c.id = :id")
+    int updateLocation(Long id, int segment, long offset);
+
+    /**
+     * @return the bytes of all stored contents, each counted once however many files refer to it
+     */
+    @Query("select coalesce(sum(c.length), 0) from Content c where c.hash is not null")
+    long sumStoredLength();
+
+    /**
+     * @return how many files refer to each of the contents, without loading them
+     */
+    @Query("select c.id as id, c.referenceCount as referenceCount from Content c where c.id in :ids")
+    List<ContentReferences> findReferenceCounts(Collection<Long> ids);
+
+    /**
+     * @return the bytes of the contents in every segment of the store, including uploads which are still streaming
+     */
+    @Query("select c.location.segment as segment, sum(c.length) as length, sum(case when c.hash is null then 1 else 0 end) as streaming"
+            + " from Content c where c.location.segment is not null group by c.location.segment")
+    List<SegmentUsage> findSegmentUsage();
+
+    /**
+     * Walks all stored contents in id order like {@link FileRepository#streamAll(int)}, skipping uploads
+     * which are still streaming.
+     */
+    default Stream<Content> streamAll(int pageSize) {
+
+        Pageable page = PageRequest.of(0, pageSize);
+        return Stream.iterate(findByIdGreaterThanAndHashNotNullOrderByIdAsc(Long.MIN_VALUE, page),
+                        contents -> !contents.isEmpty(),
+                        contents -> contents.size() < pageSize ? List.of()
+                                : findByIdGreaterThanAndHashNotNullOrderByIdAsc(contents.get(contents.size() - 1).getId(), page))
+                .flatMap(List::stream);
+    }
+
+    /**
+     * Walks the stored contents referenced by files after {@code fileId} in id order, like {@link #streamAll(int)}.
+     */
+    default Stream<Content> streamReferencedByFilesAfter(Long fileId, int pageSize) {
+
+        Pageable page = PageRequest.of(0, pageSize);
+        return Stream.iterate(findReferencedByFilesAfter(fileId, Long.MIN_VALUE, page),
+                        contents -> !contents.isEmpty(),
+                        contents -> contents.size() < pageSize ? List.of()
+                                : findReferencedByFilesAfter(fileId, contents.get(contents.size() - 1).getId(), page))
+                .flatMap(List::stream);
+    }
+
+}
@@ -6,22 +6,39 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.Instant;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "file")
+@Table(name = "file", indexes = @Index(name = "file_content_id", columnList = "content_id"))
 public class File {
 
     @Id
-    @GeneratedValue( strategy = GenerationType.AUTO )
+    @GeneratedValue( strategy = GenerationType.SEQUENCE, generator = "file_seq" )
+    @SequenceGenerator( name = "file_seq", sequenceName = "file_seq", allocationSize = 50 )
     private Long id;
 
     @Column(name = "name")
     private String name;
 
-    @Lob
-    @Column(name = "content")
-    private byte[] content;
+    @Column(name = "length")
+    private long length;
+
+    @Column(name = "content_id")
+    private Long contentId;
+
+    /**
+     * when the file was stored, {@code null} for files stored before it was recorded
+     */
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    public File(Long id, String name, long length, Long contentId) {
+        this(id, name, length, contentId, null);
+    }
 }
@@ -0,0 +1,40 @@
+package com.jasmine.filemanager.data;
+
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(FileChunk.Key.class)
+@Table(name = "file_chunk")
+public class FileChunk {
+
+    @Id
+    @Column(name = "content_id")
+    private Long contentId;
+
+    @Id
+    @Column(name = "sequence")
+    private int sequence;
+
+    @Lob
+    @Column(name = "data")
+    private byte[] data;
+
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private Long contentId;
+        private int sequence;
+    }
+}
@@ -0,0 +1,18 @@
+package com.jasmine.filemanager.data;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface FileChunkRepository extends CrudRepository<FileChunk, FileChunk.Key> {
+
+
+    List<FileChunk> findByContentIdAndSequenceBetweenOrderBySequence(Long contentId, int firstSequence, int lastSequence);
+
+    @Modifying
+    @Query("delete from FileChunk c where c.contentId = :contentId")
+    int deleteByContentId(Long contentId);
+
+}
@@ -0,0 +1,32 @@
+package com.jasmine.filemanager.data;
+
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A file deleted after the last index snapshot, so restoring that snapshot can drop the file again.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "file_deletion")
+public class FileDeletion {
+
+    @Id
+    @GeneratedValue( strategy = GenerationType.SEQUENCE, generator = "file_deletion_seq" )
+    @SequenceGenerator( name = "file_deletion_seq", sequenceName = "file_deletion_seq", allocationSize = 50 )
+    private Long id;
+
+    @Column(name = "file_id")
+    private Long fileId;
+
+    /**
+     * the content deleted together with the file, {@code null} if other files still refer to it
+     */
+    @Column(name = "content_id")
+    private Long contentId;
+}
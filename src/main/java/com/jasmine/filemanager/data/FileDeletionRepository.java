@@ -0,0 +1,22 @@
+package com.jasmine.filemanager.data;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface FileDeletionRepository extends CrudRepository<FileDeletion, Long> {
+
+
+    Optional<FileDeletion> findFirstByOrderByIdDesc();
+    List<FileDeletion> findByIdGreaterThanOrderByIdAsc(Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from FileDeletion d where d.id <= :id")
+    int deleteUpTo(Long id);
+
+}
@@ -0,0 +1,41 @@
+package com.jasmine.filemanager.data;
+
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "file_line_index")
+public class FileLineIndex implements Persistable<Long> {
+
+    @Id
+    @Column(name = "content_id")
+    private Long contentId;
+
+    @Column(name = "line_count")
+    private int lineCount;
+
+    @Lob
+    @Column(name = "offsets")
+    private byte[] offsets;
+
+    @Override
+    public Long getId() {
+        return contentId;
+    }
+
+    /**
+     * written once when its content is stored and never updated, so saving it persists right away instead of
+     * looking up an existing row first
+     */
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package com.jasmine.filemanager.data;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface FileLineIndexRepository extends CrudRepository<FileLineIndex, Long> {
+
+
+    @Query("select f.id as fileId, i.lineCount as lineCount from File f, FileLineIndex i where i.contentId = f.contentId order by f.id")
+    List<LineCount> findAllLineCounts();
+
+    @Query("select f.id as fileId, i.lineCount as lineCount from File f, FileLineIndex i where i.contentId = f.contentId and f.id > :fileId order by f.id")
+    List<LineCount> findLineCountsOfFilesAfter(Long fileId);
+
+    @Modifying
+    @Query("delete from FileLineIndex i where i.contentId = :contentId")
+    int deleteByContentId(Long contentId);
+
+}
@@ -1,14 +1,44 @@
 package com.jasmine.filemanager.data;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface FileRepository extends CrudRepository<File, Long> {
 
 
-    List<File> findAll();
+    List<File> findAllById(Iterable<Long> ids);
     Optional<File> findFirstByOrderByIdDesc();
+    List<File> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    List<File> findAllByContentIdInOrderByIdAsc(Collection<Long> contentIds);
+    List<File> findByCreatedAtBeforeOrderByIdAsc(Instant createdAt, Pageable pageable);
+
+    /**
+     * @return 1 if the file was deleted, 0 if it was gone already
+     */
+    @Modifying
+    @Query("delete from File f where f.id = :id")
+    int removeById(Long id);
+
+    /**
+     * Walks all files in id order, fetching {@code pageSize} files at a time with keyset pagination,
+     * so the whole table is never loaded at once.
+     */
+    default Stream<File> streamAll(int pageSize) {
+
+        Pageable page = PageRequest.of(0, pageSize);
+        return Stream.iterate(findByIdGreaterThanOrderByIdAsc(Long.MIN_VALUE, page),
+                        files -> !files.isEmpty(),
+                        files -> files.size() < pageSize ? List.of() : findByIdGreaterThanOrderByIdAsc(files.get(files.size() - 1).getId(), page))
+                .flatMap(List::stream);
+    }
 
 }
@@ -0,0 +1,62 @@
+package com.jasmine.filemanager.data;
+
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "file_summary")
+public class FileSummary implements Persistable<Long> {
+
+    @Id
+    @Column(name = "content_id")
+    private Long contentId;
+
+    @Column(name = "line_count")
+    private int lineCount;
+
+    @Column(name = "length")
+    private long length;
+
+    @Column(name = "max_line_length")
+    private int maxLineLength;
+
+    @Lob
+    @Column(name = "longest_lines")
+    private byte[] longestLines;
+
+    @Column(name = "letter_count")
+    private long letterCount;
+
+    @Column(name = "most_used_letter")
+    private int mostUsedLetter;
+
+    @Column(name = "most_used_letter_count")
+    private long mostUsedLetterCount;
+
+    @Column(name = "line_bucket_size")
+    private int lineBucketSize;
+
+    @Lob
+    @Column(name = "bucket_most_used_letters")
+    private byte[] bucketMostUsedLetters;
+
+    @Override
+    public Long getId() {
+        return contentId;
+    }
+
+    /**
+     * a summary is only ever inserted together with its content, {@code save} never has to merge
+     */
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package com.jasmine.filemanager.data;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+public interface FileSummaryRepository extends CrudRepository<FileSummary, Long> {
+
+
+    @Modifying
+    @Query("delete from FileSummary s where s.contentId = :contentId")
+    int deleteByContentId(Long contentId);
+
+}
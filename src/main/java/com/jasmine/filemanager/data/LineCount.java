@@ -0,0 +1,8 @@
+package com.jasmine.filemanager.data;
+
+public interface LineCount {
+
+    Long getFileId();
+
+    int getLineCount();
+}
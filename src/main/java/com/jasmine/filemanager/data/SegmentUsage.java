@@ -0,0 +1,13 @@
+package com.jasmine.filemanager.data;
+
+public interface SegmentUsage {
+
+    int getSegment();
+
+    long getLength();
+
+    /**
+     * number of contents in the segment whose upload is not stored yet
+     */
+    long getStreaming();
+}
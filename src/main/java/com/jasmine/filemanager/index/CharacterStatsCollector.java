@@ -0,0 +1,141 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts the letters of one file while its content streams by, decoding UTF-8 code points straight from
+ * the bytes. Like the most used letter of a single line, spaces are not counted, and neither are line
+ * separators, including the {@code \r} of a {@code \r\n}. Besides the whole file, the most used letter is kept for every bucket of
+ * {@code bucketLines} consecutive lines.
+ */
+public class CharacterStatsCollector {
+
+    private static final int REPLACEMENT = 0xFFFD;
+
+    private final int bucketLines;
+    private final LetterCounter fileCounter = new LetterCounter();
+    private final LetterCounter bucketCounter = new LetterCounter();
+
+    private int[] bucketMostUsed = new int[16];
+    private int bucketCount;
+    private int lineInBucket;
+
+    private int codePoint;
+    private int pendingContinuationBytes;
+    private boolean carriageReturnPending;
+
+    public CharacterStatsCollector(int bucketLines) {
+        this.bucketLines = bucketLines;
+    }
+
+    public void append(byte[] chunk, int offset, int count) {
+
+        for (int i = offset; i < offset + count; i++) {
+            accept(chunk[i]);
+        }
+    }
+
+    public void append(ByteBuffer chunk) {
+
+        for (int i = chunk.position(); i < chunk.limit(); i++) {
+            accept(chunk.get(i));
+        }
+    }
+
+    /**
+     * @param lineCount the number of lines of the file, buckets after the last line are dropped
+     */
+    public CharacterStats finish(int lineCount) {
+
+        if (pendingContinuationBytes > 0) {
+            count(REPLACEMENT);
+            pendingContinuationBytes = 0;
+        }
+        if (carriageReturnPending) {
+            count('\r');
+            carriageReturnPending = false;
+        }
+        completeBucket();
+        int buckets = (lineCount + bucketLines - 1) / bucketLines;
+        return new CharacterStats(fileCounter.mostUsed(), fileCounter.mostUsedCount(), fileCounter.total(), bucketLines,
+                Arrays.copyOf(bucketMostUsed, Math.min(buckets, bucketCount)));
+    }
+
+
+    private void accept(byte b) {
+
+        if (carriageReturnPending) {
+            // only a \r that does not start a \r\n is counted
+            carriageReturnPending = false;
+            if (b != '\n') {
+                count('\r');
+            }
+        }
+        if (pendingContinuationBytes > 0) {
+            if ((b & 0xC0) == 0x80) {
+                codePoint = codePoint << 6 | b & 0x3F;
+                if (--pendingContinuationBytes == 0) {
+                    count(codePoint);
+                }
+                return;
+            }
+            // a sequence broken off by a new lead byte decodes to one replacement char, as in String decoding
+            count(REPLACEMENT);
+            pendingContinuationBytes = 0;
+        }
+
+        if (b >= 0) {
+            if (b == '\n') {
+                completeLine();
+            } else if (b == '\r') {
+                carriageReturnPending = true;
+            } else if (b != ' ') {
+                count(b);
+            }
+        } else if ((b & 0xE0) == 0xC0) {
+            codePoint = b & 0x1F;
+            pendingContinuationBytes = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+            codePoint = b & 0x0F;
+            pendingContinuationBytes = 2;
+        } else if ((b & 0xF8) == 0xF0) {
+            codePoint = b & 0x07;
+            pendingContinuationBytes = 3;
+        } else {
+            count(REPLACEMENT);
+        }
+    }
+
+    private void count(int letter) {
+
+        fileCounter.add(letter);
+        bucketCounter.add(letter);
+    }
+
+    private void completeLine() {
+
+        if (++lineInBucket == bucketLines) {
+            completeBucket();
+        }
+    }
+
+    private void completeBucket() {
+
+        if (bucketCount == bucketMostUsed.length) {
+            bucketMostUsed = Arrays.copyOf(bucketMostUsed, bucketCount * 2);
+        }
+        bucketMostUsed[bucketCount++] = bucketCounter.mostUsed();
+        bucketCounter.reset();
+        lineInBucket = 0;
+    }
+
+
+    /**
+     * @param mostUsedLetter          code point, {@code -1} if the file has no letters
+     * @param bucketMostUsedLetters   code point of the most used letter of every line bucket, {@code -1} for a bucket without letters
+     */
+    public record CharacterStats(int mostUsedLetter, long mostUsedLetterCount, long letterCount, int bucketLines,
+                                 int[] bucketMostUsedLetters) {
+    }
+}
@@ -0,0 +1,164 @@
+package com.jasmine.filemanager.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps every term to the lines it occurs on across all indexed contents, as {@link PostingList postings} of
+ * content id and line. The terms of every content are kept as well, so removing a content only touches
+ * its own posting lists. Not thread-safe.
+ */
+public class InvertedIndex {
+
+    private final Map<String, PostingList> postingLists = new HashMap<>();
+    private final Map<Long, String[]> contentTerms = new HashMap<>();
+
+    /**
+     * Indexes the lines of a content as collected by {@link TermCollector#finish()}, unless it is indexed already.
+     */
+    public void add(long contentId, Map<String, int[]> termLines) {
+
+        if (contentTerms.containsKey(contentId)) {
+            return;
+        }
+        for (Map.Entry<String, int[]> entry : termLines.entrySet()) {
+            int[] lines = entry.getValue();
+            long[] postings = new long[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                postings[i] = PostingList.posting(contentId, lines[i]);
+            }
+            postingLists.computeIfAbsent(entry.getKey(), ignored -> new PostingList()).addAll(postings);
+        }
+        contentTerms.put(contentId, termLines.keySet().toArray(String[]::new));
+    }
+
+    public void remove(long contentId) {
+
+        String[] terms = contentTerms.remove(contentId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            PostingList postingList = postingLists.get(term);
+            postingList.removeIf(posting -> PostingList.contentId(posting) == contentId);
+            if (postingList.size() == 0) {
+                postingLists.remove(term);
+            }
+        }
+    }
+
+    public boolean contains(long contentId) {
+        return contentTerms.containsKey(contentId);
+    }
+
+    /**
+     * @return the ascending postings of the lines which contain all terms, starting from the rarest term
+     */
+    public long[] find(List<String> terms) {
+
+        if (terms.isEmpty()) {
+            return new long[0];
+        }
+        PostingList[] lists = new PostingList[terms.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postingLists.get(terms.get(i));
+            if (lists[i] == null) {
+                return new long[0];
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+
+        long[] found = lists[0].toArray();
+        for (int i = 1; i < lists.length && found.length > 0; i++) {
+            found = intersect(found, lists[i].toArray());
+        }
+        return found;
+    }
+
+    /**
+     * Writes every term with its posting list, then the terms of every content as positions in that order.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+
+        Map<String, Integer> ordinals = new HashMap<>(postingLists.size() * 4 / 3 + 1);
+        out.writeInt(postingLists.size());
+        for (Map.Entry<String, PostingList> entry : postingLists.entrySet()) {
+            ordinals.put(entry.getKey(), ordinals.size());
+            byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(term.length);
+            out.write(term);
+            entry.getValue().writeTo(out);
+        }
+        out.writeInt(contentTerms.size());
+        for (Map.Entry<Long, String[]> entry : contentTerms.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            for (String term : entry.getValue()) {
+                out.writeInt(ordinals.get(term));
+            }
+        }
+    }
+
+    public static InvertedIndex readFrom(ByteBuffer in) {
+
+        InvertedIndex index = new InvertedIndex();
+        String[] terms = new String[in.getInt()];
+        for (int i = 0; i < terms.length; i++) {
+            byte[] term = new byte[in.getShort() & 0xFFFF];
+            in.get(term);
+            terms[i] = new String(term, StandardCharsets.UTF_8);
+            index.postingLists.put(terms[i], PostingList.readFrom(in));
+        }
+        int contentCount = in.getInt();
+        for (int i = 0; i < contentCount; i++) {
+            long contentId = in.getLong();
+            String[] contentTerms = new String[in.getInt()];
+            for (int term = 0; term < contentTerms.length; term++) {
+                contentTerms[term] = terms[in.getInt()];
+            }
+            index.contentTerms.put(contentId, contentTerms);
+        }
+        return index;
+    }
+
+    public int termCount() {
+        return postingLists.size();
+    }
+
+    public int contentCount() {
+        return contentTerms.size();
+    }
+
+    /**
+     * @return the number of bytes all compressed posting lists take
+     */
+    public long postingBytes() {
+        return postingLists.values().stream().mapToLong(PostingList::byteSize).sum();
+    }
+
+
+    private static long[] intersect(long[] left, long[] right) {
+
+        long[] common = new long[Math.min(left.length, right.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                common[k++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, k);
+    }
+}
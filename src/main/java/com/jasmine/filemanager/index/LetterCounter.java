@@ -0,0 +1,134 @@
+package com.jasmine.filemanager.index;
+
+import java.util.Arrays;
+
+/**
+ * Counts code points in primitive arrays and remembers which one reached the highest count first.
+ * Latin-1 code points are counted in a plain array, all others in a small open-addressing table, so counting
+ * allocates nothing once the table is large enough. Not thread-safe; meant to be reused through {@link #reset()}.
+ */
+public class LetterCounter {
+
+    private static final int LATIN_1 = 256;
+    private static final int EMPTY = -1;
+
+    private final int[] latinCounts = new int[LATIN_1];
+    private final int[] touchedLatin = new int[LATIN_1];
+    private int touchedLatinCount;
+
+    private int[] keys = newKeys(64);
+    private int[] values = new int[64];
+    private int tableSize;
+
+    private int mostUsed = EMPTY;
+    private long mostUsedCount;
+    private long total;
+
+    /**
+     * @return the code point of the letter that reached the highest count first, or {@code -1} if nothing was counted
+     */
+    public static int mostUsedLetter(CharSequence line, LetterCounter counter) {
+
+        counter.reset();
+        for (int i = 0; i < line.length(); ) {
+            int codePoint = Character.codePointAt(line, i);
+            if (codePoint != ' ') {
+                counter.add(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return counter.mostUsed();
+    }
+
+    public void add(int codePoint) {
+
+        int count;
+        if (codePoint < LATIN_1) {
+            if (latinCounts[codePoint] == 0) {
+                touchedLatin[touchedLatinCount++] = codePoint;
+            }
+            count = ++latinCounts[codePoint];
+        } else {
+            count = incrementInTable(codePoint);
+        }
+        total++;
+        if (count > mostUsedCount) {
+            mostUsed = codePoint;
+            mostUsedCount = count;
+        }
+    }
+
+    public int mostUsed() {
+        return mostUsed;
+    }
+
+    public long mostUsedCount() {
+        return mostUsedCount;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public void reset() {
+
+        for (int i = 0; i < touchedLatinCount; i++) {
+            latinCounts[touchedLatin[i]] = 0;
+        }
+        touchedLatinCount = 0;
+        if (tableSize > 0) {
+            Arrays.fill(keys, EMPTY);
+            tableSize = 0;
+        }
+        mostUsed = EMPTY;
+        mostUsedCount = 0;
+        total = 0;
+    }
+
+
+    private int incrementInTable(int codePoint) {
+
+        if (2 * (tableSize + 1) > keys.length) {
+            grow();
+        }
+        int slot = slot(keys, codePoint);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = codePoint;
+            values[slot] = 0;
+            tableSize++;
+        }
+        return ++values[slot];
+    }
+
+    private void grow() {
+
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = newKeys(oldKeys.length * 2);
+        values = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(int[] keys, int codePoint) {
+
+        int mask = keys.length - 1;
+        int slot = (codePoint * 0x9E3779B9) >>> 16 & mask;
+        while (keys[slot] != EMPTY && keys[slot] != codePoint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int[] newKeys(int capacity) {
+
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+}
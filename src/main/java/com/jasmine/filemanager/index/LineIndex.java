@@ -0,0 +1,88 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packed start offsets of every line of a file's content.
+ * <p>
+ * Lines follow the semantics of {@code String.split("\r?\n")}, see {@link LineScanner}: the separator is not part
+ * of the line and trailing empty lines are dropped. Line {@code i} spans the bytes
+ * {@code [offsets[i], offsets[i + 1] - 1)}; the last entry behaves as if a newline followed the last line.
+ * An offset with its sign bit set starts a line after {@code \r\n}, so the line before it ends one byte earlier.
+ */
+public class LineIndex {
+
+    static final int AFTER_CRLF = Integer.MIN_VALUE;
+
+    private static final int OFFSET_BYTES = Integer.BYTES;
+
+    private final int[] offsets;
+
+    private LineIndex(int[] offsets) {
+        this.offsets = offsets;
+    }
+
+    public static LineIndex of(byte[] content) {
+
+        LineIndexBuilder builder = new LineIndexBuilder();
+        builder.append(content, 0, content.length);
+        return builder.build();
+    }
+
+    public static LineIndex of(ByteBuffer content) {
+
+        LineIndexBuilder builder = new LineIndexBuilder();
+        builder.append(content);
+        return builder.build();
+    }
+
+    static LineIndex ofOffsets(int[] offsets) {
+        return new LineIndex(offsets);
+    }
+
+    public static LineIndex fromByteArray(byte[] packed) {
+
+        int[] offsets = new int[packed.length / OFFSET_BYTES];
+        ByteBuffer.wrap(packed).asIntBuffer().get(offsets);
+        return new LineIndex(offsets);
+    }
+
+    public byte[] toByteArray() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(offsets.length * OFFSET_BYTES);
+        buffer.asIntBuffer().put(offsets);
+        return buffer.array();
+    }
+
+    public int sizeInBytes() {
+        return offsets.length * OFFSET_BYTES;
+    }
+
+    public int lineCount() {
+        return offsets.length - 1;
+    }
+
+    public int lineStart(int line) {
+        return start(offsets[line]);
+    }
+
+    public int lineEnd(int line) {
+        return endBefore(offsets[line + 1]);
+    }
+
+    public int lineLength(int line) {
+        return lineEnd(line) - lineStart(line);
+    }
+
+
+    static int start(int offset) {
+        return offset & ~AFTER_CRLF;
+    }
+
+    /**
+     * @return where the line before the given offset ends without its separator
+     */
+    static int endBefore(int offset) {
+        return start(offset) - ((offset & AFTER_CRLF) != 0 ? 2 : 1);
+    }
+}
@@ -0,0 +1,56 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Builds a {@link LineIndex} from content that may arrive in several pieces.
+ */
+public class LineIndexBuilder {
+
+    private final LineScanner scanner = new LineScanner();
+    private int[] starts = new int[1024];
+    private int startCount = 1;
+
+    public void append(byte[] chunk, int offset, int count) {
+        append(ByteBuffer.wrap(chunk, offset, count));
+    }
+
+    public void append(ByteBuffer chunk) {
+
+        if (scanner.position() + chunk.remaining() >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("content larger than " + (Integer.MAX_VALUE - 1) + " bytes can not be indexed");
+        }
+        scanner.scan(chunk, (end, nextStart) -> addStart((int) nextStart | (nextStart - end == 2 ? LineIndex.AFTER_CRLF : 0)));
+    }
+
+    public LineIndex build() {
+
+        int length = (int) scanner.position();
+        int lineCount = startCount;
+        // like String.split, trailing empty lines are dropped once at least one separator was found
+        if (startCount > 1) {
+            while (lineCount > 0 && segmentLength(lineCount - 1, length) == 0) {
+                lineCount--;
+            }
+        }
+
+        int[] offsets = Arrays.copyOf(starts, lineCount + 1);
+        offsets[lineCount] = lineCount == startCount ? length + 1 : starts[lineCount];
+        return LineIndex.ofOffsets(offsets);
+    }
+
+    private int segmentLength(int segment, int length) {
+
+        int end = segment == startCount - 1 ? length : LineIndex.endBefore(starts[segment + 1]);
+        return end - LineIndex.start(starts[segment]);
+    }
+
+    private void addStart(int start) {
+
+        if (startCount == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        starts[startCount++] = start;
+    }
+}
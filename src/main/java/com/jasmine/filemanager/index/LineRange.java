@@ -0,0 +1,7 @@
+package com.jasmine.filemanager.index;
+
+/**
+ * The position of one line in a file's content.
+ */
+public record LineRange(int line, int start, int byteLength) {
+}
@@ -0,0 +1,18 @@
+package com.jasmine.filemanager.index;
+
+import java.util.Comparator;
+
+/**
+ * Points at one line of stored content without holding its text.
+ *
+ * @param length the length of the decoded line in UTF-16 chars, the same as {@code String.length()}
+ */
+public record LineRef(long contentId, int line, int start, int byteLength, int length) {
+
+    /**
+     * Longest first; equally long lines keep their upload and line order.
+     */
+    public static final Comparator<LineRef> LONGEST_FIRST = Comparator.comparingInt(LineRef::length).reversed()
+            .thenComparingLong(LineRef::contentId)
+            .thenComparingInt(LineRef::line);
+}
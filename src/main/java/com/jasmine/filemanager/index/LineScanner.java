@@ -0,0 +1,126 @@
+package com.jasmine.filemanager.index;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Splits UTF-8 content that may arrive in several pieces into lines, straight from the bytes. Separators are
+ * found eight bytes at a time: every word is compared against eight newlines at once with carry-free arithmetic
+ * (SWAR), so a line costs a few word reads instead of a comparison per byte.
+ * <p>
+ * Lines end at {@code \n}; a {@code \r} right before it belongs to the separator, a lone {@code \r} to the line.
+ * Collectors keep their own line numbers and drop trailing empty lines themselves, which yields the lines of
+ * {@code String.split("\r?\n")}.
+ */
+public class LineScanner {
+
+    private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private long position;
+    private boolean carriageReturnPending;
+
+    /**
+     * Hands every piece of the current line and the end of every completed line to the handler.
+     */
+    public void scan(ByteBuffer chunk, Handler handler) {
+
+        int from = chunk.position();
+        int limit = chunk.limit();
+        long base = position - from;
+        int lineFrom = from;
+        for (int separator = indexOfNewline(chunk, from, limit); separator >= 0; separator = indexOfNewline(chunk, lineFrom, limit)) {
+            handler.segment(chunk, lineFrom, separator);
+            boolean carriageReturn = separator > from ? chunk.get(separator - 1) == '\r' : carriageReturnPending;
+            handler.endLine(base + separator - (carriageReturn ? 1 : 0), base + separator + 1);
+            lineFrom = separator + 1;
+        }
+        handler.segment(chunk, lineFrom, limit);
+        if (limit > from) {
+            carriageReturnPending = chunk.get(limit - 1) == '\r';
+        }
+        position += limit - from;
+    }
+
+    /**
+     * @return the number of bytes scanned, which is where the last line ends once the content is complete
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return the index of the first {@code \n} in {@code [from, to)} of the buffer, or {@code -1}
+     */
+    public static int indexOfNewline(ByteBuffer bytes, int from, int to) {
+
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) WORDS.get(bytes, i) ^ NEWLINES;
+            // the lowest byte that was a newline is now zero and the only one whose high bit survives the borrow
+            long zeroBytes = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (zeroBytes != 0) {
+                return i + (Long.numberOfTrailingZeros(zeroBytes) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of UTF-16 chars the bytes {@code [from, to)} of the buffer decode to, counting every
+     * lead byte as one char and four-byte sequences as a surrogate pair
+     */
+    public static int utf16Length(ByteBuffer bytes, int from, int to) {
+
+        int length = 0;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) WORDS.get(bytes, i);
+            if ((word & HIGH_BITS) == 0) {
+                length += Long.BYTES;
+                continue;
+            }
+            long continuationBytes = word & ~(word << 1) & HIGH_BITS;
+            long fourByteLeads = word & (word << 1) & (word << 2) & (word << 3) & ~(word << 4) & HIGH_BITS;
+            length += Long.BYTES - Long.bitCount(continuationBytes) + Long.bitCount(fourByteLeads);
+        }
+        for (; i < to; i++) {
+            length += utf16Length(bytes.get(i));
+        }
+        return length;
+    }
+
+    static int utf16Length(byte b) {
+
+        if ((b & 0xC0) == 0x80) {
+            return 0;
+        }
+        return (b & 0xF8) == 0xF0 ? 2 : 1;
+    }
+
+
+    public interface Handler {
+
+        /**
+         * The bytes {@code [from, to)} of the chunk belong to the current line, including a trailing {@code \r}.
+         */
+        default void segment(ByteBuffer chunk, int from, int to) {
+        }
+
+        /**
+         * The current line ends before content offset {@code end}, without its separator; the next line starts
+         * at {@code nextStart}, two bytes later for {@code \r\n}.
+         */
+        void endLine(long end, long nextStart);
+    }
+}
@@ -0,0 +1,88 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the longest lines of one file while its content streams by, measuring lines in UTF-16 chars
+ * straight from the UTF-8 bytes.
+ * <p>
+ * Lines follow the same {@code String.split("\r?\n")} semantics as {@link LineIndex}.
+ */
+public class LongestLinesCollector {
+
+    private final long contentId;
+    private final TopLines topLines;
+
+    private final LineScanner scanner = new LineScanner();
+    private final LineScanner.Handler handler = new LineScanner.Handler() {
+
+        @Override
+        public void segment(ByteBuffer chunk, int from, int to) {
+            lineLength += LineScanner.utf16Length(chunk, from, to);
+        }
+
+        @Override
+        public void endLine(long end, long nextStart) {
+
+            separatorSeen = true;
+            // the \r of a \r\n was counted with the line
+            lineLength -= (int) (nextStart - end - 1);
+            completeLine(end);
+            lineStart = nextStart;
+        }
+    };
+
+    private int line;
+    private long lineStart;
+    private int lineLength;
+    private boolean separatorSeen;
+    private int lastNonEmptyLine = -1;
+    private int lineCount;
+
+    public LongestLinesCollector(long contentId, int capacity) {
+        this.contentId = contentId;
+        this.topLines = new TopLines(capacity);
+    }
+
+    public void append(byte[] chunk, int offset, int count) {
+        append(ByteBuffer.wrap(chunk, offset, count));
+    }
+
+    public void append(ByteBuffer chunk) {
+        scanner.scan(chunk, handler);
+    }
+
+    /**
+     * Completes the last line and drops trailing empty lines.
+     */
+    public TopLines finish() {
+
+        completeLine(scanner.position());
+        lineCount = separatorSeen ? lastNonEmptyLine + 1 : 1;
+        topLines.removeIf(lineRef -> lineRef.line() >= lineCount);
+        return topLines;
+    }
+
+    /**
+     * @return the number of lines, available after {@link #finish()}
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    public long length() {
+        return scanner.position();
+    }
+
+
+    private void completeLine(long end) {
+
+        int byteLength = (int) (end - lineStart);
+        if (byteLength > 0) {
+            lastNonEmptyLine = line;
+        }
+        topLines.offer(new LineRef(contentId, line, (int) lineStart, byteLength, lineLength));
+        line++;
+        lineLength = 0;
+    }
+}
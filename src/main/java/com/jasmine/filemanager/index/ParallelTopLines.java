@@ -0,0 +1,74 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Selects the longest lines of indexed content for any {@code n}, splitting the lines into partitions
+ * that are scanned on the common fork-join pool. Every partition keeps a bounded heap of {@code n} lines,
+ * the heaps are merged while the tasks join.
+ */
+public class ParallelTopLines {
+
+    static final int LINES_PER_TASK = 16 * 1024;
+
+    private ParallelTopLines() {
+    }
+
+    public static TopLines select(long contentId, ByteBuffer content, LineIndex lineIndex, int n) {
+        return select(contentId, content, lineIndex, n, LINES_PER_TASK);
+    }
+
+    static TopLines select(long contentId, ByteBuffer content, LineIndex lineIndex, int n, int linesPerTask) {
+        return ForkJoinPool.commonPool().invoke(new SelectTask(contentId, content, lineIndex, n, linesPerTask, 0, lineIndex.lineCount()));
+    }
+
+
+    private static class SelectTask extends RecursiveTask<TopLines> {
+
+        private final long contentId;
+        private final ByteBuffer content;
+        private final LineIndex lineIndex;
+        private final int n;
+        private final int linesPerTask;
+        private final int fromLine;
+        private final int toLine;
+
+        SelectTask(long contentId, ByteBuffer content, LineIndex lineIndex, int n, int linesPerTask, int fromLine, int toLine) {
+            this.contentId = contentId;
+            this.content = content;
+            this.lineIndex = lineIndex;
+            this.n = n;
+            this.linesPerTask = linesPerTask;
+            this.fromLine = fromLine;
+            this.toLine = toLine;
+        }
+
+        @Override
+        protected TopLines compute() {
+
+            if (toLine - fromLine <= linesPerTask) {
+                return scan();
+            }
+            int middle = (fromLine + toLine) >>> 1;
+            SelectTask left = new SelectTask(contentId, content, lineIndex, n, linesPerTask, fromLine, middle);
+            SelectTask right = new SelectTask(contentId, content, lineIndex, n, linesPerTask, middle, toLine);
+            left.fork();
+            TopLines topLines = right.compute();
+            topLines.offerAll(left.join());
+            return topLines;
+        }
+
+        private TopLines scan() {
+
+            TopLines topLines = new TopLines(n);
+            for (int line = fromLine; line < toLine; line++) {
+                int start = lineIndex.lineStart(line);
+                int end = lineIndex.lineEnd(line);
+                topLines.offer(new LineRef(contentId, line, start, end - start, LineScanner.utf16Length(content, start, end)));
+            }
+            return topLines;
+        }
+    }
+}
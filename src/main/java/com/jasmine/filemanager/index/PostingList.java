@@ -0,0 +1,164 @@
+package com.jasmine.filemanager.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * An ascending set of postings, each a content id and a line packed into one long, compressed as the
+ * differences between consecutive postings in a variable number of bytes (seven bits per byte). Postings of
+ * neighbouring lines cost one or two bytes. Not thread-safe.
+ */
+public class PostingList {
+
+    private byte[] bytes = new byte[8];
+    private int length;
+    private int size;
+    private long last = -1;
+
+    public static long posting(long contentId, int line) {
+
+        if (contentId < 0 || contentId > Integer.MAX_VALUE || line < 0) {
+            throw new IllegalArgumentException("posting out of range: content " + contentId + ", line " + line);
+        }
+        return contentId << Integer.SIZE | line;
+    }
+
+    public static long contentId(long posting) {
+        return posting >>> Integer.SIZE;
+    }
+
+    public static int line(long posting) {
+        return (int) posting;
+    }
+
+    /**
+     * Adds ascending postings. Postings after the last one are appended, others are merged in.
+     */
+    public void addAll(long[] postings) {
+
+        if (postings.length == 0) {
+            return;
+        }
+        if (postings[0] <= last) {
+            long[] merged = merge(toArray(), postings);
+            clear();
+            append(merged);
+        } else {
+            append(postings);
+        }
+    }
+
+    /**
+     * @return whether a posting was removed
+     */
+    public boolean removeIf(LongPredicate filter) {
+
+        long[] postings = toArray();
+        long[] kept = Arrays.stream(postings).filter(filter.negate()).toArray();
+        if (kept.length == postings.length) {
+            return false;
+        }
+        clear();
+        append(kept);
+        return true;
+    }
+
+    public long[] toArray() {
+
+        long[] postings = new long[size];
+        long posting = 0;
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            posting += delta;
+            postings[i] = posting;
+        }
+        return postings;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+
+        out.writeInt(size);
+        out.writeLong(last);
+        out.writeInt(length);
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * Reads a list written by {@link #writeTo(DataOutput)}, copying its compressed postings.
+     */
+    public static PostingList readFrom(ByteBuffer in) {
+
+        PostingList postingList = new PostingList();
+        postingList.size = in.getInt();
+        postingList.last = in.getLong();
+        postingList.length = in.getInt();
+        postingList.bytes = new byte[Math.max(8, postingList.length)];
+        in.get(postingList.bytes, 0, postingList.length);
+        return postingList;
+    }
+
+    /**
+     * @return the number of bytes the compressed postings take
+     */
+    public int byteSize() {
+        return length;
+    }
+
+
+    private void append(long[] postings) {
+
+        for (long posting : postings) {
+            long delta = size == 0 ? posting : posting - last;
+            if (bytes.length - length < 10) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 10));
+            }
+            while ((delta & ~0x7FL) != 0) {
+                bytes[length++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            last = posting;
+            size++;
+        }
+    }
+
+    private void clear() {
+
+        length = 0;
+        size = 0;
+        last = -1;
+    }
+
+    private static long[] merge(long[] left, long[] right) {
+
+        long[] merged = new long[left.length + right.length];
+        int i = 0, j = 0, k = 0;
+        while (i < left.length || j < right.length) {
+            long next;
+            if (j == right.length || i < left.length && left[i] <= right[j]) {
+                next = left[i++];
+            } else {
+                next = right[j++];
+            }
+            if (k == 0 || merged[k - 1] != next) {
+                merged[k++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, k);
+    }
+}
@@ -0,0 +1,110 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks up to {@code k} distinct lines uniformly at random in a single pass over content that has no
+ * {@link LineIndex}, without building a list of lines (reservoir sampling).
+ * <p>
+ * Lines follow the {@code String.split("\r?\n")} semantics of {@link LineIndex}. Empty lines only become
+ * candidates once a non-empty line follows them, since trailing empty lines do not count as lines; a run of
+ * empty lines is kept as its first position and length until then.
+ */
+public class ReservoirLineSampler {
+
+    private final LineRange[] reservoir;
+    private final Random random;
+
+    private final LineScanner scanner = new LineScanner();
+    private int line;
+    private long lineStart;
+    private boolean separatorSeen;
+    private int lineCount;
+
+    private int pendingEmptyLines;
+    private int pendingFirstLine;
+    private long pendingFirstStart;
+    private int pendingSeparatorLength;
+
+    public ReservoirLineSampler(int k, Random random) {
+        this.reservoir = new LineRange[k];
+        this.random = random;
+    }
+
+    public void append(byte[] chunk, int offset, int count) {
+        append(ByteBuffer.wrap(chunk, offset, count));
+    }
+
+    public void append(ByteBuffer chunk) {
+
+        scanner.scan(chunk, (end, nextStart) -> {
+            separatorSeen = true;
+            completeLine(end, (int) (nextStart - end));
+            lineStart = nextStart;
+        });
+    }
+
+    /**
+     * @return the sampled lines in no particular order, fewer than {@code k} if the content has fewer lines
+     */
+    public List<LineRange> finish() {
+
+        completeLine(scanner.position(), 0);
+        if (!separatorSeen) {
+            // content without any separator is a single line, even if it is empty
+            takePendingEmptyLines();
+        }
+        return new ArrayList<>(Arrays.asList(reservoir).subList(0, Math.min(lineCount, reservoir.length)));
+    }
+
+    /**
+     * @return the number of lines, available after {@link #finish()}
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+
+    private void completeLine(long end, int separatorLength) {
+
+        int byteLength = (int) (end - lineStart);
+        if (byteLength == 0) {
+            if (pendingEmptyLines == 0) {
+                pendingFirstLine = line;
+                pendingFirstStart = lineStart;
+                pendingSeparatorLength = separatorLength;
+            }
+            pendingEmptyLines++;
+        } else {
+            takePendingEmptyLines();
+            sample(new LineRange(line, (int) lineStart, byteLength));
+        }
+        line++;
+    }
+
+    private void takePendingEmptyLines() {
+
+        // consecutive empty lines start one separator after each other, assuming the run does not mix \n and \r\n
+        for (int i = 0; i < pendingEmptyLines; i++) {
+            sample(new LineRange(pendingFirstLine + i, (int) pendingFirstStart + i * pendingSeparatorLength, 0));
+        }
+        pendingEmptyLines = 0;
+    }
+
+    private void sample(LineRange lineRange) {
+
+        if (lineCount < reservoir.length) {
+            reservoir[lineCount] = lineRange;
+        } else {
+            int slot = random.nextInt(lineCount + 1);
+            if (slot < reservoir.length) {
+                reservoir[slot] = lineRange;
+            }
+        }
+        lineCount++;
+    }
+}
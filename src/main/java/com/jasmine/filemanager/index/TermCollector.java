@@ -0,0 +1,148 @@
+package com.jasmine.filemanager.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects the lines every term of one file occurs on while its content streams by.
+ * <p>
+ * A term is a run of letters and digits, lower-cased; everything else separates terms. ASCII is split
+ * straight from the bytes. A run containing other bytes is decoded and split by {@link Character#isLetterOrDigit(int)},
+ * which is safe because no byte of a multi-byte UTF-8 sequence is ASCII. Runs longer than {@value #MAX_TERM_BYTES}
+ * bytes, like encoded binary data, are not collected. {@link #terms(String)} splits a query the same way.
+ */
+public class TermCollector {
+
+    public static final int MAX_TERM_BYTES = 64;
+
+    private final Map<String, Lines> lines = new HashMap<>();
+    private final byte[] term = new byte[MAX_TERM_BYTES];
+    private int termLength;
+    private boolean termTooLong;
+    private boolean termNonAscii;
+    private int line;
+
+    public void append(byte[] chunk, int offset, int count) {
+
+        for (int i = offset; i < offset + count; i++) {
+            accept(chunk[i]);
+        }
+    }
+
+    public void append(ByteBuffer chunk) {
+
+        for (int i = chunk.position(); i < chunk.limit(); i++) {
+            accept(chunk.get(i));
+        }
+    }
+
+    /**
+     * @return the ascending, distinct lines of every term
+     */
+    public Map<String, int[]> finish() {
+
+        completeTerm();
+        Map<String, int[]> collected = new HashMap<>(lines.size() * 4 / 3 + 1);
+        lines.forEach((term, termLines) -> collected.put(term, termLines.toArray()));
+        lines.clear();
+        return collected;
+    }
+
+    /**
+     * @return the distinct terms of the text, in the order they occur
+     */
+    public static List<String> terms(String text) {
+
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); ) {
+            int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                String term = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (term.getBytes(StandardCharsets.UTF_8).length <= MAX_TERM_BYTES && !terms.contains(term)) {
+                    terms.add(term);
+                }
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return terms;
+    }
+
+
+    private void accept(byte b) {
+
+        if (b < 0) {
+            termNonAscii = true;
+            appendToTerm(b);
+        } else if (b >= 'a' && b <= 'z' || b >= '0' && b <= '9') {
+            appendToTerm(b);
+        } else if (b >= 'A' && b <= 'Z') {
+            appendToTerm((byte) (b + ('a' - 'A')));
+        } else {
+            completeTerm();
+            if (b == '\n') {
+                line++;
+            }
+        }
+    }
+
+    private void appendToTerm(byte b) {
+
+        if (termLength == MAX_TERM_BYTES) {
+            termTooLong = true;
+        } else {
+            term[termLength++] = b;
+        }
+    }
+
+    private void completeTerm() {
+
+        if (termLength > 0 && !termTooLong) {
+            if (termNonAscii) {
+                terms(new String(term, 0, termLength, StandardCharsets.UTF_8)).forEach(this::add);
+            } else {
+                add(new String(term, 0, termLength, StandardCharsets.US_ASCII));
+            }
+        }
+        termLength = 0;
+        termTooLong = false;
+        termNonAscii = false;
+    }
+
+    private void add(String term) {
+        lines.computeIfAbsent(term, ignored -> new Lines()).add(line);
+    }
+
+
+    private static final class Lines {
+
+        private int[] lines = new int[2];
+        private int size;
+
+        void add(int line) {
+
+            if (size > 0 && lines[size - 1] == line) {
+                return;
+            }
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(lines, size);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.jasmine.filemanager.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the {@code capacity} longest lines offered to it in a bounded min-heap. Not thread-safe.
+ */
+public class TopLines {
+
+    private static final int PACKED_LINE_BYTES = 4 * Integer.BYTES;
+
+    private final int capacity;
+    private final PriorityQueue<LineRef> heap;
+
+    public TopLines(int capacity) {
+        this.capacity = capacity;
+        // grows with the lines offered, a partition of a few lines asked for many does not allocate them all
+        this.heap = new PriorityQueue<>(LineRef.LONGEST_FIRST.reversed());
+    }
+
+    /**
+     * Restores lines packed by {@link #toByteArray()} for the given content.
+     */
+    public static TopLines fromByteArray(long contentId, int capacity, byte[] packed) {
+
+        TopLines topLines = new TopLines(capacity);
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        while (buffer.remaining() >= PACKED_LINE_BYTES) {
+            topLines.offer(new LineRef(contentId, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        return topLines;
+    }
+
+    /**
+     * Packs the lines, longest first, without their content id.
+     */
+    public byte[] toByteArray() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(heap.size() * PACKED_LINE_BYTES);
+        for (LineRef lineRef : sorted()) {
+            buffer.putInt(lineRef.line()).putInt(lineRef.start()).putInt(lineRef.byteLength()).putInt(lineRef.length());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Writes the lines, longest first, with their content ids.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+
+        out.writeInt(heap.size());
+        for (LineRef lineRef : sorted()) {
+            out.writeLong(lineRef.contentId());
+            out.writeInt(lineRef.line());
+            out.writeInt(lineRef.start());
+            out.writeInt(lineRef.byteLength());
+            out.writeInt(lineRef.length());
+        }
+    }
+
+    public static TopLines readFrom(ByteBuffer in, int capacity) {
+
+        TopLines topLines = new TopLines(capacity);
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            topLines.offer(new LineRef(in.getLong(), in.getInt(), in.getInt(), in.getInt(), in.getInt()));
+        }
+        return topLines;
+    }
+
+    public void offer(LineRef lineRef) {
+
+        if (capacity == 0) {
+            return;
+        }
+        if (heap.size() < capacity) {
+            heap.add(lineRef);
+        } else if (LineRef.LONGEST_FIRST.compare(lineRef, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(lineRef);
+        }
+    }
+
+    public void offerAll(TopLines other) {
+        other.heap.forEach(this::offer);
+    }
+
+    public boolean removeIf(Predicate<LineRef> filter) {
+        return heap.removeIf(filter);
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the kept lines, longest first
+     */
+    public List<LineRef> sorted() {
+
+        List<LineRef> lines = new ArrayList<>(heap);
+        lines.sort(LineRef.LONGEST_FIRST);
+        return lines;
+    }
+}
@@ -0,0 +1,143 @@
+package com.jasmine.filemanager.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times {@code FileService} operations and records what each single call of an operation used.
+ * <p>
+ * Every operation runs as an {@link Observation} named {@value #OPERATION}, which yields a latency timer per
+ * {@code operation} tag and a span once a tracer is present. While it runs, the code it calls reports the bytes it
+ * read from the content store, the bytes it decoded to text, the lines it scanned and the files it loaded through
+ * the static methods below. The totals of the call are recorded as distribution summaries when it ends.
+ * Reports outside of an operation, e.g. from background rebuilds, are dropped.
+ */
+@Component
+public class OperationMetrics {
+
+    public static final String OPERATION = "file-manager.operation";
+
+    private static final ThreadLocal<Usage> CURRENT_USAGE = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final Map<String, UsageSummaries> summaries = new ConcurrentHashMap<>();
+
+    public OperationMetrics(MeterRegistry meterRegistry, ObjectProvider<ObservationRegistry> observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP);
+    }
+
+    public <T, E extends Throwable> T observe(String operation, Observation.CheckedCallable<T, E> callable) throws E {
+
+        Usage previousUsage = CURRENT_USAGE.get();
+        Usage usage = new Usage();
+        CURRENT_USAGE.set(usage);
+        try {
+            return Observation.createNotStarted(OPERATION, observationRegistry)
+                    .lowCardinalityKeyValue("operation", operation)
+                    .observeChecked(callable);
+        } finally {
+            if (previousUsage == null) {
+                CURRENT_USAGE.remove();
+            } else {
+                CURRENT_USAGE.set(previousUsage);
+                previousUsage.add(usage);
+            }
+            summaries.computeIfAbsent(operation, this::register).record(usage);
+        }
+    }
+
+    public <E extends Throwable> void observe(String operation, Observation.CheckedRunnable<E> runnable) throws E {
+
+        observe(operation, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public static void bytesRead(long bytes) {
+
+        Usage usage = CURRENT_USAGE.get();
+        if (usage != null) {
+            usage.bytesRead += bytes;
+        }
+    }
+
+    public static void bytesDecoded(long bytes) {
+
+        Usage usage = CURRENT_USAGE.get();
+        if (usage != null) {
+            usage.bytesDecoded += bytes;
+        }
+    }
+
+    public static void linesScanned(long lines) {
+
+        Usage usage = CURRENT_USAGE.get();
+        if (usage != null) {
+            usage.linesScanned += lines;
+        }
+    }
+
+    public static void filesLoaded(long files) {
+
+        Usage usage = CURRENT_USAGE.get();
+        if (usage != null) {
+            usage.filesLoaded += files;
+        }
+    }
+
+
+    private UsageSummaries register(String operation) {
+
+        return new UsageSummaries(
+                summary(operation, "bytes.read", BaseUnits.BYTES),
+                summary(operation, "bytes.decoded", BaseUnits.BYTES),
+                summary(operation, "lines.scanned", "lines"),
+                summary(operation, "files.loaded", BaseUnits.FILES));
+    }
+
+    private DistributionSummary summary(String operation, String name, String baseUnit) {
+
+        return DistributionSummary.builder(OPERATION + "." + name)
+                .tag("operation", operation)
+                .baseUnit(baseUnit)
+                .register(meterRegistry);
+    }
+
+
+    private static final class Usage {
+
+        private long bytesRead;
+        private long bytesDecoded;
+        private long linesScanned;
+        private long filesLoaded;
+
+        private void add(Usage nested) {
+            bytesRead += nested.bytesRead;
+            bytesDecoded += nested.bytesDecoded;
+            linesScanned += nested.linesScanned;
+            filesLoaded += nested.filesLoaded;
+        }
+    }
+
+    private record UsageSummaries(DistributionSummary bytesRead, DistributionSummary bytesDecoded,
+                                  DistributionSummary linesScanned, DistributionSummary filesLoaded) {
+
+        private void record(Usage usage) {
+            bytesRead.record(usage.bytesRead);
+            bytesDecoded.record(usage.bytesDecoded);
+            linesScanned.record(usage.linesScanned);
+            filesLoaded.record(usage.filesLoaded);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.jasmine.filemanager.service;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch upload: {@code fileIds} has one entry per uploaded part in request order, {@code null} for
+ * every part listed in {@code errors}.
+ */
+public record BatchUploadResult(List<Long> fileIds, List<FileError> errors) {
+
+    public record FileError(int index, String fileName, String message) {
+    }
+}
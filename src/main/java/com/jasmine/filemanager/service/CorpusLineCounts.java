@@ -0,0 +1,255 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.data.FileLineIndexRepository;
+import com.jasmine.filemanager.data.LineCount;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cumulative line counts of all indexed files, so a line of the whole corpus can be picked uniformly
+ * (every file weighted by its line count) with one binary search.
+ * <p>
+ * Uploads append their line count, removing a file compacts the table. It is rebuilt from the persisted
+ * line indexes in the background at startup, or only extended by the files stored after a
+ * {@link #restore(LineCountTable, long) restored snapshot}; lookups wait for a running rebuild.
+ */
+@Component
+public class CorpusLineCounts {
+
+    private final FileLineIndexRepository fileLineIndexRepository;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "corpus-line-counts-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long[] fileIds = new long[16];
+    private long[] cumulativeLineCounts = new long[16];
+    private int size;
+    private CompletableFuture<Void> rebuild;
+    private List<FileLineCount> addedDuringRebuild;
+    private Set<Long> removedDuringRebuild;
+    private Long restoredUpToFileId;
+
+    public CorpusLineCounts(FileLineIndexRepository fileLineIndexRepository) {
+        this.fileLineIndexRepository = fileLineIndexRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuildOnStartup() {
+
+        if (rebuild == null) {
+            rebuild = CompletableFuture.runAsync(this::rebuild, rebuildExecutor);
+        }
+    }
+
+    /**
+     * Starts from a table read by {@link #readTable(ByteBuffer)} which has every file up to {@code upToFileId},
+     * so the startup rebuild only adds the files after it.
+     */
+    public synchronized void restore(LineCountTable table, long upToFileId) {
+
+        size = 0;
+        for (int i = 0; i < table.fileIds().length; i++) {
+            append(table.fileIds()[i], table.lineCounts()[i]);
+        }
+        restoredUpToFileId = upToFileId;
+    }
+
+    /**
+     * @return whether the startup rebuild is done
+     */
+    public synchronized boolean isLoaded() {
+        return rebuild != null && rebuild.isDone();
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+
+        out.writeInt(size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            out.writeLong(fileIds[i]);
+            out.writeInt((int) (cumulativeLineCounts[i] - previous));
+            previous = cumulativeLineCounts[i];
+        }
+    }
+
+    public static LineCountTable readTable(ByteBuffer in) {
+
+        int size = in.getInt();
+        long[] fileIds = new long[size];
+        int[] lineCounts = new int[size];
+        for (int i = 0; i < size; i++) {
+            fileIds[i] = in.getLong();
+            lineCounts[i] = in.getInt();
+        }
+        return new LineCountTable(fileIds, lineCounts);
+    }
+
+    public synchronized void add(Long fileId, int lineCount) {
+
+        if (addedDuringRebuild != null) {
+            addedDuringRebuild.add(new FileLineCount(fileId, lineCount));
+        }
+        append(fileId, lineCount);
+    }
+
+    public void remove(Long fileId) {
+        removeAll(Set.of(fileId));
+    }
+
+    /**
+     * Removes several files in one pass over the table.
+     */
+    public synchronized void removeAll(Collection<Long> removedFileIds) {
+
+        if (removedFileIds.isEmpty()) {
+            return;
+        }
+        Set<Long> removed = removedFileIds instanceof Set<Long> set ? set : new HashSet<>(removedFileIds);
+        if (removedDuringRebuild != null) {
+            removedDuringRebuild.addAll(removed);
+        }
+        int kept = 0;
+        long previous = 0;
+        long removedLineCount = 0;
+        for (int i = 0; i < size; i++) {
+            long lineCount = cumulativeLineCounts[i] - previous;
+            previous = cumulativeLineCounts[i];
+            if (removed.contains(fileIds[i])) {
+                removedLineCount += lineCount;
+                continue;
+            }
+            fileIds[kept] = fileIds[i];
+            cumulativeLineCounts[kept] = cumulativeLineCounts[i] - removedLineCount;
+            kept++;
+        }
+        size = kept;
+    }
+
+    public long totalLineCount() {
+
+        awaitRebuild();
+        synchronized (this) {
+            return total();
+        }
+    }
+
+    /**
+     * @return a line of the whole corpus, every line is equally likely
+     */
+    public LinePosition pick(Random random) {
+
+        awaitRebuild();
+        synchronized (this) {
+            if (size == 0) {
+                throw new IllegalStateException("there are no lines to pick from");
+            }
+            long corpusLine = random.nextLong(total());
+            int found = Arrays.binarySearch(cumulativeLineCounts, 0, size, corpusLine);
+            // the file is the first one whose cumulative count is greater than the corpus line
+            int file = found >= 0 ? found + 1 : -found - 1;
+            long linesBefore = file == 0 ? 0 : cumulativeLineCounts[file - 1];
+            return new LinePosition(fileIds[file], (int) (corpusLine - linesBefore));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+
+    private void append(long fileId, int lineCount) {
+
+        if (lineCount == 0) {
+            return;
+        }
+        if (size == fileIds.length) {
+            fileIds = Arrays.copyOf(fileIds, size * 2);
+            cumulativeLineCounts = Arrays.copyOf(cumulativeLineCounts, size * 2);
+        }
+        cumulativeLineCounts[size] = total() + lineCount;
+        fileIds[size] = fileId;
+        size++;
+    }
+
+    private long total() {
+        return size == 0 ? 0 : cumulativeLineCounts[size - 1];
+    }
+
+    private void awaitRebuild() {
+
+        CompletableFuture<Void> pending;
+        synchronized (this) {
+            if (rebuild == null) {
+                rebuild = CompletableFuture.completedFuture(null);
+                rebuild();
+            }
+            pending = rebuild;
+        }
+        pending.join();
+    }
+
+    private void rebuild() {
+
+        Long upToFileId;
+        synchronized (this) {
+            addedDuringRebuild = new ArrayList<>();
+            removedDuringRebuild = new HashSet<>();
+            upToFileId = restoredUpToFileId;
+        }
+        List<LineCount> lineCounts = upToFileId == null ? fileLineIndexRepository.findAllLineCounts()
+                : fileLineIndexRepository.findLineCountsOfFilesAfter(upToFileId);
+
+        synchronized (this) {
+            List<FileLineCount> added = addedDuringRebuild;
+            Set<Long> removed = removedDuringRebuild;
+            addedDuringRebuild = null;
+            removedDuringRebuild = null;
+            restoredUpToFileId = null;
+
+            Set<Long> rebuiltFileIds = new HashSet<>();
+            if (upToFileId == null) {
+                size = 0;
+            } else {
+                // the restored files and the uploads since are kept, a snapshot may already have some files after it
+                for (int i = 0; i < size; i++) {
+                    rebuiltFileIds.add(fileIds[i]);
+                }
+            }
+            for (LineCount lineCount : lineCounts) {
+                if (!removed.contains(lineCount.getFileId()) && !rebuiltFileIds.contains(lineCount.getFileId())) {
+                    append(lineCount.getFileId(), lineCount.getLineCount());
+                    rebuiltFileIds.add(lineCount.getFileId());
+                }
+            }
+            // uploads committed while the query ran may or may not be part of its result
+            for (FileLineCount lineCount : added) {
+                if (!rebuiltFileIds.contains(lineCount.fileId()) && !removed.contains(lineCount.fileId())) {
+                    append(lineCount.fileId(), lineCount.lineCount());
+                }
+            }
+        }
+    }
+
+
+    public record LinePosition(long fileId, int line) {
+    }
+
+    public record LineCountTable(long[] fileIds, int[] lineCounts) {
+    }
+
+    private record FileLineCount(long fileId, int lineCount) {
+    }
+}
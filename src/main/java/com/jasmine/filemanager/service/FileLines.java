@@ -0,0 +1,10 @@
+package com.jasmine.filemanager.service;
+
+import java.util.List;
+
+/**
+ * The lines {@code [from, to)} of a file, numbered from 0. {@code to} is cut down to {@code lineCount},
+ * so a client paging through the file stops once {@code to} reaches it.
+ */
+public record FileLines(Long fileId, int from, int to, int lineCount, List<String> lines) {
+}
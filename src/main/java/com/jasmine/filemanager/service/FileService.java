@@ -1,120 +1,840 @@
 package com.jasmine.filemanager.service;
 
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.config.FileValidator;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.ContentReferences;
+import com.jasmine.filemanager.data.ContentRepository;
 import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileLineIndex;
+import com.jasmine.filemanager.data.FileLineIndexRepository;
 import com.jasmine.filemanager.data.FileRepository;
+import com.jasmine.filemanager.index.CharacterStatsCollector;
+import com.jasmine.filemanager.index.LetterCounter;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.index.LineIndexBuilder;
+import com.jasmine.filemanager.index.LineRange;
+import com.jasmine.filemanager.index.LineRef;
+import com.jasmine.filemanager.index.LongestLinesCollector;
+import com.jasmine.filemanager.index.ParallelTopLines;
+import com.jasmine.filemanager.index.PostingList;
+import com.jasmine.filemanager.index.ReservoirLineSampler;
+import com.jasmine.filemanager.index.TermCollector;
+import com.jasmine.filemanager.index.TopLines;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import com.jasmine.filemanager.store.ContentStore;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Service
 public class FileService {
 
+    // reused per request thread so a detailed random line allocates nothing to find its most used letter
+    private static final ThreadLocal<LetterCounter> LETTER_COUNTER = ThreadLocal.withInitial(LetterCounter::new);
 
-    private final FileRepository fileRepository;
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private static final FileValidator FILE_VALIDATOR = new FileValidator();
 
-    public FileService(FileRepository fileRepository) {
+    private final FileRepository fileRepository;
+    private final ContentRepository contentRepository;
+    private final FileLineIndexRepository fileLineIndexRepository;
+    private final ContentStore contentStore;
+    private final FileSummaryService fileSummaryService;
+    private final LongestLinesTracker longestLinesTracker;
+    private final CorpusLineCounts corpusLineCounts;
+    private final LineViewCache lineViewCache;
+    private final LineSearchIndex lineSearchIndex;
+    private final IndexSnapshots indexSnapshots;
+    private final OperationMetrics operationMetrics;
+    private final int corpusPageSize;
+    private final Map<String, CountDownLatch> contentHashesInFlight = new ConcurrentHashMap<>();
+    // contents ingested but not stored yet, with the segment they were written to or -1 while they stream
+    private final Map<Long, Integer> contentsInFlight = new ConcurrentHashMap<>();
+
+    public FileService(FileRepository fileRepository, ContentRepository contentRepository, FileLineIndexRepository fileLineIndexRepository,
+                       ContentStore contentStore, FileSummaryService fileSummaryService, LongestLinesTracker longestLinesTracker,
+                       CorpusLineCounts corpusLineCounts, LineViewCache lineViewCache, LineSearchIndex lineSearchIndex,
+                       IndexSnapshots indexSnapshots, OperationMetrics operationMetrics, FileManagerProperties properties) {
         this.fileRepository = fileRepository;
+        this.contentRepository = contentRepository;
+        this.fileLineIndexRepository = fileLineIndexRepository;
+        this.contentStore = contentStore;
+        this.fileSummaryService = fileSummaryService;
+        this.longestLinesTracker = longestLinesTracker;
+        this.corpusLineCounts = corpusLineCounts;
+        this.lineViewCache = lineViewCache;
+        this.lineSearchIndex = lineSearchIndex;
+        this.indexSnapshots = indexSnapshots;
+        this.operationMetrics = operationMetrics;
+        this.corpusPageSize = properties.getCorpusPageSize();
     }
 
+    /**
+     * Stores the upload, or only a reference to it if the same content was uploaded before. The content is
+     * hashed while it streams; a duplicate is recognized once it is complete and its copy is dropped again.
+     */
+    @Transactional
     public Long uploadFile(MultipartFile multipartFile) throws Exception {
 
-        File file = new File(null, multipartFile.getOriginalFilename(), multipartFile.getBytes());
-        file = fileRepository.save(file);
-        return file.getId();
+        return operationMetrics.observe("uploadFile", () -> store(List.of(ingest(multipartFile.getOriginalFilename(), multipartFile))).get(0));
     }
 
-    public String getOneRandomLine(Long id, boolean lineDetailRequired) throws Exception {
+    /**
+     * Uploads several files in one transaction. Every part is validated and streamed on its own; a part which
+     * is invalid or can not be read is reported instead of failing the batch. The accepted parts are looked up
+     * by hash together and their rows are written with one flush, so they reach the database as JDBC batches.
+     */
+    @Transactional
+    public BatchUploadResult uploadFiles(List<MultipartFile> multipartFiles) throws Exception {
+
+        Long[] fileIds = new Long[multipartFiles.size()];
+        List<BatchUploadResult.FileError> errors = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<IngestedContent> ingestedContents = new ArrayList<>();
+
+        for (int i = 0; i < multipartFiles.size(); i++) {
+            MultipartFile multipartFile = multipartFiles.get(i);
+            if (!FILE_VALIDATOR.isValid(multipartFile, null)) {
+                errors.add(new BatchUploadResult.FileError(i, multipartFile.getOriginalFilename(), FileValidator.MESSAGE));
+                continue;
+            }
+            try {
+                ingestedContents.add(ingest(multipartFile.getOriginalFilename(), multipartFile));
+                positions.add(i);
+            } catch (IOException | IllegalArgumentException e) {
+                errors.add(new BatchUploadResult.FileError(i, multipartFile.getOriginalFilename(), e.getMessage()));
+            }
+        }
 
-        File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
-        List<String> lineList = getFileLineList(file);
+        List<Long> storedFileIds = store(ingestedContents);
+        for (int i = 0; i < positions.size(); i++) {
+            fileIds[positions.get(i)] = storedFileIds.get(i);
+        }
+        return new BatchUploadResult(Arrays.asList(fileIds), errors);
+    }
 
-        Random random = new Random();
-        int randomIndex = random.nextInt(lineList.size());
-        String randomLine = lineList.get(randomIndex);
+    public String getOneRandomLine(Long id, boolean lineDetailRequired) throws Exception {
 
-        if(lineDetailRequired){
-            randomLine = randomLine.concat("\n" + "lineNumber: " + randomIndex + "\n" + "fileName: " + file.getName() + "\n" + "mostUsedLetter: " + getMostUsedLetter(randomLine.replaceAll(" ", "")));
-        }
+        return operationMetrics.observe("getOneRandomLine", () -> {
+            File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+            OperationMetrics.filesLoaded(1);
+            List<SampledLine> sampledLines = sampleLines(getContent(file), 1, new Random());
+            if (sampledLines.isEmpty()) {
+                throw new Exception("file with id " + id + " has no lines");
+            }
 
-        return randomLine;
+            int randomIndex = sampledLines.get(0).line();
+            String randomLine = sampledLines.get(0).text();
+
+            if(lineDetailRequired){
+                randomLine = randomLine.concat("\n" + "lineNumber: " + randomIndex + "\n" + "fileName: " + file.getName() + "\n" + "mostUsedLetter: " + getMostUsedLetter(randomLine));
+            }
 
+            return randomLine;
+        });
     }
 
 
     public List<String> getRandomLinesBackward() {
 
-        List<File> files = fileRepository.findAll();
+        return getRandomLinesBackward(1);
+    }
+
+
+    public List<String> getRandomLinesBackward(int linesPerFile) {
+
         List<String> allRandomBackwardLines = new ArrayList<>();
-        List<String> allLines = files.stream().map(file -> new String(file.getContent(), StandardCharsets.UTF_8)).toList();
+        streamRandomLinesBackward(linesPerFile, allRandomBackwardLines::add);
+        return allRandomBackwardLines;
+
+    }
+
+
+    /**
+     * Like {@link #getRandomLinesBackward(int)}, but hands every line to the consumer as soon as its file is
+     * sampled instead of collecting the lines of the whole corpus first.
+     */
+    public void streamRandomLinesBackward(int linesPerFile, Consumer<? super String> consumer) {
+
+        operationMetrics.observe("getRandomLinesBackward", () -> {
+            Random random = new Random();
+            Map<Long, Content> contents = new HashMap<>();
+
+            try (Stream<File> files = fileRepository.streamAll(corpusPageSize)) {
+                files.forEach(file -> {
+                    OperationMetrics.filesLoaded(1);
+                    Content content = contents.computeIfAbsent(file.getContentId(), contentId -> contentRepository.findById(contentId).orElse(null));
+                    if (content == null) {
+                        // deleted after its page of files was read
+                        return;
+                    }
+                    for (SampledLine sampledLine : sampleLines(content, linesPerFile, random)) {
+                        consumer.accept(new StringBuilder(sampledLine.text()).reverse().toString());
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Picks {@code count} lines independently of each other, either from the given file or, without an id,
+     * from the whole corpus where every line is equally likely.
+     */
+    public List<RandomLine> getRandomLines(Long id, int count, boolean lineDetailRequired) throws Exception {
 
         Random random = new Random();
-        for(String line: allLines){
-            List<String> list = Arrays.asList(line.split("\n"));
-            allRandomBackwardLines.add(new StringBuilder(list.get(random.nextInt(list.size()))).reverse().toString());
+        Map<Long, File> files = new HashMap<>();
+        Map<Long, LineView> lineViews = new HashMap<>();
+        List<CorpusLineCounts.LinePosition> positions = new ArrayList<>(count);
+
+        if (id != null) {
+            File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+            LineView lineView = lineViewCache.get(getContent(file));
+            int lineCount = lineView.index().lineCount();
+            if (lineCount == 0) {
+                throw new Exception("file with id " + id + " has no lines");
+            }
+            files.put(id, file);
+            lineViews.put(file.getContentId(), lineView);
+            for (int i = 0; i < count; i++) {
+                positions.add(new CorpusLineCounts.LinePosition(id, random.nextInt(lineCount)));
+            }
+        } else {
+            if (corpusLineCounts.totalLineCount() == 0) {
+                throw new Exception("there are no lines to pick from");
+            }
+            for (int i = 0; i < count; i++) {
+                positions.add(corpusLineCounts.pick(random));
+            }
+            Set<Long> fileIds = positions.stream().map(CorpusLineCounts.LinePosition::fileId).collect(Collectors.toSet());
+            fileRepository.findAllById(fileIds).forEach(file -> files.put(file.getId(), file));
+            Set<Long> contentIds = files.values().stream().map(File::getContentId).collect(Collectors.toSet());
+            contentRepository.findAllById(contentIds).forEach(content -> lineViews.put(content.getId(), lineViewCache.get(content)));
         }
 
-        return allRandomBackwardLines;
-
+        List<RandomLine> randomLines = new ArrayList<>(count);
+        for (CorpusLineCounts.LinePosition position : positions) {
+            File file = files.get(position.fileId());
+            LineView lineView = file == null ? null : lineViews.get(file.getContentId());
+            if (lineView == null) {
+                // removed after it was picked
+                continue;
+            }
+            String line = getLine(lineView, position.line());
+            randomLines.add(lineDetailRequired
+                    ? new RandomLine(line, file.getId(), position.line(), file.getName(), getMostUsedLetter(line))
+                    : new RandomLine(line, null, null, null, null));
+        }
+        return randomLines;
     }
 
 
     public List<String> getTwentyLongestLinesOfLastUploadedFile() throws Exception{
 
-        File file = fileRepository.findFirstByOrderByIdDesc().orElseThrow(() -> new Exception("latest file could not fount"));
-        List<String> fileLineList = getFileLineList(file);
-        return getNLongestLinesOfLineList(fileLineList, 20);
-
+        return operationMetrics.observe("getTwentyLongestLinesOfLastUploadedFile", () -> {
+            File file = fileRepository.findFirstByOrderByIdDesc().orElseThrow(() -> new Exception("latest file could not fount"));
+            OperationMetrics.filesLoaded(1);
+            return fileSummaryService.getLongestLines(getContent(file), 20);
+        });
     }
 
 
     public List<String> getHundredLongestLineOfAllFiles() throws Exception{
-        List<File> allFiles = fileRepository.findAll();
 
-        List<List<String>> lineListOfAllFiles = allFiles.stream().map(this::getFileLineList).toList();
-        List<String> lineOfAllFiles = new ArrayList<>();
-        lineListOfAllFiles.forEach(lineOfAllFiles::addAll);
+        return operationMetrics.observe("getHundredLongestLineOfAllFiles", longestLinesTracker::getLongestLines);
+    }
+
+
+    public void streamHundredLongestLineOfAllFiles(Consumer<? super String> consumer) {
 
-        return getNLongestLinesOfLineList(lineOfAllFiles, 100);
+        operationMetrics.observe("getHundredLongestLineOfAllFiles", () -> longestLinesTracker.forEachLongestLine(consumer));
+    }
+
+
+    public List<String> getLongestLinesOfFile(Long id, int lineNumberToBeReturned) throws Exception {
 
+        File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+        Content content = getContent(file);
+        if (lineNumberToBeReturned <= FileSummaryService.LONGEST_LINE_COUNT) {
+            return fileSummaryService.getLongestLines(content, lineNumberToBeReturned);
+        }
+        TopLines longestLines = selectLongestLines(content, lineNumberToBeReturned);
+        return fileSummaryService.readLines(content, longestLines.sorted());
     }
 
 
-    private List<String> getFileLineList(File file){
+    /**
+     * Reads the lines {@code [from, to)} in one piece through the line index, decoding only those lines.
+     */
+    public FileLines getLines(Long id, int from, int to) throws Exception {
 
-        String content = new String(file.getContent(), StandardCharsets.UTF_8);
-        return Arrays.asList(content.split("\n"));
+        File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+        Content content = getContent(file);
+        return operationMetrics.observe("getLines", () -> {
+            LineView lineView = lineViewCache.get(content);
+            LineIndex lineIndex = lineView.index();
+            int lineCount = lineIndex.lineCount();
+            int first = Math.min(from, lineCount);
+            int last = Math.min(to, lineCount);
+            List<String> lines = new ArrayList<>(last - first);
+            if (first < last) {
+                int start = lineIndex.lineStart(first);
+                byte[] bytes = new byte[lineIndex.lineEnd(last - 1) - start];
+                if (lineView.bytes() != null) {
+                    lineView.bytes().get(start, bytes);
+                } else {
+                    bytes = contentStore.read(content, start, bytes.length);
+                }
+                OperationMetrics.bytesDecoded(bytes.length);
+                for (int line = first; line < last; line++) {
+                    lines.add(new String(bytes, lineIndex.lineStart(line) - start, lineIndex.lineLength(line), StandardCharsets.UTF_8));
+                }
+            }
+            return new FileLines(id, first, last, lineCount, lines);
+        });
     }
 
-    private List<String> getNLongestLinesOfLineList(List<String> fileLineList, long lineNumberToBeReturned) {
+    public RawContent getRawContent(Long id) throws Exception {
 
-        Collections.sort(fileLineList, Comparator.comparing(String::length).reversed());
-        long lineNumber = Math.min(fileLineList.size(), lineNumberToBeReturned);
-        return fileLineList.stream().limit(lineNumber).toList();
+        File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+        Content content = getContent(file);
+        return new RawContent(file.getName(), content, contentStore.fileRegion(content).orElse(null));
     }
 
+    /**
+     * Writes {@code length} bytes of the content starting at {@code offset} to the target, straight from the
+     * content store.
+     */
+    public void transferRawContent(RawContent rawContent, long offset, long length, WritableByteChannel target) throws IOException {
 
-    private String getMostUsedLetter(String line) {
+        operationMetrics.observe("getRawContent", () -> contentStore.transferTo(rawContent.content(), offset, length, target));
+    }
+
+    /**
+     * Finds the lines of all files which contain every term of the query through the search index. The hits
+     * are counted from the reference counts of the matching contents, read without loading them; only the
+     * contents and files of the requested page are loaded, and only its lines are decoded. Paging through the
+     * same query reuses its postings while the index does not change.
+     */
+    public SearchResult search(String query, int page, int size) throws Exception {
+
+        return operationMetrics.observe("search", () -> {
+            long[] postings = lineSearchIndex.find(TermCollector.terms(query));
+
+            // a content contributes its matching lines once per referencing file
+            Set<Long> contentIds = new LinkedHashSet<>();
+            for (long posting : postings) {
+                contentIds.add(PostingList.contentId(posting));
+            }
+            Map<Long, Long> referenceCounts = contentIds.isEmpty() ? Map.of()
+                    : contentRepository.findReferenceCounts(contentIds).stream()
+                    .collect(Collectors.toMap(ContentReferences::getId, ContentReferences::getReferenceCount));
+
+            long first = (long) page * size;
+            long totalHits = 0;
+            Map<Long, List<PageHit>> pageHits = new LinkedHashMap<>();
+            int from = 0;
+            while (from < postings.length) {
+                long contentId = PostingList.contentId(postings[from]);
+                int to = from + 1;
+                while (to < postings.length && PostingList.contentId(postings[to]) == contentId) {
+                    to++;
+                }
+                int lineCount = to - from;
+                int contentFrom = from;
+                from = to;
+                Long referenceCount = referenceCounts.get(contentId);
+                if (referenceCount == null) {
+                    // removed after it was found
+                    continue;
+                }
+                long contentHits = lineCount * referenceCount;
+                for (long hit = Math.max(first, totalHits); hit < Math.min(first + size, totalHits + contentHits); hit++) {
+                    long hitOfContent = hit - totalHits;
+                    pageHits.computeIfAbsent(contentId, ignored -> new ArrayList<>()).add(
+                            new PageHit((int) (hitOfContent / lineCount), PostingList.line(postings[contentFrom + (int) (hitOfContent % lineCount)])));
+                }
+                totalHits += contentHits;
+            }
+            if (pageHits.isEmpty()) {
+                return new SearchResult(query, page, size, totalHits, List.of());
+            }
+
+            Map<Long, Content> contents = contentRepository.findAllById(pageHits.keySet()).stream()
+                    .collect(Collectors.toMap(Content::getId, Function.identity()));
+            Map<Long, List<File>> files = fileRepository.findAllByContentIdInOrderByIdAsc(pageHits.keySet()).stream()
+                    .collect(Collectors.groupingBy(File::getContentId));
+            OperationMetrics.filesLoaded(pageHits.size());
+            List<SearchResult.Hit> hits = new ArrayList<>(size);
+            pageHits.forEach((contentId, contentHits) -> {
+                Content content = contents.get(contentId);
+                if (content == null) {
+                    // removed after its hits were counted
+                    return;
+                }
+                List<File> contentFiles = files.getOrDefault(contentId, List.of());
+                LineView lineView = lineViewCache.get(content);
+                for (PageHit pageHit : contentHits) {
+                    if (pageHit.file() < contentFiles.size()) {
+                        File file = contentFiles.get(pageHit.file());
+                        hits.add(new SearchResult.Hit(file.getId(), file.getName(), pageHit.line(), getLine(lineView, pageHit.line())));
+                    }
+                }
+            });
+            return new SearchResult(query, page, size, totalHits, hits);
+        });
+    }
+
+    public FileStats getFileStats(Long id) throws Exception {
+
+        File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+        return fileSummaryService.getStats(file, getContent(file));
+    }
+
+    public LineViewCache.CacheStats getLineCacheStats() {
+
+        return lineViewCache.stats();
+    }
+
+    public ContentStore.StoreStats getStoreStats() {
+
+        return contentStore.stats();
+    }
+
+    /**
+     * Deletes the file, and its content if no other file refers to it.
+     */
+    @Transactional
+    public void deleteFile(Long id) throws Exception {
+
+        operationMetrics.observe("deleteFile", () -> {
+            File file = fileRepository.findById(id).orElseThrow(() -> new Exception("file with id " + id + " not found"));
+            deleteFiles(List.of(file));
+        });
+    }
+
+    public List<String> getLongestLinesOfAllFiles(int lineNumberToBeReturned) throws Exception {
+
+        if (lineNumberToBeReturned <= LongestLinesTracker.CAPACITY) {
+            List<String> longestLines = longestLinesTracker.getLongestLines();
+            return longestLines.subList(0, Math.min(lineNumberToBeReturned, longestLines.size()));
+        }
+
+        // every distinct content is scanned once, its lines are repeated per referencing file when read
+        TopLines longestLines = new TopLines(lineNumberToBeReturned);
+        try (Stream<Content> contents = contentRepository.streamAll(corpusPageSize)) {
+            contents.forEach(content -> longestLines.offerAll(selectLongestLines(content, lineNumberToBeReturned)));
+        }
+
+        List<LineRef> lineRefs = longestLines.sorted();
+        Set<Long> contentIds = lineRefs.stream().map(LineRef::contentId).collect(Collectors.toSet());
+        Map<Long, Content> contents = contentRepository.findAllById(contentIds).stream()
+                .collect(Collectors.toMap(Content::getId, Function.identity()));
+        return fileSummaryService.readLines(contents, lineRefs, lineNumberToBeReturned);
+    }
+
+
+    /**
+     * Streams the upload into the store under a content of its own, which is dropped again if reading fails.
+     * Nothing refers to the content until it is {@link #store(List) stored}, in this or a later transaction.
+     */
+    @Transactional
+    IngestedContent ingest(String fileName, InputStreamSource source) throws IOException, InterruptedException {
+
+        Content content = contentRepository.save(new Content(null, null, 0, null, 0));
+        contentsInFlight.put(content.getId(), -1);
+        // otherwise it stays in flight until it is stored or discarded, also when a first attempt to store it fails
+        Long contentId = content.getId();
+        afterRollback(() -> contentsInFlight.remove(contentId));
+
+        MessageDigest digest = newContentDigest();
+        LineIndexBuilder lineIndexBuilder = new LineIndexBuilder();
+        LongestLinesCollector longestLinesCollector = fileSummaryService.newCollector(content.getId());
+        CharacterStatsCollector characterStatsCollector = fileSummaryService.newCharacterStatsCollector();
+        TermCollector termCollector = new TermCollector();
+        try (InputStream inputStream = source.getInputStream()) {
+            ContentStore.StoredContent storedContent = contentStore.write(content.getId(), inputStream, (chunk, offset, length) -> {
+                OperationMetrics.bytesRead(length);
+                digest.update(chunk, offset, length);
+                lineIndexBuilder.append(chunk, offset, length);
+                longestLinesCollector.append(chunk, offset, length);
+                characterStatsCollector.append(chunk, offset, length);
+                termCollector.append(chunk, offset, length);
+            });
+            content.setLength(storedContent.length());
+            content.setLocation(storedContent.location());
+            contentsInFlight.put(content.getId(), storedContent.location().getSegment());
+        } catch (IOException | RuntimeException e) {
+            discard(content);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        LineIndex lineIndex = lineIndexBuilder.build();
+        OperationMetrics.linesScanned(lineIndex.lineCount());
+        return new IngestedContent(fileName, content, hash, lineIndex, longestLinesCollector, characterStatsCollector, termCollector);
+    }
 
-        HashMap<Character, Integer> charMap = new HashMap<>();
-        int lineLength = line.length();
-        char answer = 0;
-        int count = 0;
+    /**
+     * Saves a file for every ingested content, in order. A content which is already stored, or which occurs
+     * earlier in the same list, only gains a reference and the ingested copy is discarded.
+     */
+    @Transactional
+    List<Long> store(List<IngestedContent> ingestedContents) throws InterruptedException {
+
+        // released once the files are added to the indexes, which a snapshot waits for
+        Lock storing = indexSnapshots.storingLock();
+        storing.lock();
+        afterCompletion(storing::unlock);
+        afterCommit(() -> ingestedContents.forEach(ingestedContent -> contentsInFlight.remove(ingestedContent.content().getId())));
+
+        // claimed in hash order, so two batches sharing contents can not wait for each other
+        SortedSet<String> hashes = ingestedContents.stream().map(IngestedContent::hash).collect(Collectors.toCollection(TreeSet::new));
+        for (String hash : hashes) {
+            claimContentHash(hash);
+        }
+
+        Map<String, Content> contentsByHash = new HashMap<>();
+        if (!hashes.isEmpty()) {
+            contentRepository.findAllByHashIn(hashes).forEach(content -> contentsByHash.put(content.getHash(), content));
+        }
+        Set<Long> existingContentIds = contentsByHash.values().stream().map(Content::getId).collect(Collectors.toSet());
+        Map<Long, Long> addedReferences = new HashMap<>();
+        List<Long> fileIds = new ArrayList<>(ingestedContents.size());
+        Map<Long, Integer> fileLineCounts = new LinkedHashMap<>();
+
+        for (IngestedContent ingestedContent : ingestedContents) {
+            Content content = contentsByHash.get(ingestedContent.hash());
+            if (content == null) {
+                content = ingestedContent.content();
+                content.setHash(ingestedContent.hash());
+                content.setReferenceCount(1);
+                content = contentRepository.save(content);
+                contentsByHash.put(ingestedContent.hash(), content);
+
+                Long contentId = content.getId();
+                LineIndex lineIndex = ingestedContent.lineIndex();
+                fileLineIndexRepository.save(new FileLineIndex(contentId, lineIndex.lineCount(), lineIndex.toByteArray()));
+                TopLines longestLines = fileSummaryService.save(contentId, ingestedContent.longestLinesCollector(),
+                        ingestedContent.characterStatsCollector());
+                Map<String, int[]> termLines = ingestedContent.termCollector().finish();
+                afterCommit(() -> {
+                    lineViewCache.invalidate(contentId);
+                    longestLinesTracker.add(longestLines);
+                    lineSearchIndex.add(contentId, termLines);
+                });
+            } else {
+                if (existingContentIds.contains(content.getId())) {
+                    addedReferences.merge(content.getId(), 1L, Long::sum);
+                } else {
+                    content.setReferenceCount(content.getReferenceCount() + 1);
+                }
+                // dropped in this transaction, a rolled back batch keeps its bytes and may store it on a retry
+                Content duplicate = ingestedContent.content();
+                contentStore.delete(duplicate);
+                contentRepository.delete(duplicate);
+            }
+
+            File file = fileRepository.save(new File(null, ingestedContent.fileName(), ingestedContent.content().getLength(), content.getId()));
+            fileIds.add(file.getId());
+            fileLineCounts.put(file.getId(), ingestedContent.lineIndex().lineCount());
+        }
+
+        addedReferences.forEach(contentRepository::addReferences);
+        afterCommit(() -> fileLineCounts.forEach(corpusLineCounts::add));
+        return fileIds;
+    }
+
+    /**
+     * Deletes the files which are not deleted yet, and every content no file refers to afterwards together with
+     * its line index and summary. Once committed, the files and contents are removed from the in-memory indexes.
+     *
+     * @return the bytes of the deleted contents
+     */
+    @Transactional
+    long deleteFiles(List<File> files) throws InterruptedException {
+
+        Lock storing = indexSnapshots.storingLock();
+        storing.lock();
+        afterCompletion(storing::unlock);
+
+        Map<Long, Content> contents = contentRepository.findAllById(files.stream().map(File::getContentId).collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Content::getId, Function.identity()));
+        // claimed like an upload of the same content would, so it can not gain a reference while it is deleted
+        SortedSet<String> hashes = contents.values().stream().map(Content::getHash).collect(Collectors.toCollection(TreeSet::new));
+        for (String hash : hashes) {
+            claimContentHash(hash);
+        }
+
+        Map<Long, Long> removedReferences = new HashMap<>();
+        List<File> deletedFiles = new ArrayList<>(files.size());
+        for (File file : files) {
+            // counted only if this transaction deleted it, a concurrent delete of the same file waited for the claim
+            if (fileRepository.removeById(file.getId()) > 0) {
+                deletedFiles.add(file);
+                removedReferences.merge(file.getContentId(), 1L, Long::sum);
+            }
+        }
+
+        long deletedBytes = 0;
+        Set<Long> deletedContentIds = new HashSet<>();
+        for (Map.Entry<Long, Long> entry : removedReferences.entrySet()) {
+            Long contentId = entry.getKey();
+            contentRepository.addReferences(contentId, -entry.getValue());
+            if (contentRepository.deleteUnreferenced(contentId) > 0) {
+                Content content = contents.get(contentId);
+                fileLineIndexRepository.deleteByContentId(contentId);
+                fileSummaryService.delete(contentId);
+                contentStore.delete(content);
+                deletedBytes += content.getLength();
+                deletedContentIds.add(contentId);
+            }
+        }
+        for (File file : deletedFiles) {
+            indexSnapshots.recordDeletion(file.getId(), deletedContentIds.contains(file.getContentId()) ? file.getContentId() : null);
+        }
+
+        Set<Long> deletedFileIds = deletedFiles.stream().map(File::getId).collect(Collectors.toSet());
+        afterCommit(() -> {
+            corpusLineCounts.removeAll(deletedFileIds);
+            for (Long contentId : deletedContentIds) {
+                lineViewCache.invalidate(contentId);
+                lineSearchIndex.remove(contentId);
+                longestLinesTracker.remove(contentId);
+            }
+        });
+        return deletedBytes;
+    }
+
+    /**
+     * Drops up to {@code limit} contents of uploads which were never stored, left behind when the application
+     * stopped while they were streaming or waiting to be indexed.
+     *
+     * @return the number of contents dropped
+     */
+    @Transactional
+    int discardAbandonedContents(int limit) {
+
+        // a content is registered as in flight before its row can be seen by another transaction
+        List<Content> abandoned = contentRepository.findByHashNullOrderByIdAsc(PageRequest.of(0, limit)).stream()
+                .filter(content -> !contentsInFlight.containsKey(content.getId()))
+                .toList();
+        abandoned.forEach(this::discard);
+        return abandoned.size();
+    }
+
+    /**
+     * Points the content to where the store copied it. A content deleted meanwhile stays deleted.
+     */
+    @Transactional
+    void moveContent(Long contentId, ContentLocation location) {
+
+        if (contentRepository.updateLocation(contentId, location.getSegment(), location.getOffset()) > 0) {
+            afterCommit(() -> lineViewCache.invalidate(contentId));
+        }
+    }
+
+    /**
+     * @return the segments written by uploads which are not stored yet
+     */
+    Set<Integer> segmentsInFlight() {
+
+        return contentsInFlight.values().stream().filter(segment -> segment >= 0).collect(Collectors.toSet());
+    }
+
+    /**
+     * Drops an ingested content which will not be stored.
+     */
+    @Transactional
+    void discard(IngestedContent ingestedContent) {
+
+        discard(ingestedContent.content());
+    }
+
+    private void discard(Content content) {
+
+        try {
+            contentStore.delete(content);
+            contentRepository.delete(content);
+        } finally {
+            // given up on either way, whatever is left of it is dropped by the compactor
+            contentsInFlight.remove(content.getId());
+        }
+    }
+
+    private static MessageDigest newContentDigest() {
+
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(CONTENT_HASH_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
 
-        for(int i = 0; i < lineLength; i++) {
-            char charAt = line.charAt(i);
-            charMap.put(charAt, charMap.getOrDefault(charAt, 0) + 1);
-            if(count < charMap.get(charAt)) {
-                answer = charAt;
-                count = charMap.get(charAt);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
             }
+        });
+    }
+
+    /**
+     * Waits until no other upload of the same content is in flight, so the hash lookup after it sees the
+     * committed content of an earlier upload instead of racing it into the unique constraint.
+     */
+    private void claimContentHash(String hash) throws InterruptedException {
+
+        CountDownLatch claim = new CountDownLatch(1);
+        CountDownLatch previousClaim;
+        while ((previousClaim = contentHashesInFlight.putIfAbsent(hash, claim)) != null) {
+            previousClaim.await();
         }
+        afterCompletion(() -> {
+            contentHashesInFlight.remove(hash, claim);
+            claim.countDown();
+        });
+    }
+
+    private void afterRollback(Runnable action) {
 
-        return String.valueOf(answer);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    action.run();
+                }
+            }
+        });
     }
 
+    private void afterCompletion(Runnable action) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    private Content getContent(File file) {
+
+        return contentRepository.findById(file.getContentId())
+                .orElseThrow(() -> new IllegalStateException("file with id " + file.getId() + " has no content"));
+    }
+
+    private TopLines selectLongestLines(Content content, int lineNumberToBeReturned) {
+
+        LineView lineView = lineViewCache.get(content);
+        ByteBuffer bytes = lineView.bytes() != null ? lineView.bytes() : contentStore.content(content);
+        OperationMetrics.linesScanned(lineView.index().lineCount());
+        return ParallelTopLines.select(content.getId(), bytes, lineView.index(), lineNumberToBeReturned);
+    }
+
+    /**
+     * Picks up to {@code count} distinct random lines, through the line index if the content has one,
+     * otherwise in a single reservoir-sampling pass over its bytes. Only the picked lines are decoded.
+     */
+    private List<SampledLine> sampleLines(Content content, int count, Random random) {
+
+        Optional<LineView> lineView = lineViewCache.find(content);
+        List<SampledLine> sampledLines = new ArrayList<>();
+        if (lineView.isPresent()) {
+            for (int line : pickDistinct(lineView.get().index().lineCount(), count, random)) {
+                sampledLines.add(new SampledLine(line, getLine(lineView.get(), line)));
+            }
+            return sampledLines;
+        }
+
+        ByteBuffer bytes = contentStore.content(content);
+        ReservoirLineSampler sampler = new ReservoirLineSampler(count, random);
+        sampler.append(bytes);
+        List<LineRange> lineRanges = sampler.finish();
+        OperationMetrics.linesScanned(sampler.lineCount());
+        for (LineRange lineRange : lineRanges) {
+            byte[] lineBytes = new byte[lineRange.byteLength()];
+            bytes.get(lineRange.start(), lineBytes);
+            OperationMetrics.bytesDecoded(lineBytes.length);
+            sampledLines.add(new SampledLine(lineRange.line(), new String(lineBytes, StandardCharsets.UTF_8)));
+        }
+        return sampledLines;
+    }
+
+    /**
+     * Floyd's algorithm: {@code min(count, bound)} distinct numbers of {@code [0, bound)} in a random order.
+     */
+    private static Collection<Integer> pickDistinct(int bound, int count, Random random) {
+
+        Set<Integer> picked = new LinkedHashSet<>();
+        for (int i = bound - Math.min(count, bound); i < bound; i++) {
+            int candidate = random.nextInt(i + 1);
+            picked.add(picked.contains(candidate) ? i : candidate);
+        }
+        return picked;
+    }
+
+    private String getLine(LineView lineView, int line) {
+
+        LineIndex lineIndex = lineView.index();
+        byte[] lineBytes = new byte[lineIndex.lineLength(line)];
+        if (lineView.bytes() != null) {
+            lineView.bytes().get(lineIndex.lineStart(line), lineBytes);
+        } else {
+            lineBytes = contentStore.read(lineView.content(), lineIndex.lineStart(line), lineBytes.length);
+        }
+        OperationMetrics.bytesDecoded(lineBytes.length);
+        return new String(lineBytes, StandardCharsets.UTF_8);
+    }
+
+    private String getMostUsedLetter(String line) {
+
+        return FileSummaryService.letter(LetterCounter.mostUsedLetter(line, LETTER_COUNTER.get()));
+    }
+
+
+    private record SampledLine(int line, String text) {
+    }
+
+    private record PageHit(int file, int line) {
+    }
 
 }
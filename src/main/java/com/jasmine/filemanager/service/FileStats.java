@@ -0,0 +1,10 @@
+package com.jasmine.filemanager.service;
+
+import java.util.List;
+
+/**
+ * Statistics of one file as computed at upload time. Spaces and line separators are not counted as letters.
+ */
+public record FileStats(Long fileId, String fileName, long length, int lineCount, int maxLineLength, long letterCount,
+                        String mostUsedLetter, long mostUsedLetterCount, int lineBucketSize, List<String> lineBucketMostUsedLetters) {
+}
@@ -0,0 +1,175 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileSummary;
+import com.jasmine.filemanager.data.FileSummaryRepository;
+import com.jasmine.filemanager.index.CharacterStatsCollector;
+import com.jasmine.filemanager.index.LineRef;
+import com.jasmine.filemanager.index.LongestLinesCollector;
+import com.jasmine.filemanager.index.TopLines;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import com.jasmine.filemanager.store.ContentStore;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the summary of every content computed at ingest, so per-file questions do not need to read the content.
+ * Files with the same content share its summary.
+ * <p>
+ * A summary holds as many longest lines as the global longest lines need, which lets
+ * {@link LongestLinesTracker} be rebuilt from summaries alone.
+ */
+@Service
+public class FileSummaryService {
+
+    public static final int LONGEST_LINE_COUNT = LongestLinesTracker.CAPACITY;
+
+    private final FileSummaryRepository fileSummaryRepository;
+    private final ContentStore contentStore;
+    private final int statsLineBucketSize;
+
+    public FileSummaryService(FileSummaryRepository fileSummaryRepository, ContentStore contentStore, FileManagerProperties properties) {
+        this.fileSummaryRepository = fileSummaryRepository;
+        this.contentStore = contentStore;
+        this.statsLineBucketSize = properties.getStatsLineBucketSize();
+    }
+
+    public LongestLinesCollector newCollector(Long contentId) {
+        return new LongestLinesCollector(contentId, LONGEST_LINE_COUNT);
+    }
+
+    public CharacterStatsCollector newCharacterStatsCollector() {
+        return new CharacterStatsCollector(statsLineBucketSize);
+    }
+
+    /**
+     * @param collector               a collector which has seen the whole content
+     * @param characterStatsCollector a collector which has seen the whole content
+     */
+    public TopLines save(Long contentId, LongestLinesCollector collector, CharacterStatsCollector characterStatsCollector) {
+
+        TopLines longestLines = collector.finish();
+        fileSummaryRepository.save(summarize(contentId, collector, longestLines, characterStatsCollector));
+        return longestLines;
+    }
+
+    public void delete(Long contentId) {
+        fileSummaryRepository.deleteByContentId(contentId);
+    }
+
+    /**
+     * @return the persisted summary of the content, or one computed from its bytes if it has none
+     */
+    public FileSummary getSummary(Content content) {
+
+        return fileSummaryRepository.findById(content.getId()).orElseGet(() -> {
+            LongestLinesCollector collector = newCollector(content.getId());
+            CharacterStatsCollector characterStatsCollector = newCharacterStatsCollector();
+            ByteBuffer bytes = contentStore.content(content);
+            collector.append(bytes);
+            characterStatsCollector.append(bytes);
+            return summarize(content.getId(), collector, collector.finish(), characterStatsCollector);
+        });
+    }
+
+    public TopLines getLongestLines(Content content) {
+        return TopLines.fromByteArray(content.getId(), LONGEST_LINE_COUNT, getSummary(content).getLongestLines());
+    }
+
+    /**
+     * @return the {@code count} longest lines of the content, longest first
+     */
+    public List<String> getLongestLines(Content content, int count) {
+
+        List<LineRef> lineRefs = getLongestLines(content).sorted();
+        return readLines(content, lineRefs.subList(0, Math.min(count, lineRefs.size())));
+    }
+
+    public FileStats getStats(File file, Content content) {
+
+        FileSummary summary = getSummary(content);
+        IntBuffer bucketLetters = ByteBuffer.wrap(summary.getBucketMostUsedLetters()).asIntBuffer();
+        List<String> bucketMostUsedLetters = new ArrayList<>(bucketLetters.remaining());
+        while (bucketLetters.hasRemaining()) {
+            bucketMostUsedLetters.add(letter(bucketLetters.get()));
+        }
+        return new FileStats(file.getId(), file.getName(), summary.getLength(), summary.getLineCount(), summary.getMaxLineLength(),
+                summary.getLetterCount(), letter(summary.getMostUsedLetter()), summary.getMostUsedLetterCount(),
+                summary.getLineBucketSize(), bucketMostUsedLetters);
+    }
+
+    public List<String> readLines(Content content, List<LineRef> lineRefs) {
+
+        List<String> lines = new ArrayList<>(lineRefs.size());
+        for (LineRef lineRef : lineRefs) {
+            lines.add(new String(contentStore.read(content, lineRef.start(), lineRef.byteLength()), StandardCharsets.UTF_8));
+            OperationMetrics.bytesDecoded(lineRef.byteLength());
+        }
+        return lines;
+    }
+
+    /**
+     * Reads lines of several contents in the given order, repeating every line once per file referencing its
+     * content, as if each file had been stored on its own. Lines of contents which are not given are skipped.
+     *
+     * @return at most {@code count} lines
+     */
+    public List<String> readLines(Map<Long, Content> contents, List<LineRef> lineRefs, int count) {
+
+        List<String> lines = new ArrayList<>(Math.min(count, lineRefs.size()));
+        readLines(contents, lineRefs, count, lines::add);
+        return lines;
+    }
+
+    /**
+     * Like {@link #readLines(Map, List, int)}, but hands every line to the consumer as soon as it is read.
+     */
+    public void readLines(Map<Long, Content> contents, List<LineRef> lineRefs, int count, Consumer<? super String> consumer) {
+
+        int read = 0;
+        for (LineRef lineRef : lineRefs) {
+            Content content = contents.get(lineRef.contentId());
+            if (content == null) {
+                continue;
+            }
+            String line = readLines(content, List.of(lineRef)).get(0);
+            for (long reference = 0; reference < content.getReferenceCount() && read < count; reference++) {
+                consumer.accept(line);
+                read++;
+            }
+            if (read == count) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the letter of the code point, empty for {@code -1}
+     */
+    public static String letter(int codePoint) {
+        return codePoint < 0 ? "" : new String(Character.toChars(codePoint));
+    }
+
+
+    private FileSummary summarize(Long contentId, LongestLinesCollector collector, TopLines longestLines, CharacterStatsCollector characterStatsCollector) {
+
+        List<LineRef> sorted = longestLines.sorted();
+        int maxLineLength = sorted.isEmpty() ? 0 : sorted.get(0).length();
+        CharacterStatsCollector.CharacterStats stats = characterStatsCollector.finish(collector.lineCount());
+
+        ByteBuffer bucketLetters = ByteBuffer.allocate(stats.bucketMostUsedLetters().length * Integer.BYTES);
+        bucketLetters.asIntBuffer().put(stats.bucketMostUsedLetters());
+
+        return new FileSummary(contentId, collector.lineCount(), collector.length(), maxLineLength, longestLines.toByteArray(),
+                stats.letterCount(), stats.mostUsedLetter(), stats.mostUsedLetterCount(), stats.bucketLines(), bucketLetters.array());
+    }
+}
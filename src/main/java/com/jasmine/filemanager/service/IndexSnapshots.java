@@ -0,0 +1,302 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileDeletion;
+import com.jasmine.filemanager.data.FileDeletionRepository;
+import com.jasmine.filemanager.data.FileRepository;
+import com.jasmine.filemanager.index.InvertedIndex;
+import com.jasmine.filemanager.index.TopLines;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Saves the in-memory indexes derived from the stored files, so a restart only replays the files stored since
+ * instead of rescanning every content. Line offsets and file summaries are rows of their own and need no snapshot.
+ * <p>
+ * A snapshot holds the corpus line counts, the longest lines of all files and the search index, each covering
+ * at least every file up to the snapshot's file id. It is written to a temporary file which is moved into place,
+ * numbered by a sequence; the newest {@code retained} snapshots are kept. At startup the newest readable snapshot
+ * of the current format is mapped and handed to the indexes, whose startup rebuild then only reads the files
+ * after it. Snapshots are written every {@code interval} and when the application stops.
+ * <p>
+ * Deleted files are logged in the database while snapshots are enabled, and a snapshot also records the last
+ * deletion it covers. Restoring it drops the files and contents deleted since, the log is trimmed to what the
+ * oldest retained snapshot needs.
+ */
+@Component
+public class IndexSnapshots {
+
+    public static final int FORMAT_VERSION = 2;
+
+    private static final Logger log = LoggerFactory.getLogger(IndexSnapshots.class);
+
+    private static final int MAGIC = 0x464D4958;
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{20})\\.bin");
+
+    private final FileRepository fileRepository;
+    private final FileDeletionRepository fileDeletionRepository;
+    private final CorpusLineCounts corpusLineCounts;
+    private final LongestLinesTracker longestLinesTracker;
+    private final LineSearchIndex lineSearchIndex;
+    private final boolean enabled;
+    private final Path directory;
+    private final int retained;
+    private final ReadWriteLock storing = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long sequence;
+    private long snapshotFileId = -1;
+    private long snapshotDeletionId = -1;
+
+    public IndexSnapshots(FileRepository fileRepository, FileDeletionRepository fileDeletionRepository, CorpusLineCounts corpusLineCounts, LongestLinesTracker longestLinesTracker,
+                          LineSearchIndex lineSearchIndex, FileManagerProperties properties) throws IOException {
+
+        this.fileRepository = fileRepository;
+        this.fileDeletionRepository = fileDeletionRepository;
+        this.corpusLineCounts = corpusLineCounts;
+        this.longestLinesTracker = longestLinesTracker;
+        this.lineSearchIndex = lineSearchIndex;
+        this.enabled = properties.getSnapshot().isEnabled();
+        this.directory = properties.getSnapshot().getDirectory();
+        this.retained = Math.max(1, properties.getSnapshot().getRetained());
+
+        if (enabled) {
+            Files.createDirectories(directory);
+            restoreNewest();
+            long interval = properties.getSnapshot().getInterval().toMillis();
+            snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Held by every transaction storing files until its files are added to the indexes, so a snapshot can
+     * tell up to which file the indexes are complete.
+     */
+    public Lock storingLock() {
+        return storing.readLock();
+    }
+
+    /**
+     * Logs a file deleted in the current transaction, which also holds the {@link #storingLock()}.
+     *
+     * @param contentId the content deleted together with the file, if any
+     */
+    public void recordDeletion(Long fileId, Long contentId) {
+
+        if (enabled) {
+            fileDeletionRepository.save(new FileDeletion(null, fileId, contentId));
+        }
+    }
+
+    /**
+     * Writes a snapshot unless the indexes are still loading or no file was stored or deleted since the last one.
+     */
+    public synchronized void writeSnapshot() throws IOException {
+
+        if (!corpusLineCounts.isLoaded() || !longestLinesTracker.isLoaded() || !lineSearchIndex.isLoaded()) {
+            log.debug("indexes are still loading, skipping snapshot");
+            return;
+        }
+        long upToFileId;
+        long upToDeletionId;
+        storing.writeLock().lock();
+        try {
+            upToFileId = lastFileId();
+            upToDeletionId = lastDeletionId();
+        } finally {
+            storing.writeLock().unlock();
+        }
+        if (upToFileId == snapshotFileId && upToDeletionId == snapshotDeletionId) {
+            return;
+        }
+
+        // the indexes are written one after another while uploads and deletions go on, so they may cover files
+        // after upToFileId and miss ones deleted after upToDeletionId, which a restore drops again
+        long nextSequence = sequence + 1;
+        Path snapshot = directory.resolve(String.format("snapshot-%020d.bin", nextSequence));
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(nextSequence);
+            out.writeLong(upToFileId);
+            out.writeLong(upToDeletionId);
+            corpusLineCounts.writeTo(out);
+            longestLinesTracker.writeTo(out);
+            lineSearchIndex.writeTo(out);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        sequence = nextSequence;
+        snapshotFileId = upToFileId;
+        snapshotDeletionId = upToDeletionId;
+        log.info("wrote index snapshot {} up to file {}, {} bytes", snapshot.getFileName(), upToFileId, Files.size(snapshot));
+
+        List<Path> snapshots = snapshots();
+        for (Path old : snapshots.subList(Math.min(retained, snapshots.size()), snapshots.size())) {
+            Files.deleteIfExists(old);
+        }
+        long neededDeletionId = upToDeletionId;
+        for (Path kept : snapshots.subList(0, Math.min(retained, snapshots.size()))) {
+            neededDeletionId = Math.min(neededDeletionId, deletionId(kept));
+        }
+        if (neededDeletionId > 0) {
+            fileDeletionRepository.deleteUpTo(neededDeletionId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        snapshotExecutor.shutdownNow();
+        if (enabled) {
+            writeSnapshotQuietly();
+        }
+    }
+
+
+    private void restoreNewest() throws IOException {
+
+        List<Path> snapshots = snapshots();
+        if (!snapshots.isEmpty()) {
+            sequence = sequence(snapshots.get(0));
+        }
+        for (Path snapshot : snapshots) {
+            try {
+                restore(snapshot);
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("could not restore index snapshot {}, trying an older one", snapshot.getFileName(), e);
+            }
+        }
+        log.info("no index snapshot to restore, the indexes are rebuilt from all content");
+    }
+
+    private void restore(Path snapshot) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                throw new IOException("not an index snapshot of format version " + FORMAT_VERSION);
+            }
+            in.getLong();
+            long upToFileId = in.getLong();
+            long upToDeletionId = in.getLong();
+            CorpusLineCounts.LineCountTable lineCounts = CorpusLineCounts.readTable(in);
+            TopLines longestLines = TopLines.readFrom(in, LongestLinesTracker.CAPACITY);
+            InvertedIndex searchIndex = InvertedIndex.readFrom(in);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("index snapshot is incomplete");
+            }
+
+            List<FileDeletion> deletions = fileDeletionRepository.findByIdGreaterThanOrderByIdAsc(upToDeletionId);
+            Set<Long> deletedFileIds = deletions.stream().map(FileDeletion::getFileId).collect(Collectors.toSet());
+            Set<Long> deletedContentIds = deletions.stream().map(FileDeletion::getContentId).filter(Objects::nonNull).collect(Collectors.toSet());
+            if (lastFileId() < upToFileId && !deletedFileIds.contains(upToFileId)) {
+                throw new IOException("index snapshot covers file " + upToFileId + " which the database does not have");
+            }
+
+            corpusLineCounts.restore(lineCounts, upToFileId);
+            corpusLineCounts.removeAll(deletedFileIds);
+            deletedContentIds.forEach(searchIndex::remove);
+            lineSearchIndex.restore(searchIndex, upToFileId);
+            // lines displaced by the lines of a deleted content are not in the snapshot, the tracker starts over then
+            if (!longestLines.removeIf(lineRef -> deletedContentIds.contains(lineRef.contentId()))) {
+                longestLinesTracker.restore(longestLines, upToFileId);
+            }
+            snapshotFileId = upToFileId;
+            snapshotDeletionId = upToDeletionId;
+            log.info("restored index snapshot {} up to file {}, dropping {} files deleted since", snapshot.getFileName(), upToFileId, deletedFileIds.size());
+        }
+    }
+
+    private void writeSnapshotQuietly() {
+
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException e) {
+            log.warn("could not write index snapshot", e);
+        }
+    }
+
+    private long lastFileId() {
+        return fileRepository.findFirstByOrderByIdDesc().map(File::getId).orElse(0L);
+    }
+
+    private long lastDeletionId() {
+        return fileDeletionRepository.findFirstByOrderByIdDesc().map(FileDeletion::getId).orElse(0L);
+    }
+
+    /**
+     * @return the last deletion the snapshot covers, 0 if it is not of the current format
+     */
+    private static long deletionId(Path snapshot) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + 3 * Long.BYTES);
+            if (channel.read(header, 0) < header.capacity()) {
+                return 0;
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                return 0;
+            }
+            header.getLong();
+            header.getLong();
+            return header.getLong();
+        }
+    }
+
+    /**
+     * @return the snapshots, newest first
+     */
+    private List<Path> snapshots() throws IOException {
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> SNAPSHOT_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(IndexSnapshots::sequence).reversed())
+                    .toList();
+        }
+    }
+
+    private static long sequence(Path snapshot) {
+
+        Matcher matcher = SNAPSHOT_NAME.matcher(snapshot.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
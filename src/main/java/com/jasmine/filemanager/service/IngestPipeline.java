@@ -0,0 +1,265 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.config.FileValidator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Stores uploads asynchronously in four stages, so a request only waits until its upload is received.
+ * <ol>
+ *     <li>receive: the request thread moves the upload to the spool directory and returns its ingest id</li>
+ *     <li>validate: a single worker checks size and content type like {@link FileValidator}</li>
+ *     <li>index: up to {@code file-manager.ingest.index-concurrency} workers stream spooled uploads into the
+ *     content store while their line index and summary are collected</li>
+ *     <li>persist: one worker stores whatever is indexed, up to {@code persist-batch-size} uploads per transaction</li>
+ * </ol>
+ * Ingests only live in memory; an upload which is not stored when the application stops is lost.
+ */
+@Component
+public class IngestPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestPipeline.class);
+
+    private static final String SPOOL_SUFFIX = ".upload";
+
+    private final FileService fileService;
+    private final Path directory;
+    private final int persistBatchSize;
+    private final int retainedStatuses;
+
+    private final ExecutorService validator;
+    private final ExecutorService indexers;
+    private final Thread persister;
+    private final BlockingQueue<Ingest> indexed = new LinkedBlockingQueue<>();
+
+    private final AtomicLong lastIngestId = new AtomicLong();
+    private final Map<Long, Ingest> ingests = new ConcurrentHashMap<>();
+    private final Queue<Long> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finishedCount = new AtomicInteger();
+
+    public IngestPipeline(FileService fileService, FileManagerProperties properties) throws IOException {
+
+        this.fileService = fileService;
+        this.directory = properties.getIngest().getDirectory();
+        this.persistBatchSize = Math.max(1, properties.getIngest().getPersistBatchSize());
+        this.retainedStatuses = Math.max(0, properties.getIngest().getRetainedStatuses());
+
+        Files.createDirectories(directory);
+        deleteSpooledUploads();
+
+        boolean virtualThreads = properties.isVirtualThreads();
+        this.validator = Executors.newSingleThreadExecutor(threadFactory("ingest-validate-", virtualThreads));
+        this.indexers = Executors.newFixedThreadPool(Math.max(1, properties.getIngest().getIndexConcurrency()),
+                threadFactory("ingest-index-", virtualThreads));
+        this.persister = threadFactory("ingest-persist-", virtualThreads).newThread(this::persistIndexed);
+        this.persister.start();
+    }
+
+    /**
+     * Receives the upload and hands it to the later stages.
+     */
+    public IngestStatus submit(MultipartFile multipartFile) throws IOException {
+
+        long ingestId = lastIngestId.incrementAndGet();
+        Path spooledUpload = directory.resolve(ingestId + SPOOL_SUFFIX);
+        multipartFile.transferTo(spooledUpload);
+
+        Ingest ingest = new Ingest(ingestId, multipartFile.getOriginalFilename(), multipartFile.getContentType(), spooledUpload);
+        ingests.put(ingestId, ingest);
+        validator.execute(() -> validate(ingest));
+        return ingest.status();
+    }
+
+    public Optional<IngestStatus> getStatus(Long ingestId) {
+
+        return Optional.ofNullable(ingests.get(ingestId)).map(Ingest::status);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        validator.shutdownNow();
+        indexers.shutdownNow();
+        persister.interrupt();
+    }
+
+
+    private void validate(Ingest ingest) {
+
+        try {
+            if (!FileValidator.isValid(Files.size(ingest.spooledUpload), ingest.contentType)) {
+                fail(ingest, FileValidator.MESSAGE);
+                return;
+            }
+        } catch (IOException e) {
+            fail(ingest, e.getMessage());
+            return;
+        }
+        ingest.stage = IngestStatus.Stage.VALIDATED;
+        indexers.execute(() -> index(ingest));
+    }
+
+    private void index(Ingest ingest) {
+
+        try {
+            ingest.ingestedContent = fileService.ingest(ingest.fileName, new FileSystemResource(ingest.spooledUpload));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(ingest, "interrupted while indexing");
+            return;
+        } catch (IOException | RuntimeException e) {
+            fail(ingest, e.getMessage());
+            return;
+        }
+        deleteSpooledUpload(ingest);
+        ingest.stage = IngestStatus.Stage.INDEXED;
+        indexed.add(ingest);
+    }
+
+    private void persistIndexed() {
+
+        try {
+            while (true) {
+                List<Ingest> batch = new ArrayList<>(persistBatchSize);
+                batch.add(indexed.take());
+                indexed.drainTo(batch, persistBatchSize - 1);
+                persist(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stores the batch in one transaction. If that fails, every upload is tried on its own so only the
+     * offending one fails.
+     */
+    private void persist(List<Ingest> batch) throws InterruptedException {
+
+        try {
+            List<Long> fileIds = fileService.store(batch.stream().map(ingest -> ingest.ingestedContent).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                Ingest ingest = batch.get(i);
+                ingest.fileId = fileIds.get(i);
+                ingest.ingestedContent = null;
+                ingest.stage = IngestStatus.Stage.STORED;
+                finish(ingest);
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                for (Ingest ingest : batch) {
+                    persist(List.of(ingest));
+                }
+                return;
+            }
+            Ingest ingest = batch.get(0);
+            fail(ingest, e.getMessage());
+        }
+    }
+
+    private void fail(Ingest ingest, String error) {
+
+        log.debug("ingest {} of {} failed: {}", ingest.id, ingest.fileName, error);
+        deleteSpooledUpload(ingest);
+        if (ingest.ingestedContent != null) {
+            try {
+                fileService.discard(ingest.ingestedContent);
+            } catch (RuntimeException e) {
+                log.warn("could not discard the content of failed ingest {}", ingest.id, e);
+            }
+            ingest.ingestedContent = null;
+        }
+        ingest.error = error;
+        ingest.stage = IngestStatus.Stage.FAILED;
+        finish(ingest);
+    }
+
+    private void finish(Ingest ingest) {
+
+        finished.add(ingest.id);
+        if (finishedCount.incrementAndGet() > retainedStatuses) {
+            Long oldest = finished.poll();
+            if (oldest != null) {
+                finishedCount.decrementAndGet();
+                ingests.remove(oldest);
+            }
+        }
+    }
+
+    private void deleteSpooledUpload(Ingest ingest) {
+
+        try {
+            Files.deleteIfExists(ingest.spooledUpload);
+        } catch (IOException e) {
+            log.warn("could not delete spooled upload {}", ingest.spooledUpload, e);
+        }
+    }
+
+    private void deleteSpooledUploads() throws IOException {
+
+        try (Stream<Path> spooledUploads = Files.list(directory)) {
+            spooledUploads.filter(path -> path.getFileName().toString().endsWith(SPOOL_SUFFIX)).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix, boolean virtual) {
+
+        return virtual ? Thread.ofVirtual().name(prefix, 0).factory() : Thread.ofPlatform().name(prefix, 0).daemon().factory();
+    }
+
+
+    private static final class Ingest {
+
+        private final long id;
+        private final String fileName;
+        private final String contentType;
+        private final Path spooledUpload;
+
+        private volatile IngestStatus.Stage stage = IngestStatus.Stage.RECEIVED;
+        private volatile IngestedContent ingestedContent;
+        private volatile Long fileId;
+        private volatile String error;
+
+        private Ingest(long id, String fileName, String contentType, Path spooledUpload) {
+            this.id = id;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.spooledUpload = spooledUpload;
+        }
+
+        private IngestStatus status() {
+            return new IngestStatus(id, fileName, stage, fileId, error);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.jasmine.filemanager.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Progress of an asynchronous upload. {@code fileId} is set once it is stored, {@code error} once it failed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IngestStatus(Long ingestId, String fileName, Stage stage, Long fileId, String error) {
+
+    public enum Stage {
+
+        /** spooled, waiting to be validated */
+        RECEIVED,
+        /** accepted, waiting to be indexed */
+        VALIDATED,
+        /** in the content store with its derived data collected, waiting to be stored */
+        INDEXED,
+        /** stored under {@code fileId}, its line index and summary can be read */
+        STORED,
+        FAILED
+    }
+}
@@ -0,0 +1,15 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.index.CharacterStatsCollector;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.index.LongestLinesCollector;
+import com.jasmine.filemanager.index.TermCollector;
+
+/**
+ * An upload whose bytes are in the content store and whose derived data is collected, but which no file refers to yet.
+ */
+record IngestedContent(String fileName, Content content, String hash, LineIndex lineIndex,
+                       LongestLinesCollector longestLinesCollector, CharacterStatsCollector characterStatsCollector,
+                       TermCollector termCollector) {
+}
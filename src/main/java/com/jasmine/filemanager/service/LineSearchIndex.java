@@ -0,0 +1,186 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentRepository;
+import com.jasmine.filemanager.index.InvertedIndex;
+import com.jasmine.filemanager.index.TermCollector;
+import com.jasmine.filemanager.store.ContentStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the lines of all distinct contents which contain some terms through an {@link InvertedIndex}, so a
+ * search never scans the stored content.
+ * <p>
+ * Uploads of new content add the terms collected while it streamed, removing a content drops its postings.
+ * The index lives in memory; it is rebuilt from the stored contents in the background at startup, or after a
+ * {@link #restore(InvertedIndex, long) restored snapshot} only extended by the contents of files stored since.
+ * Lookups wait for a running rebuild. The postings found for the last few queries are kept until the index
+ * changes, so paging through the hits of a query does not intersect its posting lists again.
+ */
+@Component
+public class LineSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(LineSearchIndex.class);
+
+    private static final int FOUND_QUERIES = 16;
+
+    private final ContentRepository contentRepository;
+    private final ContentStore contentStore;
+    private final int corpusPageSize;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "line-search-index-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<List<String>, long[]> found = new LinkedHashMap<>(FOUND_QUERIES * 4 / 3 + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, long[]> eldest) {
+            return size() > FOUND_QUERIES;
+        }
+    };
+
+    private InvertedIndex index = new InvertedIndex();
+    private CompletableFuture<Void> rebuild;
+    private Set<Long> removedDuringRebuild;
+    private Long restoredUpToFileId;
+
+    public LineSearchIndex(ContentRepository contentRepository, ContentStore contentStore, FileManagerProperties properties) {
+        this.contentRepository = contentRepository;
+        this.contentStore = contentStore;
+        this.corpusPageSize = properties.getCorpusPageSize();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuildOnStartup() {
+
+        if (rebuild == null) {
+            rebuild = CompletableFuture.runAsync(this::rebuild, rebuildExecutor);
+        }
+    }
+
+    /**
+     * Starts from an index read by {@link InvertedIndex#readFrom} which has the contents of every file up to
+     * {@code upToFileId}.
+     */
+    public synchronized void restore(InvertedIndex restored, long upToFileId) {
+
+        index = restored;
+        restoredUpToFileId = upToFileId;
+        found.clear();
+    }
+
+    /**
+     * @return whether the startup rebuild is done
+     */
+    public synchronized boolean isLoaded() {
+        return rebuild != null && rebuild.isDone();
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        index.writeTo(out);
+    }
+
+    public synchronized void add(Long contentId, Map<String, int[]> termLines) {
+
+        index.add(contentId, termLines);
+        found.clear();
+    }
+
+    public synchronized void remove(Long contentId) {
+
+        if (removedDuringRebuild != null) {
+            removedDuringRebuild.add(contentId);
+        }
+        index.remove(contentId);
+        found.clear();
+    }
+
+    /**
+     * @return the postings of the lines containing all terms, ascending by content id and line; shared by the
+     * lookups of the same terms, so it must not be changed
+     */
+    public long[] find(List<String> terms) {
+
+        awaitRebuild();
+        List<String> query = terms.stream().distinct().sorted().toList();
+        synchronized (this) {
+            return found.computeIfAbsent(query, index::find);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+
+    private void awaitRebuild() {
+
+        CompletableFuture<Void> pending;
+        synchronized (this) {
+            if (rebuild == null) {
+                rebuild = CompletableFuture.completedFuture(null);
+                rebuild();
+            }
+            pending = rebuild;
+        }
+        pending.join();
+    }
+
+    private void rebuild() {
+
+        Long upToFileId;
+        synchronized (this) {
+            removedDuringRebuild = new HashSet<>();
+            upToFileId = restoredUpToFileId;
+        }
+        try (Stream<Content> contents = upToFileId == null ? contentRepository.streamAll(corpusPageSize)
+                : contentRepository.streamReferencedByFilesAfter(upToFileId, corpusPageSize)) {
+            contents.forEach(content -> {
+                synchronized (this) {
+                    if (index.contains(content.getId())) {
+                        return;
+                    }
+                }
+                TermCollector termCollector = new TermCollector();
+                termCollector.append(contentStore.content(content));
+                Map<String, int[]> termLines = termCollector.finish();
+                synchronized (this) {
+                    // an upload may have indexed it meanwhile, which adding again ignores
+                    if (!removedDuringRebuild.contains(content.getId())) {
+                        index.add(content.getId(), termLines);
+                        found.clear();
+                    }
+                }
+            });
+        } finally {
+            synchronized (this) {
+                removedDuringRebuild = null;
+                restoredUpToFileId = null;
+            }
+        }
+        synchronized (this) {
+            log.debug("rebuilt line search index of {} contents, {} terms in {} posting bytes",
+                    index.contentCount(), index.termCount(), index.postingBytes());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.index.LineIndex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Line offsets of a content together with its bytes, if those were small enough to keep.
+ * The byte buffer is shared between readers and must only be read with absolute gets.
+ *
+ * @param bytes the whole content, {@code null} if lines have to be read from the content store
+ */
+public record LineView(Content content, LineIndex index, ByteBuffer bytes) {
+
+    /**
+     * @return bytes of heap the view holds on to; mapped content is not counted
+     */
+    public long weight() {
+
+        long bytesWeight = bytes == null || bytes.isDirect() ? 0 : bytes.capacity();
+        return index.sizeInBytes() + bytesWeight;
+    }
+}
@@ -0,0 +1,135 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.FileLineIndexRepository;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import com.jasmine.filemanager.store.ContentStore;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Least recently used {@link LineView}s of contents, bounded by their weight in bytes.
+ * <p>
+ * A view keeps the bytes of its content when offsets and bytes together fit into the cache; larger contents
+ * only keep their offsets and read lines from the content store. Files sharing a content share its view.
+ * Views are loaded outside the lock, so two readers missing the same content at once both load it.
+ * A load that overlaps an invalidation is not cached.
+ */
+@Component
+public class LineViewCache {
+
+    private final FileLineIndexRepository fileLineIndexRepository;
+    private final ContentStore contentStore;
+    private final long maxWeight;
+
+    private final LinkedHashMap<Long, LineView> views = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long invalidations;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LineViewCache(FileLineIndexRepository fileLineIndexRepository, ContentStore contentStore, FileManagerProperties properties) {
+        this.fileLineIndexRepository = fileLineIndexRepository;
+        this.contentStore = contentStore;
+        this.maxWeight = properties.getLineCache().getMaxWeight().toBytes();
+    }
+
+    /**
+     * @return the view of the content, with offsets built from its bytes if it has no persisted line index
+     */
+    public LineView get(Content content) {
+        return get(content, true);
+    }
+
+    /**
+     * @return the view of the content, empty if it has no persisted line index
+     */
+    public Optional<LineView> find(Content content) {
+        return Optional.ofNullable(get(content, false));
+    }
+
+    public synchronized void invalidate(Long contentId) {
+
+        invalidations++;
+        LineView view = views.remove(contentId);
+        if (view != null) {
+            weight -= view.weight();
+        }
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, views.size(), weight, maxWeight);
+    }
+
+
+    private LineView get(Content content, boolean buildMissingIndex) {
+
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            LineView view = views.get(content.getId());
+            if (view != null) {
+                hits++;
+                return view;
+            }
+            misses++;
+            invalidationsBeforeLoad = invalidations;
+        }
+
+        LineView view = load(content, buildMissingIndex);
+        if (view != null && view.weight() <= maxWeight) {
+            put(view, invalidationsBeforeLoad);
+        }
+        return view;
+    }
+
+    private LineView load(Content content, boolean buildMissingIndex) {
+
+        LineIndex index = fileLineIndexRepository.findById(content.getId())
+                .map(fileLineIndex -> LineIndex.fromByteArray(fileLineIndex.getOffsets()))
+                .orElse(null);
+        if (index == null && !buildMissingIndex) {
+            return null;
+        }
+        ByteBuffer bytes = null;
+        if (index == null || index.sizeInBytes() + content.getLength() <= maxWeight) {
+            bytes = contentStore.content(content);
+        }
+        if (index == null) {
+            index = LineIndex.of(bytes);
+            OperationMetrics.linesScanned(index.lineCount());
+            if (index.sizeInBytes() + content.getLength() > maxWeight) {
+                bytes = null;
+            }
+        }
+        return new LineView(content, index, bytes);
+    }
+
+    private synchronized void put(LineView view, long invalidationsBeforeLoad) {
+
+        if (invalidations != invalidationsBeforeLoad) {
+            return;
+        }
+        LineView replaced = views.put(view.content().getId(), view);
+        weight += view.weight() - (replaced == null ? 0 : replaced.weight());
+
+        Iterator<Map.Entry<Long, LineView>> leastRecentlyUsed = views.entrySet().iterator();
+        while (weight > maxWeight && leastRecentlyUsed.hasNext()) {
+            LineView evicted = leastRecentlyUsed.next().getValue();
+            leastRecentlyUsed.remove();
+            weight -= evicted.weight();
+            evictions++;
+        }
+    }
+
+
+    public record CacheStats(long hits, long misses, long evictions, int entries, long weight, long maxWeight) {
+    }
+}
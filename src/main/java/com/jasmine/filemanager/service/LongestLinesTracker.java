@@ -0,0 +1,202 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentRepository;
+import com.jasmine.filemanager.index.LineRef;
+import com.jasmine.filemanager.index.TopLines;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maintains the longest lines of the whole corpus, so they can be answered without reading every file.
+ * <p>
+ * The heap holds the longest lines of every distinct content once. Uploads of new content offer its longest
+ * lines; when the lines are read, each is repeated once per file referencing its content. Removing a content
+ * may leave the heap without lines that were displaced earlier, so it triggers a rebuild from the content
+ * summaries; the heap is also rebuilt in the background at startup, or after a {@link #restore(TopLines, long)
+ * restored snapshot} only offered the lines of contents referenced by files stored since.
+ * Queries wait for a running rebuild.
+ */
+@Component
+public class LongestLinesTracker {
+
+    public static final int CAPACITY = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(LongestLinesTracker.class);
+
+    private final ContentRepository contentRepository;
+    private final FileSummaryService fileSummaryService;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "longest-lines-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int corpusPageSize;
+
+    private TopLines topLines = new TopLines(CAPACITY);
+    private CompletableFuture<Void> rebuild;
+    private CompletableFuture<Void> startupRebuild;
+    private boolean rebuildQueued;
+    private Set<Long> removedDuringRebuild;
+    private Long restoredUpToFileId;
+
+    public LongestLinesTracker(ContentRepository contentRepository, FileSummaryService fileSummaryService, FileManagerProperties properties) {
+        this.contentRepository = contentRepository;
+        this.fileSummaryService = fileSummaryService;
+        this.corpusPageSize = properties.getCorpusPageSize();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuildOnStartup() {
+        startupRebuild = scheduleRebuild();
+    }
+
+    /**
+     * Starts from lines read by {@link TopLines#readFrom} which cover every file up to {@code upToFileId}.
+     */
+    public synchronized void restore(TopLines restored, long upToFileId) {
+
+        topLines = restored;
+        restoredUpToFileId = upToFileId;
+    }
+
+    /**
+     * @return whether the startup rebuild is done
+     */
+    public synchronized boolean isLoaded() {
+        return startupRebuild != null && startupRebuild.isDone();
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        topLines.writeTo(out);
+    }
+
+    public synchronized void add(TopLines contentTopLines) {
+        topLines.offerAll(contentTopLines);
+    }
+
+    public void remove(Long contentId) {
+
+        boolean removed;
+        synchronized (this) {
+            if (removedDuringRebuild != null) {
+                removedDuringRebuild.add(contentId);
+            }
+            removed = topLines.removeIf(lineRef -> lineRef.contentId() == contentId);
+        }
+        if (removed) {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * @return the longest lines of all files, longest first
+     */
+    public List<String> getLongestLines() {
+
+        List<String> longestLines = new ArrayList<>(CAPACITY);
+        forEachLongestLine(longestLines::add);
+        return longestLines;
+    }
+
+    /**
+     * Hands the longest lines to the consumer, longest first, each as soon as it is read.
+     */
+    public void forEachLongestLine(Consumer<? super String> consumer) {
+
+        awaitRebuild();
+        List<LineRef> lineRefs;
+        synchronized (this) {
+            lineRefs = topLines.sorted();
+        }
+
+        Set<Long> contentIds = lineRefs.stream().map(LineRef::contentId).collect(Collectors.toSet());
+        Map<Long, Content> contents = contentRepository.findAllById(contentIds).stream()
+                .collect(Collectors.toMap(Content::getId, Function.identity()));
+        OperationMetrics.filesLoaded(contents.size());
+        fileSummaryService.readLines(contents, lineRefs, CAPACITY, consumer);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+
+    private synchronized CompletableFuture<Void> scheduleRebuild() {
+
+        if (rebuild == null || rebuild.isDone()) {
+            rebuild = CompletableFuture.runAsync(this::rebuild, rebuildExecutor);
+        } else if (!rebuildQueued) {
+            // the running rebuild may have read the lines before they were removed
+            rebuildQueued = true;
+            rebuild = rebuild.exceptionally(e -> null).thenRunAsync(this::rebuild, rebuildExecutor);
+        }
+        return rebuild;
+    }
+
+    private void awaitRebuild() {
+
+        CompletableFuture<Void> pending;
+        synchronized (this) {
+            pending = rebuild == null ? scheduleRebuild() : rebuild;
+        }
+        pending.join();
+    }
+
+    private void rebuild() {
+
+        Long upToFileId;
+        synchronized (this) {
+            rebuildQueued = false;
+            removedDuringRebuild = new HashSet<>();
+            upToFileId = restoredUpToFileId;
+        }
+        TopLines rebuilt = new TopLines(CAPACITY);
+        try (Stream<Content> contents = upToFileId == null ? contentRepository.streamAll(corpusPageSize)
+                : contentRepository.streamReferencedByFilesAfter(upToFileId, corpusPageSize)) {
+            contents.forEach(content -> rebuilt.offerAll(fileSummaryService.getLongestLines(content)));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                removedDuringRebuild = null;
+            }
+            throw e;
+        }
+
+        boolean incomplete;
+        synchronized (this) {
+            // only the startup rebuild can build on a snapshot, later ones start over
+            restoredUpToFileId = null;
+            // contents removed while they were read go again, the lines they displaced need another rebuild
+            Set<Long> removed = removedDuringRebuild;
+            removedDuringRebuild = null;
+            incomplete = rebuilt.removeIf(lineRef -> removed.contains(lineRef.contentId()));
+            // restored lines and lines offered by uploads while the rebuild was running are kept
+            Set<LineRef> seen = new HashSet<>(rebuilt.sorted());
+            topLines.sorted().stream().filter(seen::add).forEach(rebuilt::offer);
+            topLines = rebuilt;
+        }
+        log.debug("rebuilt longest lines, keeping {} lines", rebuilt.size());
+        if (incomplete) {
+            scheduleRebuild();
+        }
+    }
+}
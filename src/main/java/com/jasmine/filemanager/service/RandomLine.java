@@ -0,0 +1,10 @@
+package com.jasmine.filemanager.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One sampled line. The detail fields are only set when they were asked for.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record RandomLine(String line, Long fileId, Integer lineNumber, String fileName, String mostUsedLetter) {
+}
@@ -0,0 +1,20 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.store.ContentStore;
+
+/**
+ * The bytes of a file as they were uploaded.
+ *
+ * @param fileRegion where the bytes lie in a file on local disk, {@code null} if the content store keeps them elsewhere
+ */
+public record RawContent(String fileName, Content content, ContentStore.FileRegion fileRegion) {
+
+    public long length() {
+        return content.getLength();
+    }
+
+    public String hash() {
+        return content.getHash();
+    }
+}
@@ -0,0 +1,13 @@
+package com.jasmine.filemanager.service;
+
+import java.util.List;
+
+/**
+ * A page of the lines containing all terms of a query. Hits are ordered by content, then by file, then by line,
+ * so every file referencing the same content repeats its hits; {@code totalHits} counts them across all pages.
+ */
+public record SearchResult(String query, int page, int size, long totalHits, List<Hit> hits) {
+
+    public record Hit(Long fileId, String fileName, int lineNumber, String line) {
+    }
+}
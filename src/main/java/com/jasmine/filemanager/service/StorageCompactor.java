@@ -0,0 +1,239 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.ContentRepository;
+import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileRepository;
+import com.jasmine.filemanager.data.SegmentUsage;
+import com.jasmine.filemanager.store.ContentStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the stored files within the retention and gives the storage of deleted content back.
+ * <p>
+ * A pass runs every {@code file-manager.compaction.interval}. It deletes the files older than the maximum age,
+ * then the oldest files while there are more than the maximum count or their contents take more than the
+ * maximum size. It drops the contents of uploads abandoned before they were stored, and moves the contents out
+ * of disk segments which are mostly garbage; such a segment is deleted by a later pass, once no read which
+ * looked up a content before it moved is still using it.
+ * <p>
+ * Files are deleted through {@link FileService#deleteFiles(List)} like a deletion request, in transactions of
+ * {@code batch-size} files with a pause after each, and content is moved at no more than {@code rate} bytes per
+ * second, so a pass runs beside the requests on a low-priority thread instead of competing with them.
+ */
+@Component
+public class StorageCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageCompactor.class);
+
+    private final FileService fileService;
+    private final FileRepository fileRepository;
+    private final ContentRepository contentRepository;
+    private final ContentStore contentStore;
+    private final FileManagerProperties.Retention retention;
+    private final FileManagerProperties.Compaction compaction;
+    private final Set<Integer> retiredSegments = new HashSet<>();
+    private final ScheduledExecutorService compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-compactor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public StorageCompactor(FileService fileService, FileRepository fileRepository, ContentRepository contentRepository,
+                            ContentStore contentStore, FileManagerProperties properties) {
+        this.fileService = fileService;
+        this.fileRepository = fileRepository;
+        this.contentRepository = contentRepository;
+        this.contentStore = contentStore;
+        this.retention = properties.getRetention();
+        this.compaction = properties.getCompaction();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        long interval = compaction.getInterval().toMillis();
+        compactionExecutor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs one pass.
+     */
+    public synchronized CompactionResult compact() throws IOException, InterruptedException {
+
+        Progress progress = new Progress();
+        applyRetention(progress);
+        int discarded;
+        while ((discarded = fileService.discardAbandonedContents(compaction.getBatchSize())) > 0) {
+            progress.abandonedContents += discarded;
+            pause();
+        }
+        compactSegments(progress);
+
+        CompactionResult result = new CompactionResult(progress.deletedFiles, progress.deletedBytes, progress.abandonedContents,
+                progress.movedBytes, progress.deletedSegments);
+        if (!result.equals(new CompactionResult(0, 0, 0, 0, 0))) {
+            log.info("compacted storage: {}", result);
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactionExecutor.shutdownNow();
+    }
+
+
+    private void applyRetention(Progress progress) throws InterruptedException {
+
+        if (retention.getMaxAge() != null) {
+            Instant cutoff = Instant.now().minus(retention.getMaxAge());
+            List<File> files;
+            while (!(files = fileRepository.findByCreatedAtBeforeOrderByIdAsc(cutoff, PageRequest.of(0, compaction.getBatchSize()))).isEmpty()) {
+                delete(files, progress);
+            }
+        }
+
+        if (retention.getMaxFileCount() != null) {
+            long excess = fileRepository.count() - retention.getMaxFileCount();
+            while (excess > 0) {
+                List<File> files = oldestFiles((int) Math.min(compaction.getBatchSize(), excess));
+                if (files.isEmpty()) {
+                    break;
+                }
+                delete(files, progress);
+                excess -= files.size();
+            }
+        }
+
+        if (retention.getMaxTotalSize() != null) {
+            long excess = contentRepository.sumStoredLength() - retention.getMaxTotalSize().toBytes();
+            while (excess > 0) {
+                List<File> oldest = oldestFiles(compaction.getBatchSize());
+                if (oldest.isEmpty()) {
+                    break;
+                }
+                // as many as free the excess unless their contents are shared with newer files
+                List<File> files = new ArrayList<>();
+                long length = 0;
+                for (File file : oldest) {
+                    files.add(file);
+                    length += file.getLength();
+                    if (length >= excess) {
+                        break;
+                    }
+                }
+                excess -= delete(files, progress);
+            }
+        }
+    }
+
+    private void compactSegments(Progress progress) throws IOException, InterruptedException {
+
+        Set<Integer> segmentsInFlight = fileService.segmentsInFlight();
+        List<SegmentUsage> usage = contentRepository.findSegmentUsage();
+        Set<Integer> usedSegments = usage.stream().map(SegmentUsage::getSegment).collect(Collectors.toSet());
+        Iterator<Integer> retired = retiredSegments.iterator();
+        while (retired.hasNext()) {
+            int segment = retired.next();
+            // an upload still running when the segment was compacted may have stored its content there since
+            if (usedSegments.contains(segment) || segmentsInFlight.contains(segment)) {
+                retired.remove();
+            } else if (contentStore.deleteSegment(segment)) {
+                retired.remove();
+                progress.deletedSegments++;
+            }
+        }
+
+        for (int segment : contentStore.segmentsToCompact(usage)) {
+            if (segmentsInFlight.contains(segment)) {
+                continue;
+            }
+            List<Content> contents;
+            Long after = Long.MIN_VALUE;
+            while (!(contents = contentRepository.findInSegmentAfter(segment, after, PageRequest.of(0, compaction.getBatchSize()))).isEmpty()) {
+                for (Content content : contents) {
+                    ContentLocation location = contentStore.relocate(content);
+                    fileService.moveContent(content.getId(), location);
+                    progress.movedBytes += content.getLength();
+                    throttle(content.getLength());
+                }
+                after = contents.get(contents.size() - 1).getId();
+            }
+            retiredSegments.add(segment);
+        }
+    }
+
+    private List<File> oldestFiles(int count) {
+        return fileRepository.findByIdGreaterThanOrderByIdAsc(Long.MIN_VALUE, PageRequest.of(0, count));
+    }
+
+    private long delete(List<File> files, Progress progress) throws InterruptedException {
+
+        long deletedBytes = fileService.deleteFiles(files);
+        progress.deletedFiles += files.size();
+        progress.deletedBytes += deletedBytes;
+        pause();
+        return deletedBytes;
+    }
+
+    private void pause() throws InterruptedException {
+        Thread.sleep(compaction.getBatchPause().toMillis());
+    }
+
+    private void throttle(long movedBytes) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(movedBytes * 1_000_000_000L / Math.max(1, compaction.getRate().toBytes()));
+    }
+
+    private void compactQuietly() {
+
+        try {
+            compact();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.warn("could not compact storage", e);
+        }
+    }
+
+
+    /**
+     * @param deletedFiles      files deleted by the retention
+     * @param deletedBytes      bytes of the contents deleted with them
+     * @param abandonedContents contents of uploads which were never stored
+     * @param movedBytes        content moved out of compacted segments
+     * @param deletedSegments   segments deleted after an earlier pass compacted them
+     */
+    public record CompactionResult(int deletedFiles, long deletedBytes, int abandonedContents, long movedBytes, int deletedSegments) {
+    }
+
+    private static final class Progress {
+
+        int deletedFiles;
+        long deletedBytes;
+        int abandonedContents;
+        long movedBytes;
+        int deletedSegments;
+    }
+}
@@ -0,0 +1,10 @@
+package com.jasmine.filemanager.store;
+
+/**
+ * Receives every piece of content while it is being written to a store.
+ */
+@FunctionalInterface
+public interface ChunkListener {
+
+    void onChunk(byte[] chunk, int offset, int length);
+}
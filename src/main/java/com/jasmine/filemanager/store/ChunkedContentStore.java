@@ -0,0 +1,185 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.FileChunk;
+import com.jasmine.filemanager.data.FileChunkRepository;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores file content in the database as fixed-size chunks, so neither writes nor range reads need the whole
+ * content on the heap.
+ * <p>
+ * With {@code file-manager.store.compress} every chunk is deflated on its own. Chunk {@code n} still starts at
+ * {@code n * chunkSize} of the uncompressed content, so the chunk sequence is the block index: a range read
+ * only inflates the chunks it touches. Whether a content is compressed is kept in its location, so contents
+ * written before the setting changed stay readable.
+ */
+@Component
+@ConditionalOnProperty(name = "file-manager.store.type", havingValue = "database", matchIfMissing = true)
+public class ChunkedContentStore implements ContentStore {
+
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final FileChunkRepository fileChunkRepository;
+    private final UploadChunkReader uploadChunkReader;
+    private final boolean compress;
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+    private final AtomicLong bytesDecoded = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    public ChunkedContentStore(FileChunkRepository fileChunkRepository, UploadChunkReader uploadChunkReader, FileManagerProperties properties) {
+        this.fileChunkRepository = fileChunkRepository;
+        this.uploadChunkReader = uploadChunkReader;
+        this.compress = properties.getStore().isCompress();
+    }
+
+    /**
+     * Must run inside a transaction. Every full chunk is flushed and detached right after it is written, so a
+     * large upload never collects its chunks on the heap. The last, short chunk only is persisted: the chunks
+     * of small uploads go to the database with the next flush, batched with the rest of the transaction.
+     */
+    @Override
+    public StoredContent write(Long contentId, InputStream inputStream, ChunkListener listener) throws IOException, InterruptedException {
+
+        Deflater deflater = compress ? new Deflater() : null;
+        try {
+            long length = uploadChunkReader.forEachChunk(inputStream, (buffer, sequence) -> {
+                listener.onChunk(buffer, 0, buffer.length);
+
+                byte[] data = compress ? deflate(deflater, buffer) : buffer;
+                bytesWritten.addAndGet(buffer.length);
+                bytesStored.addAndGet(data.length);
+
+                FileChunk chunk = new FileChunk(contentId, sequence, data);
+                entityManager.persist(chunk);
+                if (buffer.length == uploadChunkReader.getChunkSize()) {
+                    entityManager.flush();
+                    entityManager.detach(chunk);
+                }
+            });
+            return new StoredContent(new ContentLocation(0, 0, uploadChunkReader.getChunkSize(), compress), length);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Loads only the chunks the range touches.
+     */
+    @Override
+    public byte[] read(Content content, long offset, int length) {
+
+        byte[] result = new byte[length];
+        if (length == 0) {
+            return result;
+        }
+        OperationMetrics.bytesRead(length);
+        int storedChunkSize = content.getLocation().getChunkSize();
+        int firstSequence = (int) (offset / storedChunkSize);
+        int lastSequence = (int) ((offset + length - 1) / storedChunkSize);
+
+        List<FileChunk> chunks = fileChunkRepository.findByContentIdAndSequenceBetweenOrderBySequence(content.getId(), firstSequence, lastSequence);
+        int written = 0;
+        for (FileChunk chunk : chunks) {
+            long chunkStart = (long) chunk.getSequence() * storedChunkSize;
+            byte[] data = content.getLocation().isCompressed()
+                    ? inflate(chunk, (int) Math.min(storedChunkSize, content.getLength() - chunkStart))
+                    : chunk.getData();
+            int from = (int) Math.max(0, offset - chunkStart);
+            int count = Math.min(data.length - from, length - written);
+            System.arraycopy(data, from, result, written, count);
+            written += count;
+        }
+        if (written != length) {
+            throw new IllegalStateException("content with id " + content.getId() + " is missing bytes in range " + offset + "+" + length);
+        }
+        return result;
+    }
+
+    @Override
+    public ByteBuffer content(Content content) {
+
+        if (content.getLength() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("content with id " + content.getId() + " is too large to be read at once");
+        }
+        return ByteBuffer.wrap(read(content, 0, (int) content.getLength()));
+    }
+
+    @Override
+    public void delete(Content content) {
+        fileChunkRepository.deleteByContentId(content.getId());
+    }
+
+    @Override
+    public StoreStats stats() {
+        return StoreStats.of(compress, bytesWritten.get(), bytesStored.get(), bytesDecoded.get(), decodeNanos.get());
+    }
+
+
+    private static byte[] deflate(Deflater deflater, byte[] block) {
+
+        deflater.reset();
+        deflater.setInput(block);
+        deflater.finish();
+        byte[] compressed = new byte[block.length / 2 + 64];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        return Arrays.copyOf(compressed, size);
+    }
+
+    private byte[] inflate(FileChunk chunk, int blockLength) {
+
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(chunk.getData());
+            byte[] block = new byte[blockLength];
+            int size = 0;
+            while (size < blockLength && !inflater.finished()) {
+                int inflated = inflater.inflate(block, size, blockLength - size);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != blockLength) {
+                throw new IllegalStateException("chunk " + chunk.getSequence() + " of content with id " + chunk.getContentId()
+                        + " inflates to " + size + " bytes instead of " + blockLength);
+            }
+            return block;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("chunk " + chunk.getSequence() + " of content with id " + chunk.getContentId() + " is corrupt", e);
+        } finally {
+            inflater.end();
+            decodeNanos.addAndGet(System.nanoTime() - start);
+            bytesDecoded.addAndGet(blockLength);
+        }
+    }
+}
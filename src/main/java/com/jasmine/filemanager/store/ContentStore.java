@@ -0,0 +1,119 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.SegmentUsage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps the bytes of uploaded files. Only the returned {@link ContentLocation} is kept with the {@link Content}.
+ * The backend is chosen by {@code file-manager.store.type}.
+ */
+public interface ContentStore {
+
+    int TRANSFER_PIECE_SIZE = 1024 * 1024;
+
+    /**
+     * Stores the stream, passing every piece of it to the listener on the way.
+     */
+    StoredContent write(Long contentId, InputStream inputStream, ChunkListener listener) throws IOException, InterruptedException;
+
+    /**
+     * Reads {@code length} bytes starting at {@code offset} of the content.
+     */
+    byte[] read(Content content, long offset, int length);
+
+    /**
+     * Returns the whole content. The buffer is not shared, callers may move its position.
+     */
+    ByteBuffer content(Content content);
+
+    /**
+     * Writes {@code length} bytes starting at {@code offset} of the content to the target, reading at most
+     * {@value #TRANSFER_PIECE_SIZE} bytes at a time.
+     */
+    default void transferTo(Content content, long offset, long length, WritableByteChannel target) throws IOException {
+
+        for (long transferred = 0; transferred < length; ) {
+            int pieceLength = (int) Math.min(TRANSFER_PIECE_SIZE, length - transferred);
+            ByteBuffer piece = ByteBuffer.wrap(read(content, offset + transferred, pieceLength));
+            while (piece.hasRemaining()) {
+                target.write(piece);
+            }
+            transferred += pieceLength;
+        }
+    }
+
+    /**
+     * @return where the content lies as it is in a file on local disk, so it can be sent from there without
+     * passing through the heap; empty if the store keeps it elsewhere
+     */
+    default Optional<FileRegion> fileRegion(Content content) {
+        return Optional.empty();
+    }
+
+    /**
+     * Drops stored bytes which are no longer referenced.
+     */
+    void delete(Content content);
+
+    /**
+     * Picks the segments worth compacting, given the bytes their stored contents still take. Segments holding
+     * uploads which are not stored yet are left alone. A store which gives back the space of deleted content
+     * right away has none.
+     */
+    default List<Integer> segmentsToCompact(List<SegmentUsage> usage) throws IOException {
+        return List.of();
+    }
+
+    /**
+     * Copies the content out of its segment into the one written now.
+     */
+    default ContentLocation relocate(Content content) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no segments to compact");
+    }
+
+    /**
+     * Deletes a segment no content is stored in anymore, unless a read which looked its content up before it
+     * moved is still using it.
+     *
+     * @return whether the segment is deleted, otherwise it should be tried again later
+     */
+    default boolean deleteSegment(int segment) throws IOException {
+        return true;
+    }
+
+    /**
+     * Bytes written and read since startup.
+     */
+    StoreStats stats();
+
+
+    record StoredContent(ContentLocation location, long length) {
+    }
+
+    record FileRegion(Path path, long position, long length) {
+    }
+
+    /**
+     * @param compressionRatio         bytes written per byte stored
+     * @param decodeMegabytesPerSecond inflated output per second spent inflating, 0 before anything was inflated
+     */
+    record StoreStats(boolean compressed, long bytesWritten, long bytesStored, double compressionRatio, long bytesDecoded,
+                      long decodeNanos, double decodeMegabytesPerSecond) {
+
+        public static StoreStats of(boolean compressed, long bytesWritten, long bytesStored, long bytesDecoded, long decodeNanos) {
+
+            double compressionRatio = bytesStored == 0 ? 1 : (double) bytesWritten / bytesStored;
+            double decodeMegabytesPerSecond = decodeNanos == 0 ? 0 : bytesDecoded * 1e9 / decodeNanos / (1024 * 1024);
+            return new StoreStats(compressed, bytesWritten, bytesStored, compressionRatio, bytesDecoded, decodeNanos, decodeMegabytesPerSecond);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.SegmentUsage;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores file content in append-only segment files on local disk and serves it through memory mapping,
+ * so content never competes with the heap.
+ * <p>
+ * Uploads are first streamed into a temporary file next to the segments, then appended to the current segment
+ * in one {@link FileChannel#transferFrom} call. A new segment is started when the current one would grow
+ * beyond {@code file-manager.store.segment-size}. Deleting a content leaves its bytes behind; a segment whose
+ * share of such garbage reaches {@code file-manager.store.compaction-garbage-ratio} is compacted by moving the
+ * rest of its contents to the current segment, after which it is deleted.
+ * <p>
+ * Every read holds the segment it reads from, and a segment is only deleted while nothing holds it, so a long
+ * transfer keeps its segment until it is done. A segment handed out as a {@link FileRegion} for
+ * {@code sendfile} is kept for another {@value #FILE_REGION_GRACE_SECONDS} seconds, since the container only
+ * opens the file after the request handler returns; once it has the file open, deleting it does no harm.
+ */
+@Component
+@ConditionalOnProperty(name = "file-manager.store.type", havingValue = "disk")
+public class MappedSegmentContentStore implements ContentStore {
+
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSegmentContentStore.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private static final long FILE_REGION_GRACE_SECONDS = 60;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final double compactionGarbageRatio;
+    private final UploadChunkReader uploadChunkReader;
+    private final Map<Integer, SegmentChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private int currentSegment;
+    private long currentSegmentLength;
+
+    public MappedSegmentContentStore(FileManagerProperties properties, UploadChunkReader uploadChunkReader) throws IOException {
+
+        this.directory = properties.getStore().getDirectory();
+        this.segmentSize = properties.getStore().getSegmentSize().toBytes();
+        this.compactionGarbageRatio = properties.getStore().getCompactionGarbageRatio();
+        this.uploadChunkReader = uploadChunkReader;
+        if (properties.getStore().isCompress()) {
+            log.warn("file-manager.store.compress only applies to the database store, disk segments stay uncompressed");
+        }
+
+        Files.createDirectories(directory);
+        currentSegment = segments().stream().mapToInt(Integer::intValue).max().orElse(0);
+        currentSegmentLength = Files.exists(segmentPath(currentSegment)) ? Files.size(segmentPath(currentSegment)) : 0;
+    }
+
+    @Override
+    public StoredContent write(Long contentId, InputStream inputStream, ChunkListener listener) throws IOException, InterruptedException {
+
+        Path upload = Files.createTempFile(directory, "upload-", ".tmp");
+        try {
+            long length;
+            try (FileChannel uploadChannel = FileChannel.open(upload, StandardOpenOption.WRITE)) {
+                length = uploadChunkReader.forEachChunk(inputStream, (buffer, sequence) -> {
+                    listener.onChunk(buffer, 0, buffer.length);
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                    while (byteBuffer.hasRemaining()) {
+                        uploadChannel.write(byteBuffer);
+                    }
+                });
+            }
+            ContentLocation location = append(upload, length);
+            bytesWritten.addAndGet(length);
+            return new StoredContent(location, length);
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    @Override
+    public byte[] read(Content content, long offset, int length) {
+
+        ContentLocation location = content.getLocation();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        OperationMetrics.bytesRead(length);
+        try {
+            SegmentChannel segment = acquire(location.getSegment());
+            try {
+                long position = location.getOffset() + offset;
+                while (buffer.hasRemaining()) {
+                    if (segment.channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IllegalStateException("content with id " + content.getId() + " is missing bytes in range " + offset + "+" + length);
+                    }
+                }
+            } finally {
+                segment.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public ByteBuffer content(Content content) {
+
+        ContentLocation location = content.getLocation();
+        OperationMetrics.bytesRead(content.getLength());
+        try {
+            // the mapping stays readable after the segment is deleted, it is only held while it is mapped
+            SegmentChannel segment = acquire(location.getSegment());
+            try {
+                return segment.channel.map(FileChannel.MapMode.READ_ONLY, location.getOffset(), content.getLength());
+            } finally {
+                segment.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void transferTo(Content content, long offset, long length, WritableByteChannel target) throws IOException {
+
+        ContentLocation location = content.getLocation();
+        OperationMetrics.bytesRead(length);
+        SegmentChannel segment = acquire(location.getSegment());
+        try {
+            long position = location.getOffset() + offset;
+            for (long transferred = 0; transferred < length; ) {
+                long count = segment.channel.transferTo(position + transferred, length - transferred, target);
+                if (count <= 0 && position + transferred >= segment.channel.size()) {
+                    throw new IllegalStateException("content with id " + content.getId() + " is missing bytes in range " + offset + "+" + length);
+                }
+                transferred += count;
+            }
+        } finally {
+            segment.release();
+        }
+    }
+
+    @Override
+    public Optional<FileRegion> fileRegion(Content content) {
+
+        ContentLocation location = content.getLocation();
+        try {
+            SegmentChannel segment = acquire(location.getSegment());
+            segment.fileRegionHandedOut = System.nanoTime();
+            segment.fileRegionEverHandedOut = true;
+            segment.release();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Optional.of(new FileRegion(segmentPath(location.getSegment()), location.getOffset(), content.getLength()));
+    }
+
+    /**
+     * Segments are append-only, the bytes stay where they are until their segment is compacted.
+     */
+    @Override
+    public void delete(Content content) {
+    }
+
+    @Override
+    public List<Integer> segmentsToCompact(List<SegmentUsage> usage) throws IOException {
+
+        Map<Integer, SegmentUsage> usageBySegment = usage.stream().collect(Collectors.toMap(SegmentUsage::getSegment, Function.identity()));
+        int current;
+        synchronized (this) {
+            current = currentSegment;
+        }
+        List<Integer> compactable = new ArrayList<>();
+        for (int segment : segments()) {
+            SegmentUsage segmentUsage = usageBySegment.get(segment);
+            if (segment >= current || segmentUsage != null && segmentUsage.getStreaming() > 0) {
+                continue;
+            }
+            long size = Files.size(segmentPath(segment));
+            long garbage = size - (segmentUsage == null ? 0 : segmentUsage.getLength());
+            if (garbage >= size * compactionGarbageRatio) {
+                compactable.add(segment);
+            }
+        }
+        return compactable;
+    }
+
+    @Override
+    public ContentLocation relocate(Content content) throws IOException {
+
+        ContentLocation location = content.getLocation();
+        SegmentChannel segment = acquire(location.getSegment());
+        try {
+            ContentLocation relocated = append(segment.channel, location.getOffset(), content.getLength());
+            bytesWritten.addAndGet(content.getLength());
+            return relocated;
+        } finally {
+            segment.release();
+        }
+    }
+
+    /**
+     * Mapped buffers of the segment stay readable until they are collected.
+     */
+    @Override
+    public boolean deleteSegment(int segment) throws IOException {
+
+        SegmentChannel segmentChannel;
+        try {
+            segmentChannel = segmentChannel(segment, false);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+        if (!segmentChannel.delete()) {
+            log.debug("segment {} is still being read, it is deleted later", segment);
+            return false;
+        }
+        channels.remove(segment, segmentChannel);
+        segmentChannel.channel.close();
+        Files.deleteIfExists(segmentPath(segment));
+        log.info("deleted compacted segment {}", segment);
+        return true;
+    }
+
+    /**
+     * Segments are never compressed, mapped content is read as it is stored.
+     */
+    @Override
+    public StoreStats stats() {
+
+        long written = bytesWritten.get();
+        return StoreStats.of(false, written, written, 0, 0);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+
+        for (SegmentChannel segmentChannel : channels.values()) {
+            segmentChannel.channel.close();
+        }
+    }
+
+
+    private ContentLocation append(Path upload, long length) throws IOException {
+
+        try (FileChannel uploadChannel = FileChannel.open(upload, StandardOpenOption.READ)) {
+            return append(uploadChannel, 0, length);
+        }
+    }
+
+    private synchronized ContentLocation append(FileChannel source, long position, long length) throws IOException {
+
+        if (currentSegmentLength > 0 && currentSegmentLength + length > segmentSize) {
+            currentSegment++;
+            currentSegmentLength = 0;
+        }
+
+        FileChannel segment = segmentChannel(currentSegment, true).channel;
+        long offset = currentSegmentLength;
+        // reads of the source are positional, only appends move its position
+        source.position(position);
+        long transferred = 0;
+        while (transferred < length) {
+            transferred += segment.transferFrom(source, offset + transferred, length - transferred);
+        }
+        segment.force(false);
+        currentSegmentLength += length;
+        return new ContentLocation(currentSegment, offset, 0, false);
+    }
+
+    private SegmentChannel acquire(int segment) throws IOException {
+
+        SegmentChannel segmentChannel = segmentChannel(segment, false);
+        if (!segmentChannel.acquire()) {
+            throw new IllegalStateException("segment " + segment + " was deleted after its contents moved");
+        }
+        return segmentChannel;
+    }
+
+    /**
+     * @param create whether a missing segment is created, only the current one is ever appended to
+     */
+    private SegmentChannel segmentChannel(int segment, boolean create) throws IOException {
+
+        try {
+            return channels.computeIfAbsent(segment, key -> {
+                try {
+                    return new SegmentChannel(create
+                            ? FileChannel.open(segmentPath(key), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                            : FileChannel.open(segmentPath(key), StandardOpenOption.READ, StandardOpenOption.WRITE));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private List<Integer> segments() throws IOException {
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+
+    /**
+     * An open segment and the number of reads holding it, which is -1 once the segment is deleted.
+     */
+    private static final class SegmentChannel {
+
+        private final FileChannel channel;
+        private final AtomicInteger readers = new AtomicInteger();
+        private volatile long fileRegionHandedOut;
+        private volatile boolean fileRegionEverHandedOut;
+
+        private SegmentChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private boolean acquire() {
+
+            int current;
+            do {
+                current = readers.get();
+                if (current < 0) {
+                    return false;
+                }
+            } while (!readers.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void release() {
+            readers.decrementAndGet();
+        }
+
+        /**
+         * Marks the segment deleted unless a read holds it or it was handed out for {@code sendfile} lately.
+         */
+        private boolean delete() {
+
+            if (!readers.compareAndSet(0, -1)) {
+                return false;
+            }
+            // a file region handed out before the segment was marked is seen here
+            if (fileRegionEverHandedOut && System.nanoTime() - fileRegionHandedOut < TimeUnit.SECONDS.toNanos(FILE_REGION_GRACE_SECONDS)) {
+                readers.set(0);
+                return false;
+            }
+            return true;
+        }
+    }
+}
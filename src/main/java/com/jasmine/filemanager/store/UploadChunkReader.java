@@ -0,0 +1,68 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads uploads in fixed-size chunks.
+ * <p>
+ * Every chunk buffer of a running upload takes a permit of a global semaphore, which bounds the bytes held by
+ * all uploads together to {@code file-manager.upload.max-in-flight-bytes}.
+ */
+@Component
+public class UploadChunkReader {
+
+
+    private final int chunkSize;
+    private final Semaphore inFlightChunks;
+
+    public UploadChunkReader(FileManagerProperties properties) {
+
+        this.chunkSize = Math.toIntExact(properties.getUpload().getChunkSize().toBytes());
+        long maxInFlightBytes = properties.getUpload().getMaxInFlightBytes().toBytes();
+        this.inFlightChunks = new Semaphore((int) Math.max(1, maxInFlightBytes / chunkSize), true);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Hands every chunk of the stream to the consumer. A chunk only counts against the in-flight budget while the consumer runs.
+     *
+     * @return the number of bytes read
+     */
+    public long forEachChunk(InputStream inputStream, ChunkConsumer consumer) throws IOException, InterruptedException {
+
+        long length = 0;
+        int sequence = 0;
+        while (true) {
+            inFlightChunks.acquire();
+            try {
+                byte[] buffer = inputStream.readNBytes(chunkSize);
+                if (buffer.length == 0) {
+                    return length;
+                }
+                consumer.accept(buffer, sequence++);
+                length += buffer.length;
+
+                if (buffer.length < chunkSize) {
+                    return length;
+                }
+            } finally {
+                inFlightChunks.release();
+            }
+        }
+    }
+
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+
+        void accept(byte[] chunk, int sequence) throws IOException;
+    }
+}
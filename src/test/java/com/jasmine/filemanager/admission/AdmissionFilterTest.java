@@ -0,0 +1,114 @@
+package com.jasmine.filemanager.admission;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartHttpServletRequest;
+import org.springframework.mock.web.MockPart;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class AdmissionFilterTest {
+
+    private final FileManagerProperties properties = new FileManagerProperties();
+
+
+    @Test
+    void doFilter_rejectsUploadWithRetryAfter_whileTheUploadPoolIsFull_butStillAdmitsReads() throws Exception {
+
+        properties.getAdmission().getUpload().setMaxConcurrent(1);
+        properties.getAdmission().getUpload().setMaxQueued(0);
+        properties.getAdmission().setRetryAfter(Duration.ofMillis(1500));
+        AdmissionFilter admissionFilter = new AdmissionFilter(properties);
+        AdmissionPool uploadPool = admissionFilter.pools().get(0);
+        AdmissionPool.Permit running = uploadPool.acquire(10);
+
+        MockHttpServletResponse upload = new MockHttpServletResponse();
+        MockFilterChain uploadChain = new MockFilterChain();
+        admissionFilter.doFilter(request("POST", "/file/upload", 10), upload, uploadChain);
+        MockHttpServletResponse read = new MockHttpServletResponse();
+        MockFilterChain readChain = new MockFilterChain();
+        admissionFilter.doFilter(request("GET", "/file/search", -1), read, readChain);
+
+        Assertions.assertEquals(503, upload.getStatus());
+        Assertions.assertEquals("2", upload.getHeader(HttpHeaders.RETRY_AFTER));
+        Assertions.assertNull(uploadChain.getRequest());
+        Assertions.assertEquals(200, read.getStatus());
+        Assertions.assertNotNull(readChain.getRequest());
+        Assertions.assertEquals(1, uploadPool.stats().rejectedQueueFull());
+        Assertions.assertEquals(0, admissionFilter.pools().get(1).stats().inFlight());
+
+        running.release();
+        MockFilterChain retryChain = new MockFilterChain();
+        admissionFilter.doFilter(request("POST", "/file/upload", 10), new MockHttpServletResponse(), retryChain);
+        Assertions.assertNotNull(retryChain.getRequest());
+        Assertions.assertEquals(0, uploadPool.stats().inFlight());
+    }
+
+    @Test
+    void doFilter_admitsConcurrentChunkedUploads_andChargesTheirReceivedParts() throws Exception {
+
+        AdmissionFilter admissionFilter = new AdmissionFilter(properties);
+        AdmissionPool uploadPool = admissionFilter.pools().get(0);
+        CyclicBarrier bothHandled = new CyclicBarrier(2);
+        List<Long> inFlightBytes = new CopyOnWriteArrayList<>();
+        FilterChain handler = (request, response) -> {
+            try {
+                bothHandled.await(5, TimeUnit.SECONDS);
+                inFlightBytes.add(uploadPool.stats().inFlightBytes());
+                bothHandled.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new ServletException(e);
+            }
+        };
+
+        List<CompletableFuture<MockHttpServletResponse>> uploads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            uploads.add(CompletableFuture.supplyAsync(() -> {
+                MockMultipartHttpServletRequest request = new MockMultipartHttpServletRequest();
+                request.setRequestURI("/file/upload");
+                request.setContentType(MediaType.MULTIPART_FORM_DATA_VALUE + "; boundary=chunked");
+                request.addPart(new MockPart("file", "chunked.txt", new byte[3 * 1024 * 1024]));
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                try {
+                    admissionFilter.doFilter(request, response, handler);
+                } catch (IOException | ServletException e) {
+                    throw new IllegalStateException(e);
+                }
+                return response;
+            }));
+        }
+
+        for (CompletableFuture<MockHttpServletResponse> upload : uploads) {
+            Assertions.assertEquals(200, upload.get(10, TimeUnit.SECONDS).getStatus());
+        }
+        Assertions.assertEquals(List.of(6L * 1024 * 1024, 6L * 1024 * 1024), inFlightBytes);
+        Assertions.assertEquals(new AdmissionPool.Stats(0, 0, 0, 2, 0, 0), uploadPool.stats());
+    }
+
+
+    private static MockHttpServletRequest request(String method, String path, int contentLength) {
+
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        if (contentLength >= 0) {
+            request.setContent(new byte[contentLength]);
+        }
+        return request;
+    }
+}
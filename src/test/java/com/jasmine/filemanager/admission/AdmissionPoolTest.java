@@ -0,0 +1,113 @@
+package com.jasmine.filemanager.admission;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionPoolTest {
+
+
+    @Test
+    void acquire_admitsRequestsWithinBudget_andRejectsOnceTheQueueIsFull() throws Exception {
+
+        AdmissionPool pool = new AdmissionPool("upload", 2, 100, 0, Duration.ofSeconds(1));
+
+        AdmissionPool.Permit first = pool.acquire(40);
+        AdmissionPool.Permit second = pool.acquire(60);
+        AdmissionPool.Permit third = pool.acquire(1);
+
+        Assertions.assertNotNull(first);
+        Assertions.assertNotNull(second);
+        Assertions.assertNull(third);
+        Assertions.assertEquals(new AdmissionPool.Stats(2, 100, 0, 2, 1, 0), pool.stats());
+    }
+
+    @Test
+    void acquire_rejectsWaitingRequest_whenItWaitedTooLong() throws Exception {
+
+        AdmissionPool pool = new AdmissionPool("upload", 1, 100, 1, Duration.ofMillis(50));
+        pool.acquire(10);
+
+        Assertions.assertNull(pool.acquire(10));
+        Assertions.assertEquals(1, pool.stats().rejectedTimeout());
+        Assertions.assertEquals(0, pool.stats().queued());
+    }
+
+    @Test
+    void acquire_admitsQueuedRequestsInArrivalOrder_evenIfALaterOneFitsEarlier() throws Exception {
+
+        AdmissionPool pool = new AdmissionPool("upload", 10, 100, 2, Duration.ofSeconds(10));
+        AdmissionPool.Permit running = pool.acquire(60);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<AdmissionPool.Permit> large = CompletableFuture.supplyAsync(() -> acquire(pool, 80, "large", admitted));
+        awaitQueued(pool, 1);
+        CompletableFuture<AdmissionPool.Permit> small = CompletableFuture.supplyAsync(() -> acquire(pool, 10, "small", admitted));
+        awaitQueued(pool, 2);
+        Assertions.assertTrue(admitted.isEmpty());
+
+        running.release();
+        large.get(5, TimeUnit.SECONDS);
+        small.get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(List.of("large", "small"), admitted);
+        Assertions.assertEquals(90, pool.stats().inFlightBytes());
+    }
+
+    @Test
+    void acquire_countsRequestLargerThanTheBudget_asTheWholeBudget() throws Exception {
+
+        AdmissionPool pool = new AdmissionPool("upload", 10, 100, 0, Duration.ofSeconds(1));
+
+        AdmissionPool.Permit large = pool.acquire(1_000);
+        Assertions.assertNotNull(large);
+        Assertions.assertNull(pool.acquire(1));
+        large.release();
+        large.release();
+
+        Assertions.assertNotNull(pool.acquire(1_000));
+        Assertions.assertEquals(100, pool.stats().inFlightBytes());
+    }
+
+    @Test
+    void charge_addsBytesKnownAfterAdmission_untilThePermitIsReleased() throws Exception {
+
+        AdmissionPool pool = new AdmissionPool("upload", 10, 100, 0, Duration.ofSeconds(1));
+
+        AdmissionPool.Permit chunked = pool.acquire(10);
+        chunked.charge(120);
+        Assertions.assertEquals(130, pool.stats().inFlightBytes());
+        Assertions.assertNull(pool.acquire(0));
+
+        chunked.release();
+        chunked.charge(5);
+        Assertions.assertEquals(0, pool.stats().inFlightBytes());
+        Assertions.assertNotNull(pool.acquire(0));
+    }
+
+
+    private static AdmissionPool.Permit acquire(AdmissionPool pool, long bytes, String name, List<String> admitted) {
+
+        try {
+            AdmissionPool.Permit permit = pool.acquire(bytes);
+            admitted.add(name);
+            return permit;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitQueued(AdmissionPool pool, int queued) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.stats().queued() < queued && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(queued, pool.stats().queued());
+    }
+}
@@ -1,13 +1,29 @@
 package com.jasmine.filemanager.controller;
 
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.config.FileValidator;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.service.BatchUploadResult;
+import com.jasmine.filemanager.service.FileLines;
 import com.jasmine.filemanager.service.FileService;
+import com.jasmine.filemanager.service.FileStats;
+import com.jasmine.filemanager.service.IngestPipeline;
+import com.jasmine.filemanager.service.IngestStatus;
+import com.jasmine.filemanager.service.LineViewCache;
+import com.jasmine.filemanager.service.RandomLine;
+import com.jasmine.filemanager.service.RawContent;
+import com.jasmine.filemanager.service.SearchResult;
+import com.jasmine.filemanager.store.ContentStore;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
@@ -15,13 +31,26 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(FileController.class)
+@EnableConfigurationProperties(FileManagerProperties.class)
 public class FileControllerTest {
 
 
@@ -31,6 +60,9 @@ public class FileControllerTest {
     @MockBean
     private FileService fileService;
 
+    @MockBean
+    private IngestPipeline ingestPipeline;
+
     @Test
     void uploadFile_throwsBadRequestException_whenFileIsEmpty() throws Exception{
 
@@ -66,6 +98,57 @@ public class FileControllerTest {
     }
 
 
+    @Test
+    void uploadFiles_returnsIdsAndErrorsOfEveryPart() throws Exception{
+
+        BatchUploadResult batchUploadResult = new BatchUploadResult(Arrays.asList(1L, null),
+                List.of(new BatchUploadResult.FileError(1, "test.png", FileValidator.MESSAGE)));
+        Mockito.when(fileService.uploadFiles(any())).thenReturn(batchUploadResult);
+
+        MockMultipartFile text = new MockMultipartFile("files", "text1.txt", MediaType.TEXT_PLAIN_VALUE,
+                new ClassPathResource("/text1.txt").getInputStream());
+        MockMultipartFile image = new MockMultipartFile("files", "test.png", MediaType.IMAGE_PNG_VALUE,
+                new ClassPathResource("/test.png").getInputStream());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .multipart("/file/upload-batch").file(text).file(image)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fileIds[0]").value(1))
+                .andExpect(jsonPath("$.fileIds[1]").isEmpty())
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+                .andExpect(jsonPath("$.errors[0].fileName").value("test.png"));
+    }
+
+    @Test
+    void ingestFile_acceptsUploadAndReturnsItsIngestId() throws Exception{
+
+        Mockito.when(ingestPipeline.submit(any(MultipartFile.class))).thenReturn(new IngestStatus(3L, "text1.txt", IngestStatus.Stage.RECEIVED, null, null));
+
+        MockMultipartFile file = new MockMultipartFile("file", "text1.txt", MediaType.TEXT_PLAIN_VALUE,
+                new ClassPathResource("/text1.txt").getInputStream());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .multipart("/file/ingest").file(file)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.ingestId").value(3))
+                .andExpect(jsonPath("$.stage").value("RECEIVED"));
+    }
+
+    @Test
+    void getIngestStatus_returnsFileId_whenIngestIsStored() throws Exception{
+
+        Mockito.when(ingestPipeline.getStatus(3L)).thenReturn(Optional.of(new IngestStatus(3L, "text1.txt", IngestStatus.Stage.STORED, 12L, null)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/ingest/3")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stage").value("STORED"))
+                .andExpect(jsonPath("$.fileId").value(12));
+    }
+
     @Test
     void uploadFile_uploadSuccessfully_whenTextFileIsCorrect() throws Exception{
 
@@ -190,7 +273,7 @@ public class FileControllerTest {
 
         List<String> randomLinesBackward = new ArrayList<>();
         randomLinesBackward.add(".secirtlu sisilicaf ucra te surup sitrobol siruaM .mes sucal cen alluN .odommoc mauqila lsin non hbin dnefiele niorP");
-        Mockito.when(fileService.getRandomLinesBackward()).thenReturn(randomLinesBackward);
+        Mockito.when(fileService.getRandomLinesBackward(1)).thenReturn(randomLinesBackward);
 
         MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                         .get("/file/random-line-backward")
@@ -198,11 +281,33 @@ public class FileControllerTest {
                 .andExpect(status().isOk()).andReturn();
         String content = result.getResponse().getContentAsString();
 
-        Mockito.verify(fileService, Mockito.atLeastOnce()).getRandomLinesBackward();
+        Mockito.verify(fileService, Mockito.atLeastOnce()).getRandomLinesBackward(1);
         Assertions.assertNotNull(content);
     }
 
 
+    @Test
+    void streamRandomLinesBackward_writesOneJsonLinePerLine_whenNdjsonIsAccepted() throws Exception{
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(1);
+            consumer.accept("enil tsrif");
+            consumer.accept("\"detouq\"");
+            return null;
+        }).when(fileService).streamRandomLinesBackward(eq(2), any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/random-line-backward").param("linesPerFile", "2")
+                        .accept(MediaType.APPLICATION_NDJSON_VALUE))
+                .andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("\"enil tsrif\"\n\"\\\"detouq\\\"\"\n"));
+
+        Mockito.verify(fileService, Mockito.never()).getRandomLinesBackward(anyInt());
+    }
+
     @Test
     void getTwentyLongestLine_returnsTwentyLongestLines_whenFileExist() throws Exception{
 
@@ -238,4 +343,231 @@ public class FileControllerTest {
         Assertions.assertNotNull(content);
     }
 
+
+    @Test
+    void streamHundredLongestLinesOfAllFiles_writesOneJsonLinePerLine_whenNdjsonIsAccepted() throws Exception{
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(0);
+            consumer.accept("longest line");
+            consumer.accept("shorter");
+            return null;
+        }).when(fileService).streamHundredLongestLineOfAllFiles(any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/hundred-longest-line-from-all-files")
+                        .accept(MediaType.APPLICATION_NDJSON_VALUE))
+                .andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("\"longest line\"\n\"shorter\"\n"));
+    }
+
+    @Test
+    void getLongestLinesOfFile_returnsRequestedNumberOfLines_whenFileExist() throws Exception{
+
+        Mockito.when(fileService.getLongestLinesOfFile(1L, 1000)).thenReturn(List.of("longest line", "shorter"));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/longest-lines")
+                        .param("n", "1000")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        Mockito.verify(fileService).getLongestLinesOfFile(1L, 1000);
+        Assertions.assertEquals("[\"longest line\",\"shorter\"]", result.getResponse().getContentAsString());
+    }
+
+
+    @Test
+    void getLongestLinesOfAllFiles_throwsBadRequestException_whenNIsNotPositive() throws Exception{
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/longest-lines")
+                        .param("n", "0")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(fileService, Mockito.never()).getLongestLinesOfAllFiles(anyInt());
+    }
+
+
+    @Test
+    void getRandomLines_returnsOneJsonObjectPerLine_whenMediaTypeIsNdjson() throws Exception{
+
+        List<RandomLine> randomLines = List.of(new RandomLine("first", null, null, null, null), new RandomLine("second", null, null, null, null));
+        Mockito.when(fileService.getRandomLines(null, 2, false)).thenReturn(randomLines);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/random-lines")
+                        .param("count", "2")
+                        .accept(MediaType.APPLICATION_NDJSON_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        Assertions.assertEquals("{\"line\":\"first\"}\n{\"line\":\"second\"}\n", result.getResponse().getContentAsString());
+        Assertions.assertEquals(MediaType.APPLICATION_NDJSON_VALUE, result.getResponse().getContentType());
+    }
+
+
+    @Test
+    void getRandomLines_returnsJsonArrayWithDetail_whenDetailIsRequired() throws Exception{
+
+        List<RandomLine> randomLines = List.of(new RandomLine("first", 1L, 0, "text1.txt", "i"));
+        Mockito.when(fileService.getRandomLines(1L, 1, true)).thenReturn(randomLines);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/random-lines")
+                        .param("id", "1")
+                        .param("count", "1")
+                        .param("detail", "true")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        Assertions.assertEquals("[{\"line\":\"first\",\"fileId\":1,\"lineNumber\":0,\"fileName\":\"text1.txt\",\"mostUsedLetter\":\"i\"}]",
+                result.getResponse().getContentAsString());
+    }
+
+    @Test
+    void getFileStats_returnsStatsOfFile() throws Exception{
+
+        FileStats fileStats = new FileStats(1L, "text1.txt", 12, 2, 5, 9, "c", 4, 1000, List.of("c"));
+        Mockito.when(fileService.getFileStats(1L)).thenReturn(fileStats);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/stats")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        Assertions.assertTrue(result.getResponse().getContentAsString().contains("\"mostUsedLetter\":\"c\",\"mostUsedLetterCount\":4"));
+    }
+
+    @Test
+    void deleteFile_returnsNoContent() throws Exception{
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/file/1"))
+                .andExpect(status().isNoContent());
+
+        Mockito.verify(fileService).deleteFile(1L);
+    }
+
+    @Test
+    void getLines_returnsLineRange() throws Exception{
+
+        Mockito.when(fileService.getLines(1L, 2, 4)).thenReturn(new FileLines(1L, 2, 4, 10, List.of("two", "three")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/lines").param("from", "2").param("to", "4")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"fileId\":1,\"from\":2,\"to\":4,\"lineCount\":10,\"lines\":[\"two\",\"three\"]}"));
+    }
+
+    @Test
+    void getLines_throwsBadRequestException_whenRangeIsEmpty() throws Exception{
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/lines").param("from", "4").param("to", "4")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getRawContent_copiesRequestedRange_whenContentIsNotOnDisk() throws Exception{
+
+        RawContent rawContent = new RawContent("raw.txt", new Content(1L, "abc", 9, new ContentLocation(), 1), null);
+        Mockito.when(fileService.getRawContent(1L)).thenReturn(rawContent);
+        Mockito.doAnswer(invocation -> invocation.getArgument(3, WritableByteChannel.class).write(ByteBuffer.wrap("bytes".getBytes(StandardCharsets.UTF_8))))
+                .when(fileService).transferRawContent(eq(rawContent), eq(4L), eq(5L), any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/raw").header(HttpHeaders.RANGE, "bytes=4-"))
+                .andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 4-8/9"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(content().string("bytes"));
+    }
+
+    @Test
+    void getRawContent_leavesFileRegionToTheContainer_whenContentIsOnDiskAndSendfileIsSupported() throws Exception{
+
+        ContentStore.FileRegion fileRegion = new ContentStore.FileRegion(Path.of("segment-000000.dat"), 100, 9);
+        Mockito.when(fileService.getRawContent(1L)).thenReturn(new RawContent("raw.txt", new Content(1L, "abc", 9, new ContentLocation(), 1), fileRegion));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/raw").header(HttpHeaders.RANGE, "bytes=-3")
+                        .requestAttr("org.apache.tomcat.sendfile.support", true))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 3))
+                .andReturn();
+
+        Assertions.assertEquals(106L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.start"));
+        Assertions.assertEquals(109L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.end"));
+        Mockito.verify(fileService, Mockito.never()).transferRawContent(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void getRawContent_returnsRangeNotSatisfiable_whenRangeStartsAfterContent() throws Exception{
+
+        Mockito.when(fileService.getRawContent(1L)).thenReturn(new RawContent("raw.txt", new Content(1L, "abc", 9, new ContentLocation(), 1), null));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/1/raw").header(HttpHeaders.RANGE, "bytes=9-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */9"));
+    }
+
+    @Test
+    void search_returnsPageOfHits() throws Exception{
+
+        Mockito.when(fileService.search("hello", 1, 2)).thenReturn(new SearchResult("hello", 1, 2, 3,
+                List.of(new SearchResult.Hit(5L, "greeting.txt", 4, "hello there"))));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/search").param("q", "hello").param("page", "1").param("size", "2")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"query\":\"hello\",\"page\":1,\"size\":2,\"totalHits\":3,"
+                        + "\"hits\":[{\"fileId\":5,\"fileName\":\"greeting.txt\",\"lineNumber\":4,\"line\":\"hello there\"}]}"));
+    }
+
+    @Test
+    void search_throwsBadRequestException_whenQueryIsBlank() throws Exception{
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/search").param("q", " ")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getLineCacheStats_returnsCounters() throws Exception{
+
+        Mockito.when(fileService.getLineCacheStats()).thenReturn(new LineViewCache.CacheStats(3, 1, 0, 1, 40, 1024));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/line-cache/stats")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        Assertions.assertEquals("{\"hits\":3,\"misses\":1,\"evictions\":0,\"entries\":1,\"weight\":40,\"maxWeight\":1024}",
+                result.getResponse().getContentAsString());
+    }
+
+    @Test
+    void getStoreStats_returnsCompressionRatioAndDecodeThroughput() throws Exception{
+
+        Mockito.when(fileService.getStoreStats()).thenReturn(ContentStore.StoreStats.of(true, 1000, 250, 2 * 1024 * 1024, 1_000_000_000));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/file/store/stats")
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk()).andReturn();
+
+        String content = result.getResponse().getContentAsString();
+        Assertions.assertTrue(content.contains("\"compressionRatio\":4.0"), content);
+        Assertions.assertTrue(content.contains("\"decodeMegabytesPerSecond\":2.0"), content);
+    }
+
 }
@@ -0,0 +1,128 @@
+package com.jasmine.filemanager.data;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@DataJpaTest
+public class ContentRepositoryTest {
+
+    @Autowired
+    private ContentRepository contentRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileLineIndexRepository fileLineIndexRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+
+    @Test
+    void streamAll_skipsContentWhichIsStillStreaming() {
+
+        Content stored = contentRepository.save(new Content(null, "a", 1, new ContentLocation(), 1));
+        contentRepository.save(new Content(null, null, 0, null, 0));
+        Content storedLater = contentRepository.save(new Content(null, "b", 1, new ContentLocation(), 1));
+
+        List<Long> ids;
+        try (Stream<Content> contents = contentRepository.streamAll(1)) {
+            ids = contents.map(Content::getId).toList();
+        }
+
+        Assertions.assertEquals(List.of(stored.getId(), storedLater.getId()), ids);
+    }
+
+    @Test
+    void addReferences_incrementsReferenceCount() {
+
+        Content content = contentRepository.save(new Content(null, "a", 1, new ContentLocation(), 1));
+        entityManager.flush();
+
+        contentRepository.addReferences(content.getId(), 2);
+        entityManager.clear();
+
+        Assertions.assertEquals(3, contentRepository.findById(content.getId()).orElseThrow().getReferenceCount());
+    }
+
+    @Test
+    void findAllByHashIn_returnsOnlyStoredContentsWithTheGivenHashes() {
+
+        Content first = contentRepository.save(new Content(null, "a", 1, new ContentLocation(), 1));
+        contentRepository.save(new Content(null, "b", 1, new ContentLocation(), 1));
+        Content third = contentRepository.save(new Content(null, "c", 1, new ContentLocation(), 1));
+
+        List<Content> found = contentRepository.findAllByHashIn(List.of("a", "c", "d"));
+
+        Assertions.assertEquals(List.of(first.getId(), third.getId()), found.stream().map(Content::getId).sorted().toList());
+    }
+
+    @Test
+    void findAllLineCounts_returnsOneLineCountPerFile_whenFilesShareContent() {
+
+        Content content = contentRepository.save(new Content(null, "a", 1, new ContentLocation(), 2));
+        fileLineIndexRepository.save(new FileLineIndex(content.getId(), 3, new byte[0]));
+        File first = fileRepository.save(new File(null, "first.txt", 1, content.getId()));
+        File second = fileRepository.save(new File(null, "second.txt", 1, content.getId()));
+
+        List<LineCount> lineCounts = fileLineIndexRepository.findAllLineCounts();
+
+        Assertions.assertEquals(List.of(first.getId(), second.getId()), lineCounts.stream().map(LineCount::getFileId).toList());
+        Assertions.assertEquals(List.of(3, 3), lineCounts.stream().map(LineCount::getLineCount).toList());
+    }
+
+    @Test
+    void deleteUnreferenced_deletesOnlyContentWithoutReferences() {
+
+        Content shared = contentRepository.save(new Content(null, "a", 1, new ContentLocation(), 2));
+        Content last = contentRepository.save(new Content(null, "b", 1, new ContentLocation(), 1));
+        entityManager.flush();
+
+        contentRepository.addReferences(shared.getId(), -1);
+        contentRepository.addReferences(last.getId(), -1);
+
+        Assertions.assertEquals(0, contentRepository.deleteUnreferenced(shared.getId()));
+        Assertions.assertEquals(1, contentRepository.deleteUnreferenced(last.getId()));
+        entityManager.clear();
+        Assertions.assertTrue(contentRepository.findById(shared.getId()).isPresent());
+        Assertions.assertTrue(contentRepository.findById(last.getId()).isEmpty());
+    }
+
+    @Test
+    void findReferenceCounts_returnsReferenceCountOfEveryExistingContent() {
+
+        Content shared = contentRepository.save(new Content(null, "a", 1, new ContentLocation(), 3));
+        Content single = contentRepository.save(new Content(null, "b", 1, new ContentLocation(), 1));
+        entityManager.flush();
+
+        List<ContentReferences> references = contentRepository.findReferenceCounts(List.of(shared.getId(), single.getId(), -1L)).stream()
+                .sorted(Comparator.comparing(ContentReferences::getId)).toList();
+
+        Assertions.assertEquals(List.of(shared.getId(), single.getId()), references.stream().map(ContentReferences::getId).toList());
+        Assertions.assertEquals(List.of(3L, 1L), references.stream().map(ContentReferences::getReferenceCount).toList());
+    }
+
+    @Test
+    void findSegmentUsage_sumsContentPerSegment_andCountsUploadsStillStreaming() {
+
+        contentRepository.save(new Content(null, "a", 3, new ContentLocation(0, 0, 0, false), 1));
+        contentRepository.save(new Content(null, "b", 4, new ContentLocation(1, 0, 0, false), 1));
+        contentRepository.save(new Content(null, null, 5, new ContentLocation(1, 4, 0, false), 0));
+        contentRepository.save(new Content(null, null, 0, null, 0));
+
+        List<SegmentUsage> usage = contentRepository.findSegmentUsage().stream()
+                .sorted(Comparator.comparingInt(SegmentUsage::getSegment)).toList();
+
+        Assertions.assertEquals(List.of(0, 1), usage.stream().map(SegmentUsage::getSegment).toList());
+        Assertions.assertEquals(List.of(3L, 9L), usage.stream().map(SegmentUsage::getLength).toList());
+        Assertions.assertEquals(List.of(0L, 1L), usage.stream().map(SegmentUsage::getStreaming).toList());
+    }
+}
@@ -0,0 +1,39 @@
+package com.jasmine.filemanager.data;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+@DataJpaTest
+public class FileRepositoryTest {
+
+    @Autowired
+    private FileRepository fileRepository;
+
+
+    @Test
+    void streamAll_returnsEveryFileInIdOrder_whenFilesSpanSeveralPages() {
+
+        IntStream.range(0, 7).forEach(i -> fileRepository.save(new File(null, "file" + i + ".txt", i, (long) i)));
+
+        List<String> names;
+        try (Stream<File> files = fileRepository.streamAll(3)) {
+            names = files.map(File::getName).toList();
+        }
+
+        Assertions.assertEquals(List.of("file0.txt", "file1.txt", "file2.txt", "file3.txt", "file4.txt", "file5.txt", "file6.txt"), names);
+    }
+
+    @Test
+    void streamAll_returnsNothing_whenThereAreNoFiles() {
+
+        try (Stream<File> files = fileRepository.streamAll(3)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+}
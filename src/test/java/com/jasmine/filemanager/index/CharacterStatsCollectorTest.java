@@ -0,0 +1,77 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class CharacterStatsCollectorTest {
+
+
+    @Test
+    void finish_returnsMostUsedLetterOfFileAndOfEveryBucket() {
+
+        byte[] bytes = "aa b\nb\nccc\nc\nd".getBytes(StandardCharsets.UTF_8);
+        CharacterStatsCollector collector = new CharacterStatsCollector(2);
+        collector.append(bytes, 0, bytes.length);
+
+        CharacterStatsCollector.CharacterStats stats = collector.finish(5);
+
+        Assertions.assertEquals('c', stats.mostUsedLetter());
+        Assertions.assertEquals(4, stats.mostUsedLetterCount());
+        Assertions.assertEquals(9, stats.letterCount());
+        Assertions.assertArrayEquals(new int[]{'a', 'c', 'd'}, stats.bucketMostUsedLetters());
+    }
+
+    @Test
+    void finish_decodesCodePoints_whenSequencesAreSplitAcrossChunks() {
+
+        byte[] bytes = "ü😀ü😀😀".getBytes(StandardCharsets.UTF_8);
+        CharacterStatsCollector collector = new CharacterStatsCollector(10);
+        for (int i = 0; i < bytes.length; i++) {
+            collector.append(bytes, i, 1);
+        }
+
+        CharacterStatsCollector.CharacterStats stats = collector.finish(1);
+
+        Assertions.assertEquals(0x1F600, stats.mostUsedLetter());
+        Assertions.assertEquals(3, stats.mostUsedLetterCount());
+        Assertions.assertEquals(5, stats.letterCount());
+    }
+
+    @Test
+    void finish_countsOnlyCarriageReturnsOutsideOfCrlf() {
+
+        byte[] bytes = "\r\r\n\r\n\r\na\r".getBytes(StandardCharsets.UTF_8);
+        CharacterStatsCollector collector = new CharacterStatsCollector(10);
+        for (int i = 0; i < bytes.length; i++) {
+            collector.append(bytes, i, 1);
+        }
+
+        CharacterStatsCollector.CharacterStats stats = collector.finish(4);
+
+        Assertions.assertEquals('\r', stats.mostUsedLetter());
+        Assertions.assertEquals(2, stats.mostUsedLetterCount());
+        Assertions.assertEquals(3, stats.letterCount());
+    }
+
+    @Test
+    void finish_dropsBucketsOfTrailingEmptyLines() {
+
+        byte[] bytes = "a\nb\n\n\n\n".getBytes(StandardCharsets.UTF_8);
+        CharacterStatsCollector collector = new CharacterStatsCollector(2);
+        collector.append(bytes, 0, bytes.length);
+
+        Assertions.assertArrayEquals(new int[]{'a'}, collector.finish(2).bucketMostUsedLetters());
+    }
+
+    @Test
+    void finish_returnsNoLetters_whenContentIsEmpty() {
+
+        CharacterStatsCollector.CharacterStats stats = new CharacterStatsCollector(2).finish(0);
+
+        Assertions.assertEquals(-1, stats.mostUsedLetter());
+        Assertions.assertEquals(0, stats.letterCount());
+        Assertions.assertEquals(0, stats.bucketMostUsedLetters().length);
+    }
+}
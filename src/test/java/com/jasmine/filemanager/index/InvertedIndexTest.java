@@ -0,0 +1,52 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class InvertedIndexTest {
+
+
+    @Test
+    void find_returnsLinesContainingAllTerms_acrossContentsAddedOutOfOrder() {
+
+        InvertedIndex index = new InvertedIndex();
+        index.add(7, Map.of("hello", new int[]{0, 3, 900}, "world", new int[]{3, 900, 901}));
+        index.add(2, Map.of("hello", new int[]{5}, "world", new int[]{5, 6}));
+
+        Assertions.assertArrayEquals(new long[]{
+                PostingList.posting(2, 5), PostingList.posting(7, 3), PostingList.posting(7, 900)
+        }, index.find(List.of("world", "hello")));
+        Assertions.assertArrayEquals(new long[0], index.find(List.of("hello", "absent")));
+    }
+
+    @Test
+    void remove_dropsPostingsOfContent_andTermsWithoutPostings() {
+
+        InvertedIndex index = new InvertedIndex();
+        index.add(1, Map.of("shared", new int[]{0}, "only", new int[]{1}));
+        index.add(2, Map.of("shared", new int[]{4}));
+
+        index.remove(1);
+
+        Assertions.assertFalse(index.contains(1));
+        Assertions.assertEquals(1, index.termCount());
+        Assertions.assertArrayEquals(new long[]{PostingList.posting(2, 4)}, index.find(List.of("shared")));
+    }
+
+    @Test
+    void postingList_compressesNeighbouringLinesToOneByteEach() {
+
+        PostingList postingList = new PostingList();
+        postingList.addAll(new long[]{PostingList.posting(1, 0), PostingList.posting(1, 1), PostingList.posting(1, 100)});
+        postingList.addAll(new long[]{PostingList.posting(1, 50)});
+
+        Assertions.assertArrayEquals(new long[]{
+                PostingList.posting(1, 0), PostingList.posting(1, 1), PostingList.posting(1, 50), PostingList.posting(1, 100)
+        }, postingList.toArray());
+        // the first posting takes five bytes for its content id, each difference after it one byte
+        Assertions.assertEquals(8, postingList.byteSize());
+    }
+}
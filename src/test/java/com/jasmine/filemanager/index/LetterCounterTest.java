@@ -0,0 +1,58 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LetterCounterTest {
+
+
+    @Test
+    void mostUsedLetter_returnsLetterWhichReachedTheHighestCountFirst() {
+
+        LetterCounter counter = new LetterCounter();
+
+        Assertions.assertEquals('b', LetterCounter.mostUsedLetter("abba b", counter));
+        Assertions.assertEquals('s', LetterCounter.mostUsedLetter("second", counter));
+    }
+
+    @Test
+    void mostUsedLetter_ignoresSpaces() {
+
+        Assertions.assertEquals('x', LetterCounter.mostUsedLetter("  x   ", new LetterCounter()));
+    }
+
+    @Test
+    void mostUsedLetter_returnsMinusOne_whenLineHasNoLetters() {
+
+        LetterCounter counter = new LetterCounter();
+
+        Assertions.assertEquals(-1, LetterCounter.mostUsedLetter("   ", counter));
+        Assertions.assertEquals(-1, LetterCounter.mostUsedLetter("", counter));
+        Assertions.assertEquals(0, counter.total());
+    }
+
+    @Test
+    void mostUsedLetter_countsCodePointsOutsideLatin1() {
+
+        LetterCounter counter = new LetterCounter();
+
+        Assertions.assertEquals(0x1F600, LetterCounter.mostUsedLetter("a😀b😀ü", counter));
+        Assertions.assertEquals(2, counter.mostUsedCount());
+        Assertions.assertEquals('ж', LetterCounter.mostUsedLetter("жaж", counter));
+    }
+
+    @Test
+    void add_keepsCounting_whenTableGrows() {
+
+        LetterCounter counter = new LetterCounter();
+        for (int codePoint = 0x4E00; codePoint < 0x4E00 + 1000; codePoint++) {
+            counter.add(codePoint);
+            counter.add(codePoint);
+        }
+        counter.add(0x4E00 + 500);
+
+        Assertions.assertEquals(0x4E00 + 500, counter.mostUsed());
+        Assertions.assertEquals(3, counter.mostUsedCount());
+        Assertions.assertEquals(2001, counter.total());
+    }
+}
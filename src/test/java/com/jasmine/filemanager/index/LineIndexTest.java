@@ -0,0 +1,77 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LineIndexTest {
+
+
+    @Test
+    void of_matchesStringSplit_forEdgeCases() {
+
+        String[] contents = {"", "a", "\n", "\n\n", "a\n", "a\n\n", "\na", "a\n\nb", "a\r\nb\r\n", "a\r\n\r\n", "\r", "a\rb\r\n\r",
+                "ä\nöü\n\n x", "a long first line\r\nand a second, longer line\nthird\r\n"};
+        for (String content : contents) {
+            Assertions.assertEquals(Arrays.asList(content.split("\r?\n")), lines(content), "content: " + content);
+        }
+    }
+
+    @Test
+    void fromByteArray_restoresPackedIndex() {
+
+        LineIndex lineIndex = LineIndex.of("one\ntwo\nthree".getBytes(StandardCharsets.UTF_8));
+        LineIndex restored = LineIndex.fromByteArray(lineIndex.toByteArray());
+
+        Assertions.assertEquals(3, restored.lineCount());
+        Assertions.assertEquals(8, restored.lineStart(2));
+        Assertions.assertEquals(5, restored.lineLength(2));
+    }
+
+    @Test
+    void builder_indexesContentAppendedInPieces() {
+
+        byte[] content = "first line\nsecond\n\nlast".getBytes(StandardCharsets.UTF_8);
+        LineIndexBuilder builder = new LineIndexBuilder();
+        for (int offset = 0; offset < content.length; offset += 3) {
+            builder.append(content, offset, Math.min(3, content.length - offset));
+        }
+        LineIndex lineIndex = builder.build();
+
+        Assertions.assertEquals(4, lineIndex.lineCount());
+        Assertions.assertEquals(19, lineIndex.lineStart(3));
+        Assertions.assertEquals(0, lineIndex.lineLength(2));
+    }
+
+
+    @Test
+    void builder_stripsCarriageReturn_whenCrlfIsSplitAcrossPieces() {
+
+        byte[] content = "first\r\nsecond\r\n".getBytes(StandardCharsets.UTF_8);
+        LineIndexBuilder builder = new LineIndexBuilder();
+        builder.append(content, 0, 6);
+        builder.append(content, 6, content.length - 6);
+        LineIndex restored = LineIndex.fromByteArray(builder.build().toByteArray());
+
+        Assertions.assertEquals(2, restored.lineCount());
+        Assertions.assertEquals(5, restored.lineLength(0));
+        Assertions.assertEquals(7, restored.lineStart(1));
+        Assertions.assertEquals(6, restored.lineLength(1));
+    }
+
+
+    private List<String> lines(String content) {
+
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        LineIndex lineIndex = LineIndex.of(bytes);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < lineIndex.lineCount(); i++) {
+            lines.add(new String(bytes, lineIndex.lineStart(i), lineIndex.lineLength(i), StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LineScannerTest {
+
+
+    @Test
+    void indexOfNewline_findsFirstNewline_atEveryPositionOfAWord() {
+
+        for (int length = 0; length < 40; length++) {
+            for (int newline = 0; newline < length; newline++) {
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    // bytes next to a newline's value and with the high bit set must not match
+                    bytes[i] = (byte) (i % 3 == 0 ? 0x0B : i % 3 == 1 ? 0x8A : 0x09);
+                }
+                bytes[newline] = '\n';
+                if (newline + 1 < length) {
+                    bytes[newline + 1] = '\n';
+                }
+
+                Assertions.assertEquals(newline, LineScanner.indexOfNewline(ByteBuffer.wrap(bytes), 0, length));
+                Assertions.assertEquals(-1, LineScanner.indexOfNewline(ByteBuffer.wrap(bytes), 0, newline));
+            }
+        }
+    }
+
+    @Test
+    void utf16Length_matchesDecodedString() {
+
+        Random random = new Random(3);
+        String[] pieces = {"a", " ", "ä", "ß", "€", "😀", "\r"};
+        for (int round = 0; round < 200; round++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            Assertions.assertEquals(text.length(), LineScanner.utf16Length(ByteBuffer.wrap(bytes), 0, bytes.length), "text: " + text);
+        }
+    }
+
+    @Test
+    void scan_endsLinesBeforeCrlf_acrossChunks() {
+
+        byte[] bytes = "one\r\ntwo\rthree\n\r\nfour\r".getBytes(StandardCharsets.UTF_8);
+        List<long[]> lineEnds = new ArrayList<>();
+        LineScanner scanner = new LineScanner();
+        for (int offset = 0; offset < bytes.length; offset += 4) {
+            scanner.scan(ByteBuffer.wrap(bytes, offset, Math.min(4, bytes.length - offset)), (end, nextStart) -> lineEnds.add(new long[]{end, nextStart}));
+        }
+
+        Assertions.assertEquals(List.of("3-5", "14-15", "15-17"), lineEnds.stream().map(lineEnd -> lineEnd[0] + "-" + lineEnd[1]).toList());
+        Assertions.assertEquals(bytes.length, scanner.position());
+    }
+}
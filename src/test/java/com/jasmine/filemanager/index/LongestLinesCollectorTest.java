@@ -0,0 +1,77 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class LongestLinesCollectorTest {
+
+
+    @Test
+    void finish_returnsSameLinesAsSortingAllLines_acrossFiles() throws Exception {
+
+        byte[] text2 = new ClassPathResource("/text2.txt").getInputStream().readAllBytes();
+        byte[] text3 = new ClassPathResource("/text3.txt").getInputStream().readAllBytes();
+
+        TopLines topLines = new TopLines(100);
+        topLines.offerAll(collect(1L, text2, 100));
+        topLines.offerAll(collect(2L, text3, 100));
+
+        List<String> allLines = new ArrayList<>();
+        allLines.addAll(Arrays.asList(new String(text2, StandardCharsets.UTF_8).split("\n")));
+        allLines.addAll(Arrays.asList(new String(text3, StandardCharsets.UTF_8).split("\n")));
+        allLines.sort(Comparator.comparing(String::length).reversed());
+
+        List<String> expected = allLines.subList(0, 100);
+        List<String> actual = topLines.sorted().stream()
+                .map(lineRef -> new String(lineRef.contentId() == 1L ? text2 : text3, lineRef.start(), lineRef.byteLength(), StandardCharsets.UTF_8))
+                .toList();
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void finish_measuresLinesInUtf16Chars() {
+
+        byte[] content = "ab\näöüß\n😀".getBytes(StandardCharsets.UTF_8);
+
+        List<LineRef> lines = collect(1L, content, 3).sorted();
+
+        Assertions.assertEquals(List.of(4, 2, 2), lines.stream().map(LineRef::length).toList());
+        Assertions.assertEquals(List.of(1, 0, 2), lines.stream().map(LineRef::line).toList());
+    }
+
+    @Test
+    void finish_leavesCarriageReturnOfCrlfOutOfTheLine() {
+
+        byte[] content = "ab\r\nä\rc\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+
+        List<LineRef> lines = collect(1L, content, 3).sorted();
+
+        Assertions.assertEquals(List.of(3, 2), lines.stream().map(LineRef::length).toList());
+        Assertions.assertEquals(List.of(4, 2), lines.stream().map(LineRef::byteLength).toList());
+    }
+
+    @Test
+    void finish_dropsTrailingEmptyLines() {
+
+        byte[] content = "a\n\nb\n\n\n".getBytes(StandardCharsets.UTF_8);
+
+        List<LineRef> lines = collect(1L, content, 10).sorted();
+
+        Assertions.assertEquals(List.of(0, 2, 1), lines.stream().map(LineRef::line).toList());
+    }
+
+
+    private TopLines collect(long contentId, byte[] content, int capacity) {
+
+        LongestLinesCollector collector = new LongestLinesCollector(contentId, capacity);
+        collector.append(content, 0, content.length);
+        return collector.finish();
+    }
+}
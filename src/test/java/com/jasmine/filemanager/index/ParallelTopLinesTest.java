@@ -0,0 +1,33 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.ByteBuffer;
+
+public class ParallelTopLinesTest {
+
+
+    @Test
+    void select_returnsSameLinesAsSingleCollector_whenLinesAreSplitIntoPartitions() throws Exception {
+
+        byte[] content = new ClassPathResource("/text3.txt").getInputStream().readAllBytes();
+        LongestLinesCollector collector = new LongestLinesCollector(1L, 40);
+        collector.append(content, 0, content.length);
+
+        TopLines topLines = ParallelTopLines.select(1L, ByteBuffer.wrap(content), LineIndex.of(content), 40, 7);
+
+        Assertions.assertEquals(collector.finish().sorted(), topLines.sorted());
+    }
+
+    @Test
+    void select_returnsAllLines_whenNIsLargerThanLineCount() throws Exception {
+
+        byte[] content = new ClassPathResource("/text2.txt").getInputStream().readAllBytes();
+
+        TopLines topLines = ParallelTopLines.select(1L, ByteBuffer.wrap(content), LineIndex.of(content), 1000, 4);
+
+        Assertions.assertEquals(26, topLines.size());
+    }
+}
@@ -0,0 +1,64 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ReservoirLineSamplerTest {
+
+
+    @Test
+    void finish_returnsEveryLineOnce_whenKIsAtLeastTheLineCount() {
+
+        String[] contents = {"", "a", "\n", "\n\n", "a\n", "a\n\n", "\na", "a\n\nb", "a\n\n\nb\n\n", "ä\nöü\n\n x",
+                "a\r\n\r\n\r\nb\r\n\r\n", "a\rb\r\n"};
+        for (String content : contents) {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            ReservoirLineSampler sampler = new ReservoirLineSampler(10, new Random(1));
+            sampler.append(bytes, 0, bytes.length);
+
+            List<String> lines = sampler.finish().stream()
+                    .sorted((a, b) -> Integer.compare(a.line(), b.line()))
+                    .map(lineRange -> new String(bytes, lineRange.start(), lineRange.byteLength(), StandardCharsets.UTF_8))
+                    .toList();
+
+            Assertions.assertEquals(Arrays.asList(content.split("\r?\n")), lines, "content: " + content);
+            Assertions.assertEquals(lines.size(), sampler.lineCount());
+        }
+    }
+
+    @Test
+    void finish_picksEveryLineAboutEquallyOften() {
+
+        byte[] bytes = "zero\none\n\nthree\nfour\n\n".getBytes(StandardCharsets.UTF_8);
+        int[] picks = new int[5];
+        Random random = new Random(42);
+        int rounds = 50_000;
+        for (int round = 0; round < rounds; round++) {
+            ReservoirLineSampler sampler = new ReservoirLineSampler(1, random);
+            sampler.append(bytes, 0, bytes.length);
+            picks[sampler.finish().get(0).line()]++;
+        }
+
+        for (int pick : picks) {
+            Assertions.assertEquals(rounds / 5.0, pick, rounds * 0.02);
+        }
+    }
+
+    @Test
+    void finish_returnsKDistinctLines_whenFileHasMoreLines() {
+
+        byte[] bytes = "1\n2\n3\n4\n5\n6\n7\n8".getBytes(StandardCharsets.UTF_8);
+        ReservoirLineSampler sampler = new ReservoirLineSampler(3, new Random(7));
+        sampler.append(bytes, 0, bytes.length);
+
+        List<LineRange> lines = sampler.finish();
+
+        Assertions.assertEquals(3, lines.stream().map(LineRange::line).distinct().count());
+        Assertions.assertEquals(8, sampler.lineCount());
+    }
+}
@@ -0,0 +1,47 @@
+package com.jasmine.filemanager.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TermCollectorTest {
+
+
+    @Test
+    void finish_returnsDistinctLinesOfEveryLowerCasedTerm_whenBytesArriveOneByOne() {
+
+        byte[] bytes = "Grüße, World!\r\nworld world-2\n\nÜBER größe—GRÜSSE\n".getBytes(StandardCharsets.UTF_8);
+        TermCollector collector = new TermCollector();
+        for (int i = 0; i < bytes.length; i++) {
+            collector.append(bytes, i, 1);
+        }
+
+        Map<String, int[]> termLines = collector.finish();
+
+        Assertions.assertEquals(Set.of("grüße", "world", "2", "über", "größe", "grüsse"), termLines.keySet());
+        Assertions.assertArrayEquals(new int[]{0, 1}, termLines.get("world"));
+        Assertions.assertArrayEquals(new int[]{1}, termLines.get("2"));
+        Assertions.assertArrayEquals(new int[]{3}, termLines.get("größe"));
+    }
+
+    @Test
+    void finish_skipsTermsLongerThanMaximum() {
+
+        byte[] bytes = ("short " + "x".repeat(TermCollector.MAX_TERM_BYTES + 1) + " " + "y".repeat(TermCollector.MAX_TERM_BYTES)).getBytes(StandardCharsets.UTF_8);
+        TermCollector collector = new TermCollector();
+        collector.append(bytes, 0, bytes.length);
+
+        Assertions.assertEquals(List.of("short", "y".repeat(TermCollector.MAX_TERM_BYTES)),
+                collector.finish().keySet().stream().sorted().toList());
+    }
+
+    @Test
+    void terms_splitsQueryLikeContent() {
+
+        Assertions.assertEquals(List.of("hello", "wörld", "42"), TermCollector.terms("  Hello, WÖRLD! hello 42"));
+    }
+}
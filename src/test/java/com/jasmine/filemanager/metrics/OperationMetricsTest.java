@@ -0,0 +1,80 @@
+package com.jasmine.filemanager.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Map;
+
+public class OperationMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OperationMetrics operationMetrics;
+
+
+    @BeforeEach
+    void setUp() {
+
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("observationRegistry", observationRegistry));
+        operationMetrics = new OperationMetrics(meterRegistry, beanFactory.getBeanProvider(ObservationRegistry.class));
+    }
+
+    @Test
+    void observe_timesOperationAndRecordsWhatItUsed() {
+
+        String line = operationMetrics.observe("read", () -> {
+            OperationMetrics.filesLoaded(1);
+            OperationMetrics.bytesRead(100);
+            OperationMetrics.linesScanned(10);
+            OperationMetrics.bytesDecoded(7);
+            return "a line";
+        });
+
+        Assertions.assertEquals("a line", line);
+        Timer timer = meterRegistry.get(OperationMetrics.OPERATION).tag("operation", "read").timer();
+        Assertions.assertEquals(1, timer.count());
+        Assertions.assertEquals(100, summary("bytes.read", "read").totalAmount());
+        Assertions.assertEquals(7, summary("bytes.decoded", "read").totalAmount());
+        Assertions.assertEquals(10, summary("lines.scanned", "read").totalAmount());
+        Assertions.assertEquals(1, summary("files.loaded", "read").totalAmount());
+    }
+
+    @Test
+    void observe_addsNestedOperationToTheOuterOne_andDropsReportsOutsideOfOperations() {
+
+        OperationMetrics.bytesRead(1000);
+        operationMetrics.observe("outer", () -> {
+            OperationMetrics.bytesRead(1);
+            operationMetrics.observe("inner", () -> OperationMetrics.bytesRead(2));
+        });
+
+        Assertions.assertEquals(2, summary("bytes.read", "inner").totalAmount());
+        Assertions.assertEquals(3, summary("bytes.read", "outer").totalAmount());
+    }
+
+    @Test
+    void observe_recordsFailedOperation_andRethrows() {
+
+        Assertions.assertThrows(IllegalStateException.class, () -> operationMetrics.observe("failing", () -> {
+            OperationMetrics.filesLoaded(1);
+            throw new IllegalStateException("gone");
+        }));
+
+        Assertions.assertEquals(1, meterRegistry.get(OperationMetrics.OPERATION).tag("operation", "failing").timer().count());
+        Assertions.assertEquals(1, summary("files.loaded", "failing").count());
+    }
+
+
+    private DistributionSummary summary(String name, String operation) {
+        return meterRegistry.get(OperationMetrics.OPERATION + "." + name).tag("operation", operation).summary();
+    }
+}
@@ -0,0 +1,59 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.data.FileLineIndexRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class CorpusLineCountsTest {
+
+    private final CorpusLineCounts corpusLineCounts = new CorpusLineCounts(Mockito.mock(FileLineIndexRepository.class));
+
+
+    @BeforeEach
+    void setUp() {
+        // builds the table from the empty repository before files are added
+        Assertions.assertEquals(0, corpusLineCounts.totalLineCount());
+    }
+
+    @Test
+    void pick_weightsFilesByTheirLineCount() {
+
+        corpusLineCounts.add(1L, 1);
+        corpusLineCounts.add(2L, 3);
+        corpusLineCounts.add(3L, 6);
+
+        Map<Long, Integer> picks = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            CorpusLineCounts.LinePosition position = corpusLineCounts.pick(random);
+            picks.merge(position.fileId(), 1, Integer::sum);
+        }
+
+        Assertions.assertEquals(10_000, picks.get(1L), 1_000);
+        Assertions.assertEquals(30_000, picks.get(2L), 1_000);
+        Assertions.assertEquals(60_000, picks.get(3L), 1_000);
+    }
+
+    @Test
+    void pick_returnsLineWithinPickedFile_afterAFileWasRemoved() {
+
+        corpusLineCounts.add(1L, 2);
+        corpusLineCounts.add(2L, 5);
+        corpusLineCounts.add(3L, 1);
+        corpusLineCounts.remove(2L);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 1_000; i++) {
+            CorpusLineCounts.LinePosition position = corpusLineCounts.pick(random);
+            Assertions.assertNotEquals(2L, position.fileId());
+            Assertions.assertTrue(position.line() < (position.fileId() == 1L ? 2 : 1));
+        }
+        Assertions.assertEquals(3, corpusLineCounts.totalLineCount());
+    }
+}
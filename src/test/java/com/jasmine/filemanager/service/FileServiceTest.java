@@ -1,46 +1,122 @@
 package com.jasmine.filemanager.service;
 
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.ContentReferences;
+import com.jasmine.filemanager.data.ContentRepository;
 import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileLineIndex;
+import com.jasmine.filemanager.data.FileDeletionRepository;
+import com.jasmine.filemanager.data.FileLineIndexRepository;
 import com.jasmine.filemanager.data.FileRepository;
+import com.jasmine.filemanager.data.FileSummary;
+import com.jasmine.filemanager.data.FileSummaryRepository;
+import com.jasmine.filemanager.data.LineCount;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.metrics.OperationMetrics;
+import com.jasmine.filemanager.store.ChunkListener;
+import com.jasmine.filemanager.store.ContentStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.StreamSupport;
+import java.util.stream.Stream;
 
 import static org.mockito.ArgumentMatchers.*;
 
 
 @ExtendWith(SpringExtension.class)
-@ContextConfiguration(classes = {FileService.class})
+@ContextConfiguration(classes = {FileService.class, FileSummaryService.class, LongestLinesTracker.class, CorpusLineCounts.class, LineViewCache.class,
+        LineSearchIndex.class, IndexSnapshots.class, OperationMetrics.class, SimpleMeterRegistry.class, FileManagerProperties.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class FileServiceTest {
 
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
     @MockBean
     private FileRepository fileRepository;
 
+    @MockBean
+    private FileLineIndexRepository fileLineIndexRepository;
+
+    @MockBean
+    private FileSummaryRepository fileSummaryRepository;
+
+    @MockBean
+    private ContentRepository contentRepository;
 
+    @MockBean
+    private ContentStore contentStore;
+
+    @MockBean
+    private FileDeletionRepository fileDeletionRepository;
+
+    private final Map<Long, Content> contents = new TreeMap<>();
+    private long nextContentId = 1;
+
+
+    @BeforeEach
+    void setUp() {
+
+        Mockito.when(contentRepository.findById(anyLong())).thenAnswer(invocation -> Optional.ofNullable(contents.get(invocation.getArgument(0, Long.class))));
+        Mockito.when(contentRepository.findAllById(any())).thenAnswer(invocation -> StreamSupport.stream(invocation.<Iterable<Long>>getArgument(0).spliterator(), false)
+                .map(contents::get).filter(content -> content != null).toList());
+        Mockito.when(contentRepository.streamAll(anyInt())).thenAnswer(invocation -> contents.values().stream());
+        Mockito.when(contentRepository.findReferenceCounts(any())).thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(0).stream()
+                .map(contents::get).filter(content -> content != null).map(FileServiceTest::references).toList());
+        Mockito.when(contentRepository.save(any(Content.class))).thenAnswer(invocation -> {
+            Content content = invocation.getArgument(0, Content.class);
+            if (content.getId() == null) {
+                content.setId(nextContentId++);
+            }
+            return content;
+        });
+    }
 
     @Test
     void uploadFile_returns_when() throws Exception {
 
         ClassPathResource fileResource = new ClassPathResource("/text1.txt");
-        File persistedFile = new File(1L, fileResource.getFilename(), fileResource.getInputStream().readAllBytes());
+        File persistedFile = persistedFile(1L, fileResource);
         MultipartFile multipartFile = new MockMultipartFile(
                 "file",
                 "text1.txt",
@@ -49,8 +125,177 @@ public class FileServiceTest {
         );
 
         Mockito.when(fileRepository.save(any(File.class))).thenReturn(persistedFile);
+        Mockito.when(contentStore.write(eq(1L), any(InputStream.class), any(ChunkListener.class))).thenAnswer(invocation -> {
+            byte[] content = invocation.getArgument(1, InputStream.class).readAllBytes();
+            invocation.getArgument(2, ChunkListener.class).onChunk(content, 0, content.length);
+            return new ContentStore.StoredContent(new ContentLocation(), content.length);
+        });
         Long id = fileService.uploadFile(multipartFile);
         Assertions.assertNotNull(id);
+        Mockito.verify(fileLineIndexRepository).save(argThat(index -> index.getContentId().equals(1L) && index.getLineCount() == 12));
+        Mockito.verify(fileSummaryRepository).save(argThat(summary -> summary.getLineCount() == 12 && summary.getMaxLineLength() == 167
+                && summary.getLength() == persistedFile.getLength() && summary.getLongestLines().length == 12 * 16
+                && summary.getMostUsedLetter() == 'i' && summary.getBucketMostUsedLetters().length == 4));
+
+    }
+
+    @Test
+    void uploadFile_offersLongestLinesOfUploadedFile_whenUploadIsDone() throws Exception {
+
+        ClassPathResource fileResource = new ClassPathResource("/text1.txt");
+        File persistedFile = persistedFile(1L, fileResource);
+        MultipartFile multipartFile = new MockMultipartFile("file", "text1.txt", MediaType.TEXT_PLAIN_VALUE, fileResource.getInputStream());
+
+        Mockito.when(fileRepository.save(any(File.class))).thenReturn(persistedFile);
+        Mockito.when(fileRepository.findAllById(any())).thenReturn(List.of(persistedFile));
+        Mockito.when(contentStore.write(eq(1L), any(InputStream.class), any(ChunkListener.class))).thenAnswer(invocation -> {
+            byte[] content = invocation.getArgument(1, InputStream.class).readAllBytes();
+            invocation.getArgument(2, ChunkListener.class).onChunk(content, 0, content.length);
+            return new ContentStore.StoredContent(new ContentLocation(), content.length);
+        });
+        fileService.uploadFile(multipartFile);
+        List<String> lines = fileService.getHundredLongestLineOfAllFiles();
+
+        Assertions.assertEquals(12, lines.size());
+        Assertions.assertTrue(lines.get(0).startsWith("Fusce vitae facilisis elit."));
+
+    }
+
+    @Test
+    void uploadFile_referencesExistingContent_whenSameContentWasUploadedBefore() throws Exception {
+
+        byte[] bytes = "same\ncontent".getBytes(StandardCharsets.UTF_8);
+        persistedFile(1L, "first.txt", bytes);
+        Content existingContent = contents.get(1L);
+        existingContent.setHash(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)));
+        nextContentId = 2;
+        MultipartFile multipartFile = new MockMultipartFile("file", "second.txt", MediaType.TEXT_PLAIN_VALUE, bytes);
+
+        Mockito.when(contentRepository.findAllByHashIn(any())).thenReturn(List.of(existingContent));
+        Mockito.when(fileRepository.save(any(File.class))).thenReturn(new File(2L, "second.txt", bytes.length, 1L));
+        Mockito.when(contentStore.write(eq(2L), any(InputStream.class), any(ChunkListener.class))).thenAnswer(invocation -> {
+            byte[] content = invocation.getArgument(1, InputStream.class).readAllBytes();
+            invocation.getArgument(2, ChunkListener.class).onChunk(content, 0, content.length);
+            return new ContentStore.StoredContent(new ContentLocation(), content.length);
+        });
+        Long id = fileService.uploadFile(multipartFile);
+
+        Assertions.assertEquals(2L, id);
+        Mockito.verify(contentRepository).addReferences(1L, 1L);
+        Mockito.verify(contentStore).delete(argThat(content -> content.getId().equals(2L)));
+        Mockito.verify(fileRepository).save(argThat(file -> file.getContentId().equals(1L) && file.getName().equals("second.txt")));
+        Mockito.verify(fileLineIndexRepository, Mockito.never()).save(any());
+        Mockito.verify(fileSummaryRepository, Mockito.never()).save(any());
+
+    }
+
+    @Test
+    void store_deletesBytesOfDuplicateContent_beforeTheTransactionCommits() throws Exception {
+
+        byte[] bytes = "same\ncontent".getBytes(StandardCharsets.UTF_8);
+        persistedFile(1L, "first.txt", bytes);
+        Content existingContent = contents.get(1L);
+        existingContent.setHash(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes)));
+        nextContentId = 2;
+        Mockito.when(contentRepository.findAllByHashIn(any())).thenReturn(List.of(existingContent));
+        Mockito.when(fileRepository.save(any(File.class))).thenReturn(new File(2L, "second.txt", bytes.length, 1L));
+        Mockito.when(contentStore.write(eq(2L), any(InputStream.class), any(ChunkListener.class))).thenAnswer(invocation -> {
+            byte[] content = invocation.getArgument(1, InputStream.class).readAllBytes();
+            invocation.getArgument(2, ChunkListener.class).onChunk(content, 0, content.length);
+            return new ContentStore.StoredContent(new ContentLocation(), content.length);
+        });
+        IngestedContent ingestedContent = fileService.ingest("second.txt", new ByteArrayResource(bytes));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            fileService.store(List.of(ingestedContent));
+            // the database store deletes its chunks with a query, which needs the transaction
+            Mockito.verify(contentStore).delete(argThat(content -> content.getId().equals(2L)));
+            Mockito.verify(contentRepository).delete(argThat(content -> content.getId().equals(2L)));
+            TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+            TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                    TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Mockito.verify(contentStore, Mockito.times(1)).delete(any());
+
+    }
+
+    @Test
+    void uploadFiles_reportsInvalidPartsAndStoresContentOnce_whenBatchRepeatsContent() throws Exception {
+
+        byte[] bytes = "repeated\nlines".getBytes(StandardCharsets.UTF_8);
+        List<MultipartFile> multipartFiles = List.of(
+                new MockMultipartFile("files", "first.txt", MediaType.TEXT_PLAIN_VALUE, bytes),
+                new MockMultipartFile("files", "image.png", MediaType.IMAGE_PNG_VALUE, bytes),
+                new MockMultipartFile("files", "second.txt", MediaType.TEXT_PLAIN_VALUE, bytes));
+        List<Long> fileIds = new ArrayList<>();
+
+        Mockito.when(fileRepository.save(any(File.class))).thenAnswer(invocation -> {
+            File file = invocation.getArgument(0, File.class);
+            file.setId(10L + fileIds.size());
+            fileIds.add(file.getId());
+            return file;
+        });
+        Mockito.when(contentStore.write(anyLong(), any(InputStream.class), any(ChunkListener.class))).thenAnswer(invocation -> {
+            byte[] content = invocation.getArgument(1, InputStream.class).readAllBytes();
+            invocation.getArgument(2, ChunkListener.class).onChunk(content, 0, content.length);
+            return new ContentStore.StoredContent(new ContentLocation(), content.length);
+        });
+        BatchUploadResult result = fileService.uploadFiles(multipartFiles);
+
+        Assertions.assertEquals(Arrays.asList(10L, null, 11L), result.fileIds());
+        Assertions.assertEquals(1, result.errors().size());
+        Assertions.assertEquals(1, result.errors().get(0).index());
+        Assertions.assertEquals("image.png", result.errors().get(0).fileName());
+        Mockito.verify(fileLineIndexRepository, Mockito.times(1)).save(any());
+        Mockito.verify(contentStore).delete(argThat(content -> content.getId().equals(2L)));
+        Mockito.verify(contentRepository, Mockito.never()).addReferences(anyLong(), anyLong());
+        Mockito.verify(fileRepository, Mockito.times(2)).save(argThat(file -> file.getContentId().equals(1L)));
+
+    }
+
+    @Test
+    void getHundredLongestLineOfAllFiles_repeatsLinesOfSharedContent_oncePerReferencingFile() throws Exception {
+
+        persistedFile(1L, "twice.txt", "longest\nshort".getBytes(StandardCharsets.UTF_8));
+        contents.get(1L).setReferenceCount(2);
+
+        List<String> lines = fileService.getHundredLongestLineOfAllFiles();
+
+        Assertions.assertEquals(List.of("longest", "longest", "short", "short"), lines);
+
+    }
+
+    @Test
+    void getOneRandomLine_readsLineThroughPersistedIndex_whenIndexExists() throws Exception {
+
+        byte[] content = "first\nsecond".getBytes(StandardCharsets.UTF_8);
+        File persistedFile = persistedFile(1L, "two-lines.txt", content);
+        // an index which only knows the second line
+        byte[] offsets = ByteBuffer.allocate(8).putInt(6).putInt(13).array();
+
+        Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
+        Mockito.when(fileLineIndexRepository.findById(1L)).thenReturn(Optional.of(new FileLineIndex(1L, 1, offsets)));
+        String line = fileService.getOneRandomLine(1L, true);
+
+        Assertions.assertTrue(line.startsWith("second\nlineNumber: 0\n"));
+
+    }
+
+    @Test
+    void getOneRandomLine_recordsLatencyAndWhatTheCallUsed() throws Exception {
+
+        ClassPathResource fileResource = new ClassPathResource("/text1.txt");
+        File persistedFile = persistedFile(1L, fileResource);
+
+        Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
+        String line = fileService.getOneRandomLine(1L, false);
+
+        Assertions.assertEquals(1, summary("files.loaded", "getOneRandomLine").totalAmount());
+        Assertions.assertEquals(12, summary("lines.scanned", "getOneRandomLine").totalAmount());
+        Assertions.assertEquals(line.getBytes(StandardCharsets.UTF_8).length, summary("bytes.decoded", "getOneRandomLine").totalAmount());
 
     }
 
@@ -58,7 +303,7 @@ public class FileServiceTest {
     void getOneRandomLine_returnsLineWithDetail_whenLineDetailParamIsTrue() throws Exception {
 
         ClassPathResource fileResource = new ClassPathResource("/text1.txt");
-        File persistedFile = new File(1L, fileResource.getFilename(), fileResource.getInputStream().readAllBytes());
+        File persistedFile = persistedFile(1L, fileResource);
 
         Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
         String line = fileService.getOneRandomLine(1L, true);
@@ -75,7 +320,7 @@ public class FileServiceTest {
     void getOneRandomLine_returnsLineWithoutDetail_whenLineDetailParamIsFalse() throws Exception {
 
         ClassPathResource fileResource = new ClassPathResource("/text1.txt");
-        File persistedFile = new File(1L, fileResource.getFilename(), fileResource.getInputStream().readAllBytes());
+        File persistedFile = persistedFile(1L, fileResource);
 
         Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
         String line = fileService.getOneRandomLine(1L, false);
@@ -92,16 +337,16 @@ public class FileServiceTest {
     void getRandomLinesBackward_returnsLinesBackward_whenFilesAreExisted() throws Exception {
 
         ClassPathResource file1 = new ClassPathResource("/text1.txt");
-        File persistedFile1 = new File(1L, file1.getFilename(), file1.getInputStream().readAllBytes());
+        File persistedFile1 = persistedFile(1L, file1);
 
         ClassPathResource file2 = new ClassPathResource("/text2.txt");
-        File persistedFile2 = new File(2L, file2.getFilename(), file2.getInputStream().readAllBytes());
+        File persistedFile2 = persistedFile(2L, file2);
 
         List<File> persistedFiles = new ArrayList<>();
         persistedFiles.add(persistedFile1);
         persistedFiles.add(persistedFile2);
 
-        Mockito.when(fileRepository.findAll()).thenReturn(persistedFiles);
+        Mockito.when(fileRepository.streamAll(anyInt())).thenAnswer(invocation -> persistedFiles.stream());
         List<String> linesBackward = fileService.getRandomLinesBackward();
 
         Assertions.assertTrue(linesBackward.size()>1);
@@ -109,13 +354,71 @@ public class FileServiceTest {
     }
 
 
+    @Test
+    void getRandomLinesBackward_returnsSeveralLinesPerFile_whenLinesPerFileIsGreaterThanOne() throws Exception {
+
+        ClassPathResource file1 = new ClassPathResource("/text1.txt");
+        File persistedFile1 = persistedFile(1L, file1);
+        ClassPathResource file2 = new ClassPathResource("/text2.txt");
+        File persistedFile2 = persistedFile(2L, file2);
+        // only the first file has a persisted index, the second one is sampled from its content
+        LineIndex lineIndex = LineIndex.of(file1.getInputStream().readAllBytes());
+        Mockito.when(fileLineIndexRepository.findById(1L)).thenReturn(Optional.of(new FileLineIndex(1L, lineIndex.lineCount(), lineIndex.toByteArray())));
+
+        Mockito.when(fileRepository.streamAll(anyInt())).thenAnswer(invocation -> Stream.of(persistedFile1, persistedFile2));
+        List<String> linesBackward = fileService.getRandomLinesBackward(3);
+
+        List<String> allLines = new ArrayList<>();
+        allLines.addAll(Arrays.asList(new String(file1.getInputStream().readAllBytes(), StandardCharsets.UTF_8).split("\n")));
+        allLines.addAll(Arrays.asList(new String(file2.getInputStream().readAllBytes(), StandardCharsets.UTF_8).split("\n")));
+        Assertions.assertEquals(6, linesBackward.size());
+        linesBackward.forEach(line -> Assertions.assertTrue(allLines.contains(new StringBuilder(line).reverse().toString())));
+
+    }
+
+
+    @Test
+    void getRandomLines_returnsLinesOfWholeCorpusWithDetail_whenNoIdIsGiven() throws Exception {
+
+        File persistedFile1 = persistedFile(1L, "one.txt", "only line of one".getBytes(StandardCharsets.UTF_8));
+        File persistedFile2 = persistedFile(2L, "two.txt", "first of two\nsecond of two".getBytes(StandardCharsets.UTF_8));
+        Mockito.when(fileLineIndexRepository.findAllLineCounts()).thenReturn(List.of(lineCount(1L, 1), lineCount(2L, 2)));
+        Mockito.when(fileRepository.findAllById(any())).thenReturn(List.of(persistedFile1, persistedFile2));
+
+        List<RandomLine> randomLines = fileService.getRandomLines(null, 50, true);
+
+        Assertions.assertEquals(50, randomLines.size());
+        Assertions.assertEquals(3, randomLines.stream().map(RandomLine::line).distinct().count());
+        RandomLine randomLine = randomLines.stream().filter(line -> line.line().equals("second of two")).findFirst().orElseThrow();
+        Assertions.assertEquals(new RandomLine("second of two", 2L, 1, "two.txt", "o"), randomLine);
+
+    }
+
+
+    @Test
+    void getRandomLines_returnsLinesOfGivenFileWithoutDetail_whenIdIsGiven() throws Exception {
+
+        File persistedFile = persistedFile(2L, "two.txt", "first of two\nsecond of two".getBytes(StandardCharsets.UTF_8));
+        Mockito.when(fileRepository.findById(2L)).thenReturn(Optional.of(persistedFile));
+
+        List<RandomLine> randomLines = fileService.getRandomLines(2L, 5, false);
+
+        Assertions.assertEquals(5, randomLines.size());
+        randomLines.forEach(randomLine -> {
+            Assertions.assertTrue(randomLine.line().endsWith("of two"));
+            Assertions.assertNull(randomLine.lineNumber());
+        });
+
+    }
+
+
     @Test
     void getTwentyLongestLinesOfLastUploadedFile_returnsLongestLines_whenPersistedFileLinesAreLessThan20() throws Exception {
 
         ClassPathResource file = new ClassPathResource("/text1.txt");
-        File persistedFile = new File(1L, file.getFilename(), file.getInputStream().readAllBytes());
+        File persistedFile = persistedFile(1L, file);
 
-        String content = new String(persistedFile.getContent(), StandardCharsets.UTF_8);
+        String content = new String(file.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
         List<String> persistedFileLines = Arrays.asList(content.split("\n"));
 
 
@@ -130,7 +433,7 @@ public class FileServiceTest {
     void getTwentyLongestLinesOfLastUploadedFile_returns20LongestLines_whenPersistedFileLinesAreMoreThan20() throws Exception {
 
         ClassPathResource file = new ClassPathResource("/text2.txt");
-        File persistedFile = new File(1L, file.getFilename(), file.getInputStream().readAllBytes());
+        File persistedFile = persistedFile(1L, file);
 
         Mockito.when(fileRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(persistedFile));
         List<String> lines = fileService.getTwentyLongestLinesOfLastUploadedFile();
@@ -140,20 +443,55 @@ public class FileServiceTest {
     }
 
 
+    @Test
+    void getTwentyLongestLinesOfLastUploadedFile_readsLinesOfSummary_whenSummaryExists() throws Exception {
+
+        byte[] content = "short\nthe longest\nmiddle".getBytes(StandardCharsets.UTF_8);
+        File persistedFile = persistedFile(1L, "three-lines.txt", content);
+        byte[] longestLines = ByteBuffer.allocate(32).putInt(1).putInt(6).putInt(11).putInt(11).putInt(2).putInt(18).putInt(6).putInt(6).array();
+
+        Mockito.when(fileRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(persistedFile));
+        Mockito.when(fileSummaryRepository.findById(1L)).thenReturn(Optional.of(new FileSummary(1L, 3, content.length, 11, longestLines, 0, -1, 0, 1000, new byte[0])));
+        List<String> lines = fileService.getTwentyLongestLinesOfLastUploadedFile();
+
+        Assertions.assertEquals(List.of("the longest", "middle"), lines);
+        Mockito.verify(contentStore, Mockito.never()).content(any());
+
+    }
+
+
+    @Test
+    void getFileStats_computesStatsFromContent_whenFileHasNoSummary() throws Exception {
+
+        byte[] content = "a bb\nccc\n\näää".getBytes(StandardCharsets.UTF_8);
+        File persistedFile = persistedFile(1L, "stats.txt", content);
+
+        Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
+        FileStats stats = fileService.getFileStats(1L);
+
+        Assertions.assertEquals(4, stats.lineCount());
+        Assertions.assertEquals(9, stats.letterCount());
+        Assertions.assertEquals("c", stats.mostUsedLetter());
+        Assertions.assertEquals(3, stats.mostUsedLetterCount());
+        Assertions.assertEquals(List.of("c"), stats.lineBucketMostUsedLetters());
+    }
+
+
     @Test
     void getHundredLongestLineOfAllFiles_returnsLongestLines_whenAllPersistedFileLinesAreLessThan100() throws Exception {
 
         ClassPathResource file1 = new ClassPathResource("/text1.txt");
-        File persistedFile1 = new File(1L, file1.getFilename(), file1.getInputStream().readAllBytes());
+        File persistedFile1 = persistedFile(1L, file1);
 
         ClassPathResource file2 = new ClassPathResource("/text2.txt");
-        File persistedFile2 = new File(2L, file2.getFilename(), file2.getInputStream().readAllBytes());
+        File persistedFile2 = persistedFile(2L, file2);
 
         List<File> persistedFiles = new ArrayList<>();
         persistedFiles.add(persistedFile1);
         persistedFiles.add(persistedFile2);
 
-        Mockito.when(fileRepository.findAll()).thenReturn(persistedFiles);
+        Mockito.when(fileRepository.streamAll(anyInt())).thenAnswer(invocation -> persistedFiles.stream());
+        Mockito.when(fileRepository.findAllById(any())).thenReturn(persistedFiles);
         List<String> lines = fileService.getHundredLongestLineOfAllFiles();
 
         Assertions.assertTrue(lines.size()<100);
@@ -165,16 +503,17 @@ public class FileServiceTest {
     void getHundredLongestLineOfAllFiles_returns100LongestLines_whenAllPersistedFileLinesAreMoreThan100() throws Exception {
 
         ClassPathResource file1 = new ClassPathResource("/text2.txt");
-        File persistedFile1 = new File(1L, file1.getFilename(), file1.getInputStream().readAllBytes());
+        File persistedFile1 = persistedFile(1L, file1);
 
         ClassPathResource file2 = new ClassPathResource("/text3.txt");
-        File persistedFile2 = new File(2L, file2.getFilename(), file2.getInputStream().readAllBytes());
+        File persistedFile2 = persistedFile(2L, file2);
 
         List<File> persistedFiles = new ArrayList<>();
         persistedFiles.add(persistedFile1);
         persistedFiles.add(persistedFile2);
 
-        Mockito.when(fileRepository.findAll()).thenReturn(persistedFiles);
+        Mockito.when(fileRepository.streamAll(anyInt())).thenAnswer(invocation -> persistedFiles.stream());
+        Mockito.when(fileRepository.findAllById(any())).thenReturn(persistedFiles);
         List<String> lines = fileService.getHundredLongestLineOfAllFiles();
 
         Assertions.assertEquals(lines.size() , 100);
@@ -182,4 +521,200 @@ public class FileServiceTest {
     }
 
 
+    @Test
+    void getLongestLinesOfAllFiles_returnsMoreLinesThanTheGlobalHeapKeeps_whenNIsLarge() throws Exception {
+
+        File persistedFile1 = persistedFile(1L, new ClassPathResource("/text2.txt"));
+        File persistedFile2 = persistedFile(2L, new ClassPathResource("/text3.txt"));
+        Mockito.when(fileRepository.streamAll(anyInt())).thenAnswer(invocation -> Stream.of(persistedFile1, persistedFile2));
+        Mockito.when(fileRepository.findAllById(any())).thenReturn(List.of(persistedFile1, persistedFile2));
+
+        List<String> lines = fileService.getLongestLinesOfAllFiles(1000);
+
+        Assertions.assertEquals(26 + 110, lines.size());
+        for (int i = 1; i < lines.size(); i++) {
+            Assertions.assertTrue(lines.get(i - 1).length() >= lines.get(i).length());
+        }
+
+    }
+
+
+    @Test
+    void getLines_readsRangeInOnePiece_andCutsItAtTheLastLine() throws Exception {
+
+        byte[] content = "zero\r\none\ntwo\r\nthree\n".getBytes(StandardCharsets.UTF_8);
+        File persistedFile = persistedFile(1L, "lines.txt", content);
+
+        Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
+        FileLines lines = fileService.getLines(1L, 1, 10);
+
+        Assertions.assertEquals(new FileLines(1L, 1, 4, 4, List.of("one", "two", "three")), lines);
+        Assertions.assertEquals(List.of(), fileService.getLines(1L, 4, 10).lines());
+    }
+
+    @Test
+    void transferRawContent_writesRangeFromContentStore() throws Exception {
+
+        File persistedFile = persistedFile(1L, "raw.txt", "raw bytes".getBytes(StandardCharsets.UTF_8));
+        Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(persistedFile));
+        Mockito.doCallRealMethod().when(contentStore).transferTo(any(), anyLong(), anyLong(), any());
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        RawContent rawContent = fileService.getRawContent(1L);
+        fileService.transferRawContent(rawContent, 4, 5, Channels.newChannel(target));
+
+        Assertions.assertEquals("raw.txt", rawContent.fileName());
+        Assertions.assertNull(rawContent.fileRegion());
+        Assertions.assertEquals("bytes", target.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void search_pagesThroughLinesContainingAllTerms_oncePerFileReferencingTheirContent() throws Exception {
+
+        File first = persistedFile(1L, "first.txt", "Hello world\nnothing here\r\nthe WORLD, hello!".getBytes(StandardCharsets.UTF_8));
+        File copy = new File(3L, "copy.txt", first.getLength(), 1L);
+        contents.get(1L).setReferenceCount(2);
+        File second = persistedFile(2L, "second.txt", "say hello\nto the world".getBytes(StandardCharsets.UTF_8));
+        List<File> files = List.of(first, second, copy);
+
+        Mockito.when(fileRepository.findAllByContentIdInOrderByIdAsc(any())).thenAnswer(invocation -> files.stream()
+                .filter(file -> invocation.<Collection<Long>>getArgument(0).contains(file.getContentId())).toList());
+        SearchResult firstPage = fileService.search("world HELLO", 0, 3);
+        SearchResult secondPage = fileService.search("world HELLO", 1, 3);
+
+        Assertions.assertEquals(4, firstPage.totalHits());
+        Assertions.assertEquals(List.of(
+                new SearchResult.Hit(1L, "first.txt", 0, "Hello world"),
+                new SearchResult.Hit(1L, "first.txt", 2, "the WORLD, hello!"),
+                new SearchResult.Hit(3L, "copy.txt", 0, "Hello world")), firstPage.hits());
+        Assertions.assertEquals(List.of(new SearchResult.Hit(3L, "copy.txt", 2, "the WORLD, hello!")), secondPage.hits());
+        Assertions.assertEquals(List.of(), fileService.search("hello absent", 0, 3).hits());
+        // both pages only hold hits of the first content
+        Mockito.verify(contentRepository, Mockito.times(2)).findAllById(any());
+        Mockito.verify(contentRepository, Mockito.times(2)).findAllById(argThat(ids -> List.of(1L).equals(StreamSupport.stream(ids.spliterator(), false).toList())));
+    }
+
+    @Test
+    void deleteFile_deletesContentWithItsLastFile_andDropsItFromTheIndexes() throws Exception {
+
+        File first = persistedFile(1L, "first.txt", "alpha beta\nthe longest line with alpha".getBytes(StandardCharsets.UTF_8));
+        File copy = new File(2L, "copy.txt", first.getLength(), 1L);
+        Content content = contents.get(1L);
+        content.setReferenceCount(2);
+        Mockito.when(fileRepository.findById(1L)).thenReturn(Optional.of(first));
+        Mockito.when(fileRepository.findById(2L)).thenReturn(Optional.of(copy));
+        Mockito.when(fileRepository.removeById(anyLong())).thenReturn(1);
+        Mockito.when(contentRepository.deleteUnreferenced(1L)).thenReturn(0).thenAnswer(invocation -> {
+            contents.remove(1L);
+            return 1;
+        });
+        Assertions.assertEquals(4, fileService.search("alpha", 0, 10).totalHits());
+
+        fileService.deleteFile(1L);
+        Mockito.verify(contentRepository).addReferences(1L, -1L);
+        Mockito.verify(contentStore, Mockito.never()).delete(any());
+
+        fileService.deleteFile(2L);
+        Mockito.verify(contentRepository, Mockito.times(2)).addReferences(1L, -1L);
+        Mockito.verify(fileLineIndexRepository).deleteByContentId(1L);
+        Mockito.verify(fileSummaryRepository).deleteByContentId(1L);
+        Mockito.verify(contentStore).delete(content);
+        Assertions.assertEquals(0, fileService.search("alpha", 0, 10).totalHits());
+        Assertions.assertEquals(List.of(), fileService.getHundredLongestLineOfAllFiles());
+        Assertions.assertThrows(Exception.class, () -> fileService.deleteFile(3L));
+    }
+
+    @Test
+    void discardAbandonedContents_keepsContentOfRolledBackBatch_untilItsRetryStoresIt() throws Exception {
+
+        byte[] bytes = "retried\ncontent".getBytes(StandardCharsets.UTF_8);
+        Mockito.when(contentStore.write(eq(1L), any(InputStream.class), any(ChunkListener.class))).thenAnswer(invocation -> {
+            byte[] content = invocation.getArgument(1, InputStream.class).readAllBytes();
+            invocation.getArgument(2, ChunkListener.class).onChunk(content, 0, content.length);
+            return new ContentStore.StoredContent(new ContentLocation(3, 0, 0, false), content.length);
+        });
+        IngestedContent ingestedContent = fileService.ingest("retried.txt", new ByteArrayResource(bytes));
+        Mockito.when(fileRepository.save(any(File.class)))
+                .thenThrow(new IllegalStateException("batch failed"))
+                .thenReturn(new File(1L, "retried.txt", bytes.length, 1L));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            Assertions.assertThrows(IllegalStateException.class, () -> fileService.store(List.of(ingestedContent)));
+            TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                    TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // the rollback left the content row without a hash, like an abandoned upload
+        Mockito.when(contentRepository.findByHashNullOrderByIdAsc(any())).thenReturn(List.of(new Content(1L, null, bytes.length, null, 0)));
+
+        Assertions.assertEquals(0, fileService.discardAbandonedContents(10));
+        Assertions.assertEquals(Set.of(3), fileService.segmentsInFlight());
+        Mockito.verify(contentStore, Mockito.never()).delete(any());
+
+        Assertions.assertEquals(List.of(1L), fileService.store(List.of(ingestedContent)));
+        Assertions.assertEquals(Set.of(), fileService.segmentsInFlight());
+    }
+
+    @Test
+    void getLongestLinesOfFile_throwsException_whenFileDoesNotExist() {
+
+        Assertions.assertThrows(Exception.class, () -> fileService.getLongestLinesOfFile(1L, 500));
+
+    }
+
+
+    private LineCount lineCount(Long fileId, int lineCount) {
+
+        return new LineCount() {
+            @Override
+            public Long getFileId() {
+                return fileId;
+            }
+
+            @Override
+            public int getLineCount() {
+                return lineCount;
+            }
+        };
+    }
+
+    private static ContentReferences references(Content content) {
+
+        return new ContentReferences() {
+            @Override
+            public Long getId() {
+                return content.getId();
+            }
+
+            @Override
+            public long getReferenceCount() {
+                return content.getReferenceCount();
+            }
+        };
+    }
+
+    private DistributionSummary summary(String name, String operation) {
+
+        return meterRegistry.get(OperationMetrics.OPERATION + "." + name).tag("operation", operation).summary();
+    }
+
+    private File persistedFile(Long id, ClassPathResource resource) throws IOException {
+
+        return persistedFile(id, resource.getFilename(), resource.getInputStream().readAllBytes());
+    }
+
+    private File persistedFile(Long id, String name, byte[] bytes) {
+
+        Content content = new Content(id, "hash" + id, bytes.length, new ContentLocation(), 1);
+        contents.put(id, content);
+        Mockito.when(contentStore.content(argThat(stored -> stored != null && id.equals(stored.getId())))).thenAnswer(invocation -> ByteBuffer.wrap(bytes));
+        Mockito.when(contentStore.read(argThat(stored -> stored != null && id.equals(stored.getId())), anyLong(), anyInt())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(1, Long.class);
+            return Arrays.copyOfRange(bytes, offset, offset + invocation.getArgument(2, Integer.class));
+        });
+        return new File(id, name, bytes.length, id);
+    }
+
 }
@@ -0,0 +1,183 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.ContentRepository;
+import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileDeletion;
+import com.jasmine.filemanager.data.FileDeletionRepository;
+import com.jasmine.filemanager.data.FileLineIndexRepository;
+import com.jasmine.filemanager.data.FileRepository;
+import com.jasmine.filemanager.data.LineCount;
+import com.jasmine.filemanager.index.LineRef;
+import com.jasmine.filemanager.index.PostingList;
+import com.jasmine.filemanager.index.TopLines;
+import com.jasmine.filemanager.store.ContentStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.*;
+
+public class IndexSnapshotsTest {
+
+    @TempDir
+    private Path directory;
+
+    private final FileManagerProperties properties = new FileManagerProperties();
+    private final FileRepository fileRepository = Mockito.mock(FileRepository.class);
+    private final FileDeletionRepository fileDeletionRepository = Mockito.mock(FileDeletionRepository.class);
+    private final FileLineIndexRepository fileLineIndexRepository = Mockito.mock(FileLineIndexRepository.class);
+    private final ContentRepository contentRepository = Mockito.mock(ContentRepository.class);
+
+
+    @BeforeEach
+    void setUp() {
+
+        properties.getSnapshot().setEnabled(true);
+        properties.getSnapshot().setDirectory(directory);
+        properties.getSnapshot().setInterval(Duration.ofHours(1));
+        Mockito.when(contentRepository.streamAll(anyInt())).thenAnswer(invocation -> Stream.empty());
+        Mockito.when(contentRepository.streamReferencedByFilesAfter(anyLong(), anyInt())).thenAnswer(invocation -> Stream.empty());
+        Mockito.when(fileRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(new File(3L, "last.txt", 10, 2L)));
+    }
+
+    @Test
+    void restore_loadsSnapshot_andReplaysOnlyFilesStoredAfterIt() throws Exception {
+
+        Indexes written = new Indexes();
+        written.loaded();
+        written.corpusLineCounts.add(1L, 2);
+        written.corpusLineCounts.add(3L, 5);
+        TopLines longestLines = new TopLines(LongestLinesTracker.CAPACITY);
+        longestLines.offer(new LineRef(2L, 1, 6, 7, 7));
+        written.longestLinesTracker.add(longestLines);
+        written.lineSearchIndex.add(2L, Map.of("hello", new int[]{1, 4}));
+        written.snapshots.writeSnapshot();
+
+        Mockito.clearInvocations(fileLineIndexRepository, contentRepository);
+        Mockito.when(fileLineIndexRepository.findLineCountsOfFilesAfter(3L)).thenReturn(List.of(lineCount(3L, 5), lineCount(4L, 1)));
+        Indexes restored = new Indexes();
+        restored.loaded();
+
+        Assertions.assertEquals(8, restored.corpusLineCounts.totalLineCount());
+        Assertions.assertArrayEquals(new long[]{PostingList.posting(2L, 1), PostingList.posting(2L, 4)},
+                restored.lineSearchIndex.find(List.of("hello")));
+        Mockito.verify(fileLineIndexRepository, Mockito.never()).findAllLineCounts();
+        Mockito.verify(contentRepository, Mockito.never()).streamAll(anyInt());
+        Mockito.verify(contentRepository, Mockito.times(2)).streamReferencedByFilesAfter(eq(3L), anyInt());
+    }
+
+    @Test
+    void restore_dropsFilesAndContentsDeletedAfterSnapshot() throws Exception {
+
+        Indexes written = new Indexes();
+        written.loaded();
+        written.corpusLineCounts.add(1L, 2);
+        written.corpusLineCounts.add(3L, 5);
+        TopLines longestLines = new TopLines(LongestLinesTracker.CAPACITY);
+        longestLines.offer(new LineRef(2L, 1, 6, 7, 7));
+        written.longestLinesTracker.add(longestLines);
+        written.lineSearchIndex.add(2L, Map.of("hello", new int[]{1, 4}));
+        written.snapshots.writeSnapshot();
+
+        Mockito.clearInvocations(contentRepository);
+        Mockito.when(fileDeletionRepository.findByIdGreaterThanOrderByIdAsc(0L))
+                .thenReturn(List.of(new FileDeletion(1L, 3L, 2L)));
+        Indexes restored = new Indexes();
+        restored.loaded();
+
+        Assertions.assertEquals(2, restored.corpusLineCounts.totalLineCount());
+        Assertions.assertArrayEquals(new long[0], restored.lineSearchIndex.find(List.of("hello")));
+        // the longest lines held lines of the deleted content, so they are rebuilt from all contents
+        Mockito.verify(contentRepository).streamAll(anyInt());
+    }
+
+    @Test
+    void writeSnapshot_keepsOnlyRetainedSnapshots_andSkipsUnchangedIndexes() throws Exception {
+
+        properties.getSnapshot().setRetained(1);
+        Indexes indexes = new Indexes();
+        indexes.loaded();
+        indexes.snapshots.writeSnapshot();
+        indexes.snapshots.writeSnapshot();
+        Mockito.when(fileRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(new File(4L, "next.txt", 10, 2L)));
+        indexes.snapshots.writeSnapshot();
+
+        try (Stream<Path> snapshots = Files.list(directory)) {
+            Assertions.assertEquals(List.of("snapshot-00000000000000000002.bin"),
+                    snapshots.map(path -> path.getFileName().toString()).toList());
+        }
+    }
+
+    @Test
+    void restore_rebuildsFromAllContent_whenDatabaseLacksFilesOfSnapshot() throws Exception {
+
+        Indexes written = new Indexes();
+        written.loaded();
+        written.snapshots.writeSnapshot();
+
+        Mockito.clearInvocations(fileLineIndexRepository);
+        Mockito.when(fileRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.empty());
+        Indexes restored = new Indexes();
+        restored.loaded();
+
+        Mockito.verify(fileLineIndexRepository).findAllLineCounts();
+        Mockito.verify(fileLineIndexRepository, Mockito.never()).findLineCountsOfFilesAfter(anyLong());
+    }
+
+
+    private static LineCount lineCount(Long fileId, int lineCount) {
+
+        return new LineCount() {
+            @Override
+            public Long getFileId() {
+                return fileId;
+            }
+
+            @Override
+            public int getLineCount() {
+                return lineCount;
+            }
+        };
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+
+
+    private class Indexes {
+
+        final CorpusLineCounts corpusLineCounts = new CorpusLineCounts(fileLineIndexRepository);
+        final LongestLinesTracker longestLinesTracker = new LongestLinesTracker(contentRepository, Mockito.mock(FileSummaryService.class), properties);
+        final LineSearchIndex lineSearchIndex = new LineSearchIndex(contentRepository, Mockito.mock(ContentStore.class), properties);
+        final IndexSnapshots snapshots;
+
+        Indexes() throws Exception {
+            snapshots = new IndexSnapshots(fileRepository, fileDeletionRepository, corpusLineCounts, longestLinesTracker, lineSearchIndex, properties);
+        }
+
+        void loaded() throws InterruptedException {
+
+            corpusLineCounts.rebuildOnStartup();
+            longestLinesTracker.rebuildOnStartup();
+            lineSearchIndex.rebuildOnStartup();
+            await(() -> corpusLineCounts.isLoaded() && longestLinesTracker.isLoaded() && lineSearchIndex.isLoaded());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.config.FileValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+
+public class IngestPipelineTest {
+
+    @TempDir
+    private Path directory;
+
+    private final FileService fileService = Mockito.mock(FileService.class);
+
+    private IngestPipeline ingestPipeline;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+
+        FileManagerProperties properties = new FileManagerProperties();
+        properties.getIngest().setDirectory(directory);
+        properties.getIngest().setIndexConcurrency(2);
+        ingestPipeline = new IngestPipeline(fileService, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestPipeline.shutdown();
+    }
+
+    @Test
+    void submit_storesUploadInTheBackground_andReportsItsFileId() throws Exception {
+
+        IngestedContent ingestedContent = new IngestedContent("text.txt", null, "hash", null, null, null, null);
+        Mockito.when(fileService.ingest(eq("text.txt"), any(InputStreamSource.class))).thenAnswer(invocation -> {
+            Assertions.assertEquals("first\nsecond", new String(invocation.getArgument(1, InputStreamSource.class).getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            return ingestedContent;
+        });
+        Mockito.when(fileService.store(List.of(ingestedContent))).thenReturn(List.of(7L));
+
+        IngestStatus submitted = ingestPipeline.submit(new MockMultipartFile("file", "text.txt", MediaType.TEXT_PLAIN_VALUE,
+                "first\nsecond".getBytes(StandardCharsets.UTF_8)));
+        IngestStatus finished = awaitFinished(submitted.ingestId());
+
+        Assertions.assertEquals(IngestStatus.Stage.STORED, finished.stage());
+        Assertions.assertEquals(7L, finished.fileId());
+        try (var spooledUploads = Files.list(directory)) {
+            Assertions.assertEquals(0, spooledUploads.count());
+        }
+    }
+
+    @Test
+    void submit_failsIngest_whenUploadIsNotText() throws Exception {
+
+        IngestStatus submitted = ingestPipeline.submit(new MockMultipartFile("file", "image.png", MediaType.IMAGE_PNG_VALUE, new byte[]{1, 2, 3}));
+        IngestStatus finished = awaitFinished(submitted.ingestId());
+
+        Assertions.assertEquals(IngestStatus.Stage.FAILED, finished.stage());
+        Assertions.assertEquals(FileValidator.MESSAGE, finished.error());
+        Mockito.verify(fileService, Mockito.never()).ingest(any(), any());
+    }
+
+    @Test
+    void submit_discardsIndexedContent_whenStoringFails() throws Exception {
+
+        IngestedContent ingestedContent = new IngestedContent("text.txt", null, "hash", null, null, null, null);
+        Mockito.when(fileService.ingest(any(), any())).thenReturn(ingestedContent);
+        Mockito.when(fileService.store(any())).thenThrow(new IllegalStateException("database is gone"));
+
+        IngestStatus submitted = ingestPipeline.submit(new MockMultipartFile("file", "text.txt", MediaType.TEXT_PLAIN_VALUE, new byte[]{'a'}));
+        IngestStatus finished = awaitFinished(submitted.ingestId());
+
+        Assertions.assertEquals(IngestStatus.Stage.FAILED, finished.stage());
+        Assertions.assertEquals("database is gone", finished.error());
+        Mockito.verify(fileService).discard(ingestedContent);
+    }
+
+
+    private IngestStatus awaitFinished(Long ingestId) throws InterruptedException {
+
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            IngestStatus status = ingestPipeline.getStatus(ingestId).orElseThrow();
+            if (status.stage() == IngestStatus.Stage.STORED || status.stage() == IngestStatus.Stage.FAILED) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("ingest " + ingestId + " did not finish");
+    }
+}
@@ -0,0 +1,122 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.FileLineIndex;
+import com.jasmine.filemanager.data.FileLineIndexRepository;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.store.ContentStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+public class LineViewCacheTest {
+
+    // every content below has 3 bytes and 12 bytes of offsets
+    private static final byte[] CONTENT = "a\nb".getBytes(StandardCharsets.UTF_8);
+
+    private final FileLineIndexRepository fileLineIndexRepository = Mockito.mock(FileLineIndexRepository.class);
+    private final ContentStore contentStore = Mockito.mock(ContentStore.class);
+
+
+    @Test
+    void get_returnsCachedView_whenContentIsRequestedAgain() {
+
+        LineViewCache cache = cache(1024);
+        Content content = indexedContent(1L);
+
+        LineView first = cache.get(content);
+        LineView second = cache.get(content);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(new LineViewCache.CacheStats(1, 1, 0, 1, 15, 1024), cache.stats());
+        Mockito.verify(fileLineIndexRepository, Mockito.times(1)).findById(1L);
+    }
+
+    @Test
+    void get_evictsLeastRecentlyUsedView_whenMaxWeightIsExceeded() {
+
+        LineViewCache cache = cache(40);
+        Content content1 = indexedContent(1L);
+        Content content2 = indexedContent(2L);
+        Content content3 = indexedContent(3L);
+
+        cache.get(content1);
+        cache.get(content2);
+        cache.get(content1);
+        cache.get(content3);
+        cache.get(content1);
+        cache.get(content2);
+
+        LineViewCache.CacheStats stats = cache.stats();
+        Assertions.assertEquals(2, stats.hits());
+        Assertions.assertEquals(4, stats.misses());
+        Assertions.assertEquals(2, stats.evictions());
+        Assertions.assertEquals(30, stats.weight());
+    }
+
+    @Test
+    void get_keepsOnlyOffsets_whenBytesDoNotFit() {
+
+        LineViewCache cache = cache(14);
+        Content content = indexedContent(1L);
+
+        LineView view = cache.get(content);
+
+        Assertions.assertNull(view.bytes());
+        Assertions.assertEquals(2, view.index().lineCount());
+        Assertions.assertEquals(12, cache.stats().weight());
+        Mockito.verify(contentStore, Mockito.never()).content(content);
+    }
+
+    @Test
+    void get_buildsOffsetsFromBytes_whenContentHasNoLineIndex() {
+
+        LineViewCache cache = cache(1024);
+        Content content = new Content(1L, "unindexed", CONTENT.length, new ContentLocation(), 1);
+        Mockito.when(contentStore.content(content)).thenAnswer(invocation -> ByteBuffer.wrap(CONTENT));
+
+        Assertions.assertTrue(cache.find(content).isEmpty());
+        Assertions.assertEquals(2, cache.get(content).index().lineCount());
+        Assertions.assertTrue(cache.find(content).isPresent());
+    }
+
+    @Test
+    void invalidate_dropsView() {
+
+        LineViewCache cache = cache(1024);
+        Content content = indexedContent(1L);
+
+        LineView first = cache.get(content);
+        cache.invalidate(1L);
+        LineView second = cache.get(content);
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(2, cache.stats().misses());
+        Assertions.assertEquals(15, cache.stats().weight());
+    }
+
+
+    private LineViewCache cache(long maxWeight) {
+
+        FileManagerProperties properties = new FileManagerProperties();
+        properties.getLineCache().setMaxWeight(DataSize.ofBytes(maxWeight));
+        return new LineViewCache(fileLineIndexRepository, contentStore, properties);
+    }
+
+    private Content indexedContent(Long id) {
+
+        Content content = new Content(id, "hash" + id, CONTENT.length, new ContentLocation(), 1);
+        LineIndex lineIndex = LineIndex.of(CONTENT);
+        Mockito.when(fileLineIndexRepository.findById(id))
+                .thenReturn(Optional.of(new FileLineIndex(id, lineIndex.lineCount(), lineIndex.toByteArray())));
+        Mockito.when(contentStore.content(content)).thenAnswer(invocation -> ByteBuffer.wrap(CONTENT));
+        return content;
+    }
+}
@@ -0,0 +1,132 @@
+package com.jasmine.filemanager.service;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.ContentRepository;
+import com.jasmine.filemanager.data.File;
+import com.jasmine.filemanager.data.FileRepository;
+import com.jasmine.filemanager.data.SegmentUsage;
+import com.jasmine.filemanager.store.ContentStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+
+public class StorageCompactorTest {
+
+    private final FileManagerProperties properties = new FileManagerProperties();
+    private final FileService fileService = Mockito.mock(FileService.class);
+    private final FileRepository fileRepository = Mockito.mock(FileRepository.class);
+    private final ContentRepository contentRepository = Mockito.mock(ContentRepository.class);
+    private final ContentStore contentStore = Mockito.mock(ContentStore.class);
+
+    private StorageCompactor storageCompactor;
+
+
+    @BeforeEach
+    void setUp() {
+
+        properties.getCompaction().setBatchPause(Duration.ZERO);
+        properties.getCompaction().setRate(DataSize.ofGigabytes(1));
+        storageCompactor = new StorageCompactor(fileService, fileRepository, contentRepository, contentStore, properties);
+    }
+
+    @Test
+    void compact_deletesOldestFiles_untilTheirCountIsWithinRetention() throws Exception {
+
+        properties.getRetention().setMaxFileCount(1L);
+        List<File> oldest = List.of(file(1L, 10), file(2L, 10));
+        Mockito.when(fileRepository.count()).thenReturn(3L);
+        Mockito.when(fileRepository.findByIdGreaterThanOrderByIdAsc(Long.MIN_VALUE, PageRequest.of(0, 2))).thenReturn(oldest);
+        Mockito.when(fileService.deleteFiles(oldest)).thenReturn(20L);
+
+        StorageCompactor.CompactionResult result = storageCompactor.compact();
+
+        Assertions.assertEquals(new StorageCompactor.CompactionResult(2, 20, 0, 0, 0), result);
+    }
+
+    @Test
+    void compact_deletesOnlyAsManyOldestFilesAsFreeTheExcessSize() throws Exception {
+
+        properties.getRetention().setMaxTotalSize(DataSize.ofBytes(15));
+        List<File> oldest = List.of(file(1L, 10), file(2L, 10), file(3L, 10));
+        Mockito.when(contentRepository.sumStoredLength()).thenReturn(30L);
+        Mockito.when(fileRepository.findByIdGreaterThanOrderByIdAsc(eq(Long.MIN_VALUE), any())).thenReturn(oldest);
+        Mockito.when(fileService.deleteFiles(any())).thenReturn(20L);
+
+        storageCompactor.compact();
+
+        Mockito.verify(fileService).deleteFiles(oldest.subList(0, 2));
+    }
+
+    @Test
+    void compact_deletesCompactedSegmentInTheNextPass_unlessAnUploadStoredContentThereMeanwhile() throws Exception {
+
+        Content content = new Content(7L, "hash", 4, new ContentLocation(0, 3, 0, false), 1);
+        ContentLocation relocated = new ContentLocation(2, 0, 0, false);
+        Mockito.when(contentStore.segmentsToCompact(any())).thenReturn(List.of(0, 1), List.of());
+        Mockito.when(contentRepository.findInSegmentAfter(eq(0), eq(Long.MIN_VALUE), any())).thenReturn(List.of(content));
+        Mockito.when(contentStore.relocate(content)).thenReturn(relocated);
+
+        StorageCompactor.CompactionResult first = storageCompactor.compact();
+        Mockito.verify(fileService).moveContent(7L, relocated);
+        Mockito.verify(contentStore, Mockito.never()).deleteSegment(anyInt());
+
+        Mockito.when(contentRepository.findSegmentUsage()).thenReturn(List.of(usage(1)));
+        Mockito.when(contentStore.deleteSegment(0)).thenReturn(true);
+        StorageCompactor.CompactionResult second = storageCompactor.compact();
+
+        Assertions.assertEquals(4, first.movedBytes());
+        Assertions.assertEquals(1, second.deletedSegments());
+        Mockito.verify(contentStore).deleteSegment(0);
+        Mockito.verify(contentStore, Mockito.never()).deleteSegment(1);
+    }
+
+    @Test
+    void compact_triesToDeleteCompactedSegmentAgain_whileAReadStillHoldsIt() throws Exception {
+
+        Mockito.when(contentStore.segmentsToCompact(any())).thenReturn(List.of(0), List.of());
+        Mockito.when(contentStore.deleteSegment(0)).thenReturn(false, true);
+
+        storageCompactor.compact();
+        StorageCompactor.CompactionResult held = storageCompactor.compact();
+        StorageCompactor.CompactionResult released = storageCompactor.compact();
+
+        Assertions.assertEquals(0, held.deletedSegments());
+        Assertions.assertEquals(1, released.deletedSegments());
+        Mockito.verify(contentStore, Mockito.times(2)).deleteSegment(0);
+    }
+
+
+    private static File file(Long id, long length) {
+        return new File(id, "file" + id + ".txt", length, id);
+    }
+
+    private static SegmentUsage usage(int segment) {
+
+        return new SegmentUsage() {
+            @Override
+            public int getSegment() {
+                return segment;
+            }
+
+            @Override
+            public long getLength() {
+                return 1;
+            }
+
+            @Override
+            public long getStreaming() {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.index.LineIndexBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+@DataJpaTest
+@Import({ChunkedContentStore.class, UploadChunkReader.class})
+@EnableConfigurationProperties(FileManagerProperties.class)
+@TestPropertySource(properties = {"file-manager.upload.chunk-size=4B", "file-manager.upload.max-in-flight-bytes=8B"})
+public class ChunkedContentStoreTest {
+
+    @Autowired
+    private ChunkedContentStore contentStore;
+
+
+    @Test
+    void write_storesContentInChunksAndIndexesEveryPiece() throws Exception {
+
+        byte[] content = "first\nsecond line\nthird".getBytes(StandardCharsets.UTF_8);
+        LineIndexBuilder lineIndexBuilder = new LineIndexBuilder();
+
+        ContentStore.StoredContent storedContent = contentStore.write(1L, new ByteArrayInputStream(content), lineIndexBuilder::append);
+        Content stored = new Content(1L, "lines", storedContent.length(), storedContent.location(), 1);
+        LineIndex lineIndex = lineIndexBuilder.build();
+
+        Assertions.assertEquals(content.length, storedContent.length());
+        Assertions.assertEquals(4, storedContent.location().getChunkSize());
+        Assertions.assertEquals(ByteBuffer.wrap(content), contentStore.content(stored));
+        Assertions.assertEquals("second line", new String(contentStore.read(stored, lineIndex.lineStart(1), lineIndex.lineLength(1)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void write_storesContentWhichIsAMultipleOfTheChunkSize() throws Exception {
+
+        byte[] content = "12345678".getBytes(StandardCharsets.UTF_8);
+
+        ContentStore.StoredContent storedContent = contentStore.write(2L, new ByteArrayInputStream(content), (chunk, offset, count) -> { });
+        Content stored = new Content(2L, "digits", storedContent.length(), storedContent.location(), 1);
+
+        Assertions.assertEquals(ByteBuffer.wrap(content), contentStore.content(stored));
+        Assertions.assertEquals("45", new String(contentStore.read(stored, 3, 2), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void delete_dropsAllChunksOfTheContent() throws Exception {
+
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        ContentStore.StoredContent storedContent = contentStore.write(3L, new ByteArrayInputStream(content), (chunk, offset, count) -> { });
+        Content stored = new Content(3L, "digits", storedContent.length(), storedContent.location(), 1);
+        contentStore.delete(stored);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> contentStore.read(stored, 0, 1));
+    }
+}
@@ -0,0 +1,55 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+@DataJpaTest
+@Import({ChunkedContentStore.class, UploadChunkReader.class})
+@EnableConfigurationProperties(FileManagerProperties.class)
+@TestPropertySource(properties = {"file-manager.upload.chunk-size=64B", "file-manager.store.compress=true"})
+public class CompressedChunkedContentStoreTest {
+
+    @Autowired
+    private ChunkedContentStore contentStore;
+
+
+    @Test
+    void write_deflatesEveryChunkAndReadsRangesAcrossChunks() throws Exception {
+
+        byte[] content = "the same line again\n".repeat(20).getBytes(StandardCharsets.UTF_8);
+
+        ContentStore.StoredContent storedContent = contentStore.write(1L, new ByteArrayInputStream(content), (chunk, offset, count) -> { });
+        Content stored = new Content(1L, "repeated", storedContent.length(), storedContent.location(), 1);
+
+        Assertions.assertTrue(storedContent.location().isCompressed());
+        Assertions.assertEquals(ByteBuffer.wrap(content), contentStore.content(stored));
+        Assertions.assertEquals("line again\nthe same", new String(contentStore.read(stored, 49, 19), StandardCharsets.UTF_8));
+
+        ContentStore.StoreStats stats = contentStore.stats();
+        Assertions.assertEquals(content.length, stats.bytesWritten());
+        Assertions.assertTrue(stats.compressionRatio() > 1, "ratio " + stats.compressionRatio());
+        Assertions.assertEquals(content.length + 128, stats.bytesDecoded());
+    }
+
+    @Test
+    void read_inflatesShortLastChunk() throws Exception {
+
+        byte[] content = "0123456789".repeat(7).getBytes(StandardCharsets.UTF_8);
+
+        ContentStore.StoredContent storedContent = contentStore.write(2L, new ByteArrayInputStream(content), (chunk, offset, count) -> { });
+        Content stored = new Content(2L, "digits", storedContent.length(), storedContent.location(), 1);
+
+        Assertions.assertEquals("456789", new String(contentStore.read(stored, 64, 6), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,212 @@
+package com.jasmine.filemanager.store;
+
+import com.jasmine.filemanager.config.FileManagerProperties;
+import com.jasmine.filemanager.data.Content;
+import com.jasmine.filemanager.data.ContentLocation;
+import com.jasmine.filemanager.data.SegmentUsage;
+import com.jasmine.filemanager.index.LineIndex;
+import com.jasmine.filemanager.index.LineIndexBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MappedSegmentContentStoreTest {
+
+    @TempDir
+    private Path directory;
+
+    private FileManagerProperties properties;
+
+    private MappedSegmentContentStore contentStore;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+
+        properties = new FileManagerProperties();
+        properties.getUpload().setChunkSize(DataSize.ofBytes(4));
+        properties.getStore().setDirectory(directory);
+        properties.getStore().setSegmentSize(DataSize.ofBytes(32));
+        contentStore = new MappedSegmentContentStore(properties, new UploadChunkReader(properties));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        contentStore.close();
+    }
+
+
+    @Test
+    void write_appendsContentToSegmentAndReadsItThroughMapping() throws Exception {
+
+        Content first = store(1L, "first\nsecond line\nthird");
+        Content second = store(2L, "another");
+
+        Assertions.assertEquals(first.getLocation().getSegment(), second.getLocation().getSegment());
+        Assertions.assertEquals(first.getLength(), second.getLocation().getOffset());
+        Assertions.assertEquals(ByteBuffer.wrap("another".getBytes(StandardCharsets.UTF_8)), contentStore.content(second));
+
+        LineIndex lineIndex = LineIndex.of(contentStore.content(first));
+        Assertions.assertEquals("second line", new String(contentStore.read(first, lineIndex.lineStart(1), lineIndex.lineLength(1)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void write_startsNewSegment_whenCurrentSegmentIsFull() throws Exception {
+
+        Content first = store(1L, "0123456789012345678901234");
+        Content second = store(2L, "0123456789");
+
+        Assertions.assertEquals(first.getLocation().getSegment() + 1, second.getLocation().getSegment());
+        Assertions.assertEquals(0, second.getLocation().getOffset());
+    }
+
+    @Test
+    void transferTo_writesRangeOfContentFromItsFileRegion() throws Exception {
+
+        store(1L, "padding");
+        Content content = store(2L, "first\nsecond line\nthird");
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        contentStore.transferTo(content, 6, 11, Channels.newChannel(target));
+
+        Assertions.assertEquals("second line", target.toString(StandardCharsets.UTF_8));
+        ContentStore.FileRegion fileRegion = contentStore.fileRegion(content).orElseThrow();
+        try (FileChannel channel = FileChannel.open(fileRegion.path())) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) fileRegion.length());
+            channel.read(bytes, fileRegion.position());
+            Assertions.assertEquals(contentStore.content(content), bytes.flip());
+        }
+    }
+
+    @Test
+    void constructor_continuesAfterExistingSegments() throws Exception {
+
+        Content first = store(1L, "kept across restarts");
+        contentStore.close();
+        contentStore = new MappedSegmentContentStore(properties, new UploadChunkReader(properties));
+        Content second = store(2L, "next");
+
+        Assertions.assertEquals(first.getLength(), second.getLocation().getOffset());
+        Assertions.assertEquals(ByteBuffer.wrap("kept across restarts".getBytes(StandardCharsets.UTF_8)), contentStore.content(first));
+    }
+
+    @Test
+    void relocate_movesContentOutOfMostlyGarbageSegment_whichCanThenBeDeleted() throws Exception {
+
+        store(1L, "0123456789012345678901234");
+        Content kept = store(2L, "kept");
+        store(3L, "0123456789");
+
+        Assertions.assertEquals(List.of(), contentStore.segmentsToCompact(List.of(usage(0, 4, 1), usage(1, 10, 0))));
+        Assertions.assertEquals(List.of(0), contentStore.segmentsToCompact(List.of(usage(0, 4, 0), usage(1, 10, 0))));
+
+        kept.setLocation(contentStore.relocate(kept));
+        contentStore.deleteSegment(0);
+
+        Assertions.assertEquals(new ContentLocation(1, 10, 0, false), kept.getLocation());
+        Assertions.assertEquals(ByteBuffer.wrap("kept".getBytes(StandardCharsets.UTF_8)), contentStore.content(kept));
+        Assertions.assertFalse(Files.exists(directory.resolve("segment-000000.dat")));
+        Assertions.assertEquals(List.of(), contentStore.segmentsToCompact(List.of(usage(1, 14, 0))));
+    }
+
+    @Test
+    void deleteSegment_keepsSegment_whileATransferOrSendfileStillUsesIt() throws Exception {
+
+        Content moved = store(1L, "0123456789012345678901234");
+        store(2L, "0123456789");
+        CountDownLatch transferring = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        WritableByteChannel slowClient = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                transferring.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                int length = source.remaining();
+                transferred.write(source.array(), source.arrayOffset() + source.position(), length);
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        CompletableFuture<Void> transfer = CompletableFuture.runAsync(() -> {
+            try {
+                contentStore.transferTo(moved, 0, moved.getLength(), slowClient);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Assertions.assertTrue(transferring.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(contentStore.deleteSegment(0));
+        resume.countDown();
+        transfer.get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("0123456789012345678901234", transferred.toString(StandardCharsets.UTF_8));
+        contentStore.fileRegion(moved);
+        Assertions.assertFalse(contentStore.deleteSegment(0));
+        Assertions.assertTrue(Files.exists(directory.resolve("segment-000000.dat")));
+        Assertions.assertTrue(contentStore.deleteSegment(1));
+        Assertions.assertFalse(Files.exists(directory.resolve("segment-000001.dat")));
+    }
+
+
+    private static SegmentUsage usage(int segment, long length, long streaming) {
+
+        return new SegmentUsage() {
+            @Override
+            public int getSegment() {
+                return segment;
+            }
+
+            @Override
+            public long getLength() {
+                return length;
+            }
+
+            @Override
+            public long getStreaming() {
+                return streaming;
+            }
+        };
+    }
+
+    private Content store(Long id, String content) throws Exception {
+
+        LineIndexBuilder lineIndexBuilder = new LineIndexBuilder();
+        ContentStore.StoredContent storedContent = contentStore.write(id, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), lineIndexBuilder::append);
+        return new Content(id, "hash" + id, storedContent.length(), storedContent.location(), 1);
+    }
+}